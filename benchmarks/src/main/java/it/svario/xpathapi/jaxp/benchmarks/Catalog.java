@@ -0,0 +1,104 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.benchmarks;
+
+import it.svario.xpathapi.jaxp.TemplateMode;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * The document queried by the benchmarks and the expressions used to query
+ * it.
+ *
+ * <p>
+ * The document is generated and parsed once per trial and then shared, read
+ * only, by all the benchmark threads.
+ */
+@State(Scope.Benchmark)
+public class Catalog {
+	/**
+	 * The approximate size of the generated document.
+	 */
+	@Param({ "1KB", "64KB", "1MB", "50MB" })
+	public String size;
+
+	/**
+	 * The number of namespaced elements around the items.
+	 */
+	@Param({ "0", "4" })
+	public int namespaceDepth;
+
+	/**
+	 * How the arguments are put into the expressions: {@code concatenation}
+	 * builds every expression by hand, {@code substitution} and
+	 * {@code variables} use "{@code {}}" place-holders with the respective
+	 * {@link TemplateMode}.
+	 */
+	@Param({ "concatenation", "substitution", "variables" })
+	public String arguments;
+
+	Document document;
+	Node namespaceNode;
+
+	String itemById;
+	String titleById;
+	String titlesByType;
+
+	String id;
+	String type;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		String xml = DocumentGenerator.generate(DocumentGenerator.parseSize(size), namespaceDepth);
+		document = XPathAPI.parseDocument(xml);
+
+		namespaceNode = document.getDocumentElement();
+		while (namespaceNode.getFirstChild() != null && namespaceNode.getFirstChild().getLocalName().equals("section")) {
+			namespaceNode = namespaceNode.getFirstChild();
+		}
+
+		String p = DocumentGenerator.itemPrefix(namespaceDepth);
+		if (!p.isEmpty()) {
+			p += ":";
+		}
+
+		itemById = "//" + p + "item[@id='{}']";
+		titleById = "//" + p + "item[@id='{}']/" + p + "title";
+		titlesByType = "//" + p + "item[@type='{}']/" + p + "title";
+
+		id = "i" + (DocumentGenerator.itemCount(xml) / 2);
+		type = "book";
+
+		XPathAPI.setTemplateMode(arguments.equals("variables") ? TemplateMode.VARIABLES : TemplateMode.SUBSTITUTION);
+	}
+
+	/**
+	 * Returns {@code template} with its place-holder replaced by
+	 * {@code argument} if the arguments are concatenated by hand, otherwise
+	 * {@code template} itself.
+	 */
+	String xpath(String template, String argument) {
+		if (arguments.equals("concatenation")) {
+			return template.replace("{}", argument);
+		}
+
+		return template;
+	}
+
+	/**
+	 * Returns the template arguments that go with {@link #xpath}.
+	 */
+	String[] args(String argument) {
+		if (arguments.equals("concatenation")) {
+			return new String[0];
+		}
+
+		return new String[] { argument };
+	}
+}
@@ -0,0 +1,99 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates the XML documents used by the benchmarks.
+ *
+ * <p>
+ * The documents are a list of {@code <item>}s nested inside a chain of
+ * elements, each of which declares a new namespace; the items belong to the
+ * innermost namespace. The generator is seeded with a constant, so the same
+ * size and depth always give the same document.
+ */
+final class DocumentGenerator {
+	private static final long SEED = 0x5EED;
+	private static final String[] TYPES = { "book", "cd", "dvd", "game" };
+
+	private DocumentGenerator() {
+	}
+
+	/**
+	 * Returns the prefix bound to the namespace of the items, or the empty
+	 * string if the items are not in a namespace.
+	 */
+	static String itemPrefix(int namespaceDepth) {
+		return (namespaceDepth == 0) ? "" : "n" + (namespaceDepth - 1);
+	}
+
+	static String namespaceURI(int level) {
+		return "urn:xpathapi:benchmarks:n" + level;
+	}
+
+	/**
+	 * Returns a document of about {@code size} characters with items nested
+	 * in {@code namespaceDepth} namespaced elements.
+	 */
+	static String generate(long size, int namespaceDepth) {
+		Random random = new Random(SEED);
+		StringBuilder xml = new StringBuilder((int) Math.min(size + 1024, Integer.MAX_VALUE - 8));
+
+		xml.append("<?xml version='1.0' encoding='UTF-8'?>\n<catalog>");
+		for (int level = 0; level < namespaceDepth; level++) {
+			xml.append("<n").append(level).append(":section xmlns:n").append(level).append("='").append(namespaceURI(level)).append("'>");
+		}
+
+		String item = qualified(itemPrefix(namespaceDepth), "item");
+		String title = qualified(itemPrefix(namespaceDepth), "title");
+		String price = qualified(itemPrefix(namespaceDepth), "price");
+
+		int count = 0;
+		do {
+			xml.append('<').append(item).append(" id='i").append(count).append("' type='").append(TYPES[random.nextInt(TYPES.length)]).append("'>");
+			xml.append('<').append(title).append(">Title ").append(Long.toString(random.nextLong() & Long.MAX_VALUE, 36)).append("</").append(title).append('>');
+			xml.append('<').append(price).append('>').append(random.nextInt(10000) / 100.0).append("</").append(price).append('>');
+			xml.append("</").append(item).append('>');
+			count++;
+		} while (xml.length() < size);
+
+		for (int level = namespaceDepth - 1; level >= 0; level--) {
+			xml.append("</n").append(level).append(":section>");
+		}
+		xml.append("</catalog>");
+
+		return xml.toString();
+	}
+
+	/**
+	 * Returns the number of items in a document generated with the same
+	 * arguments.
+	 */
+	static int itemCount(String xml) {
+		int count = 0;
+		for (int i = xml.indexOf(" id='i"); i >= 0; i = xml.indexOf(" id='i", i + 1)) {
+			count++;
+		}
+
+		return count;
+	}
+
+	private static String qualified(String prefix, String localName) {
+		return prefix.isEmpty() ? localName : prefix + ":" + localName;
+	}
+
+	/**
+	 * Parses sizes such as {@code "1KB"}, {@code "64KB"} or {@code "50MB"}.
+	 */
+	static long parseSize(String size) {
+		if (size.endsWith("MB")) {
+			return Long.parseLong(size.substring(0, size.length() - 2)) * 1024 * 1024;
+		}
+		if (size.endsWith("KB")) {
+			return Long.parseLong(size.substring(0, size.length() - 2)) * 1024;
+		}
+
+		return Long.parseLong(size);
+	}
+}
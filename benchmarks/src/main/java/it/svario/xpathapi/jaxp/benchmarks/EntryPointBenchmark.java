@@ -0,0 +1,70 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.traversal.NodeIterator;
+
+/**
+ * Measures the throughput of the node-selecting methods of
+ * {@link XPathAPI}.
+ *
+ * <p>
+ * The benchmarks are run by {@link SingleThreadedBenchmark} and
+ * {@link MultiThreadedBenchmark}, which differ only in the number of
+ * threads that query the shared document.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public abstract class EntryPointBenchmark {
+	@Benchmark
+	public Node selectSingleNode(Catalog catalog) throws Exception {
+		return XPathAPI.selectSingleNode(catalog.document, catalog.xpath(catalog.itemById, catalog.id), catalog.namespaceNode, catalog.args(catalog.id));
+	}
+
+	@Benchmark
+	public String selectSingleNodeAsString(Catalog catalog) throws Exception {
+		return XPathAPI.selectSingleNodeAsString(catalog.document, catalog.xpath(catalog.titleById, catalog.id), catalog.namespaceNode, catalog.args(catalog.id));
+	}
+
+	@Benchmark
+	public void selectNodeList(Catalog catalog, Blackhole blackhole) throws Exception {
+		NodeList nodes = XPathAPI.selectNodeList(catalog.document, catalog.xpath(catalog.titlesByType, catalog.type), catalog.namespaceNode, catalog.args(catalog.type));
+		for (int i = 0; i < nodes.getLength(); i++) {
+			blackhole.consume(nodes.item(i));
+		}
+	}
+
+	@Benchmark
+	public List<Node> selectListOfNodes(Catalog catalog) throws Exception {
+		return XPathAPI.selectListOfNodes(catalog.document, catalog.xpath(catalog.titlesByType, catalog.type), catalog.namespaceNode, catalog.args(catalog.type));
+	}
+
+	@Benchmark
+	public List<String> selectNodeListAsStrings(Catalog catalog) throws Exception {
+		return XPathAPI.selectNodeListAsStrings(catalog.document, catalog.xpath(catalog.titlesByType, catalog.type), catalog.namespaceNode, catalog.args(catalog.type));
+	}
+
+	@Benchmark
+	public void selectNodeIterator(Catalog catalog, Blackhole blackhole) throws Exception {
+		NodeIterator nodes = XPathAPI.selectNodeIterator(catalog.document, catalog.xpath(catalog.titlesByType, catalog.type), catalog.namespaceNode, catalog.args(catalog.type));
+		for (Node node = nodes.nextNode(); node != null; node = nodes.nextNode()) {
+			blackhole.consume(node);
+		}
+	}
+}
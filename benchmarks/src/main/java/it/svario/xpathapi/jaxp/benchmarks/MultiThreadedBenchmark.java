@@ -0,0 +1,13 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.benchmarks;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Runs the {@link EntryPointBenchmark}s from as many threads as there are
+ * processors, all querying the same document.
+ */
+@Threads(Threads.MAX)
+public class MultiThreadedBenchmark extends EntryPointBenchmark {
+}
@@ -0,0 +1,85 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Compares the built-in engine for simple paths with the JAXP engine.
+ *
+ * <p>
+ * The same expressions are evaluated with the built-in engine enabled and
+ * disabled, so the difference between the two runs of each expression is
+ * the speed-up of the built-in engine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@Threads(1)
+@State(Scope.Benchmark)
+public class SimplePathEngineBenchmark {
+	/**
+	 * Whether the expressions are evaluated by the built-in engine.
+	 */
+	@Param({ "true", "false" })
+	public boolean builtIn;
+
+	/**
+	 * The evaluated expression.
+	 */
+	@Param({ "/root/k:a/b", "//friend[@status='best']", "/root/k:a[100]/friend/@id" })
+	public String xpath;
+
+	private Document document;
+	private Node namespaceNode;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		StringBuilder xml = new StringBuilder("<root xmlns:k='abc'>");
+		for (int i = 0; i < 200; i++) {
+			xml.append("<k:a><b>").append(i).append("</b>");
+			xml.append("<friend status='").append(i % 10 == 0 ? "best" : "good").append("' id='f").append(i).append("'/>");
+			xml.append("</k:a>");
+		}
+		xml.append("</root>");
+
+		document = XPathAPI.parseDocument(xml.toString());
+		namespaceNode = document.getDocumentElement();
+
+		XPathAPI.setSimplePathEngineEnabled(builtIn);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		XPathAPI.setSimplePathEngineEnabled(true);
+	}
+
+	@Benchmark
+	public void selectListOfNodes(Blackhole blackhole) throws Exception {
+		List<Node> nodes = XPathAPI.selectListOfNodes(document, xpath, namespaceNode);
+		for (Node node : nodes) {
+			blackhole.consume(node);
+		}
+	}
+}
@@ -0,0 +1,12 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.benchmarks;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Runs the {@link EntryPointBenchmark}s from a single thread.
+ */
+@Threads(1)
+public class SingleThreadedBenchmark extends EntryPointBenchmark {
+}
@@ -0,0 +1,96 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * An immutable snapshot of the counters of one of the caches used by
+ * XPathAPI.
+ *
+ * <p>
+ * The counters are cumulative: they start at zero when the class is loaded
+ * and are never reset, not even when the cache is cleared.
+ *
+ * @see XPathAPI#getExpressionCacheStatistics()
+ */
+public final class CacheStatistics {
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final int capacity;
+
+	CacheStatistics(long hitCount, long missCount, long evictionCount, int capacity) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the number of lookups that found their entry in the cache.
+	 *
+	 * @return the number of cache hits
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find their entry in the
+	 * cache.
+	 *
+	 * @return the number of cache misses
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of entries that have been removed from the cache to
+	 * make room for new ones.
+	 *
+	 * @return the number of evicted entries
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Returns the total number of lookups, that is the sum of hits and
+	 * misses.
+	 *
+	 * @return the number of lookups
+	 */
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	/**
+	 * Returns the ratio of lookups that were cache hits.
+	 *
+	 * @return a number between {@code 0.0} and {@code 1.0}, or {@code 1.0}
+	 *         if no lookups have been made yet
+	 */
+	public double getHitRate() {
+		long requestCount = getRequestCount();
+		if (requestCount == 0) {
+			return 1.0;
+		}
+
+		return (double) hitCount / requestCount;
+	}
+
+	/**
+	 * Returns the maximum number of entries the cache was allowed to hold
+	 * when this snapshot was taken.
+	 *
+	 * @return the capacity of the cache
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStatistics[hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ", capacity=" + capacity + "]";
+	}
+}
@@ -0,0 +1,81 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * An XPath expression prepared for evaluation by an {@link XPathEvaluator}.
+ *
+ * <p>
+ * Expressions in the simple path subset are kept as {@link SimplePath}s and
+ * evaluated by {@link SimplePathEngine}; their JAXP form is compiled only if
+ * they are evaluated for a result that the engine does not produce or
+ * while the engine is disabled.
+ */
+final class CompiledExpression {
+	private final String xpathString;
+	private final NamespaceContext nsContext;
+	private final SimplePath simplePath;
+	private XPathExpression xpathExpr;
+	private XPathExpression countExpr;
+
+	private CompiledExpression(String xpathString, NamespaceContext nsContext, SimplePath simplePath, XPathExpression xpathExpr) {
+		this.xpathString = xpathString;
+		this.nsContext = nsContext;
+		this.simplePath = simplePath;
+		this.xpathExpr = xpathExpr;
+	}
+
+	static CompiledExpression compile(XPath xpath, String xpathString, NamespaceContext nsContext) throws XPathExpressionException {
+		SimplePath simplePath = SimplePath.parseOrNull(xpathString, nsContext, true);
+		if (simplePath != null) {
+			return new CompiledExpression(xpathString, nsContext, simplePath, null);
+		}
+
+		return new CompiledExpression(xpathString, nsContext, null, compileJAXP(xpath, xpathString, nsContext));
+	}
+
+	/**
+	 * Returns the simple path form of this expression, or null if it is not
+	 * part of the simple path subset or if {@link SimplePathEngine} is
+	 * disabled.
+	 */
+	SimplePath getSimplePath() {
+		return SimplePathEngine.isEnabled() ? simplePath : null;
+	}
+
+	/**
+	 * Returns the JAXP form of this expression, compiling it with
+	 * {@code xpath} the first time it is needed.
+	 */
+	XPathExpression getXPathExpression(XPath xpath) throws XPathExpressionException {
+		if (xpathExpr == null) {
+			xpathExpr = compileJAXP(xpath, xpathString, nsContext);
+		}
+
+		return xpathExpr;
+	}
+
+	/**
+	 * Returns the JAXP form of {@code count(...)} applied to this
+	 * expression, compiling it with {@code xpath} the first time it is
+	 * needed.
+	 */
+	XPathExpression getCountExpression(XPath xpath) throws XPathExpressionException {
+		if (countExpr == null) {
+			countExpr = compileJAXP(xpath, "count(" + xpathString + ")", nsContext);
+		}
+
+		return countExpr;
+	}
+
+	private static XPathExpression compileJAXP(XPath xpath, String xpathString, NamespaceContext nsContext) throws XPathExpressionException {
+		xpath.setNamespaceContext(nsContext);
+
+		return xpath.compile(xpathString);
+	}
+}
@@ -0,0 +1,201 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathException;
+import org.w3c.dom.Document;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parses documents with namespace-aware {@code DocumentBuilder}s that are
+ * reset and reused instead of being created for every document.
+ *
+ * <p>
+ * Like {@link EvaluatorPool}, the pool never blocks: when all the pooled
+ * builders are in use a new one is created, and it is discarded on release
+ * if the pool is already full. Changing a parser feature replaces the
+ * factory; builders created by the previous factory are discarded when they
+ * are released.
+ */
+class DocumentBuilderPool {
+	static final int DEFAULT_POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+	static final String DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
+
+	private static final ErrorHandler errorHandler = new ErrorHandler() {
+		@Override
+		public void warning(SAXParseException exception) {
+			// the document can still be built
+		}
+
+		@Override
+		public void error(SAXParseException exception) {
+			// only validity errors, and builders do not validate
+		}
+
+		@Override
+		public void fatalError(SAXParseException exception) throws SAXException {
+			throw exception;
+		}
+	};
+
+	private static Map<String, Boolean> features = defaultFeatures();
+	private static volatile Factory factory = new Factory(features);
+
+	private static final Queue<Pooled> idleBuilders = new ConcurrentLinkedQueue<Pooled>();
+	private static final AtomicInteger idleCount = new AtomicInteger();
+
+	private DocumentBuilderPool() {
+	}
+
+	private static Map<String, Boolean> defaultFeatures() {
+		Map<String, Boolean> defaults = new LinkedHashMap<String, Boolean>();
+		defaults.put(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		// deferred nodes are expanded on first access, so reading a
+		// document from several threads would modify it concurrently
+		defaults.put(DEFER_NODE_EXPANSION, false);
+
+		return defaults;
+	}
+
+	/**
+	 * Parses {@code source} with a pooled builder.
+	 */
+	static Document parse(InputSource source) throws XPathException {
+		Pooled pooled = acquire();
+		try {
+			return pooled.builder.parse(source);
+		} catch (IOException | SAXException e) {
+			throw new XPathException(e);
+		} finally {
+			release(pooled);
+		}
+	}
+
+	private static Pooled acquire() throws XPathException {
+		Factory current = factory;
+
+		Pooled pooled;
+		while ((pooled = idleBuilders.poll()) != null) {
+			idleCount.decrementAndGet();
+			if (pooled.factory == current) {
+				break;
+			}
+		}
+
+		if (pooled == null) {
+			pooled = current.newBuilder();
+		}
+
+		pooled.builder.setErrorHandler(errorHandler);
+		return pooled;
+	}
+
+	private static void release(Pooled pooled) {
+		if (pooled.factory != factory) {
+			return;
+		}
+
+		try {
+			pooled.builder.reset();
+		} catch (UnsupportedOperationException e) {
+			// builders that cannot be reset cannot be reused
+			return;
+		}
+
+		if (idleCount.incrementAndGet() > DEFAULT_POOL_SIZE) {
+			idleCount.decrementAndGet();
+			return;
+		}
+
+		idleBuilders.offer(pooled);
+	}
+
+	static synchronized Boolean getFeature(String name) {
+		return features.get(name);
+	}
+
+	/**
+	 * Sets a feature of the {@code DocumentBuilderFactory} used to create
+	 * the builders.
+	 *
+	 * @throws IllegalArgumentException if the factory does not support the
+	 *             feature
+	 */
+	static synchronized void setFeature(String name, boolean value) {
+		if (name == null) {
+			throw new IllegalArgumentException("Feature name cannot be null");
+		}
+
+		Map<String, Boolean> newFeatures = new LinkedHashMap<String, Boolean>(features);
+		newFeatures.put(name, value);
+
+		Factory newFactory = new Factory(newFeatures);
+		try {
+			newFactory.newBuilder();
+		} catch (XPathException e) {
+			throw new IllegalArgumentException("Unsupported parser feature: " + name, e);
+		}
+
+		features = newFeatures;
+		factory = newFactory;
+	}
+
+	private static final class Factory {
+		private final DocumentBuilderFactory builderFactory;
+
+		Factory(Map<String, Boolean> features) {
+			builderFactory = DocumentBuilderFactory.newInstance();
+			builderFactory.setNamespaceAware(true);
+
+			for (Map.Entry<String, Boolean> feature : features.entrySet()) {
+				try {
+					builderFactory.setFeature(feature.getKey(), feature.getValue());
+				} catch (ParserConfigurationException e) {
+					// the defaults are only hints, other parsers may
+					// not know them
+					if (!isDefault(feature)) {
+						throw new IllegalArgumentException("Unsupported parser feature: " + feature.getKey(), e);
+					}
+				}
+			}
+		}
+
+		private static boolean isDefault(Map.Entry<String, Boolean> feature) {
+			return feature.getValue().equals(defaultFeatures().get(feature.getKey()));
+		}
+
+		Pooled newBuilder() throws XPathException {
+			try {
+				synchronized (builderFactory) {
+					return new Pooled(this, builderFactory.newDocumentBuilder());
+				}
+			} catch (ParserConfigurationException e) {
+				throw new XPathException(e);
+			}
+		}
+	}
+
+	private static final class Pooled {
+		final Factory factory;
+		final DocumentBuilder builder;
+
+		Pooled(Factory factory, DocumentBuilder builder) {
+			this.factory = factory;
+			this.builder = builder;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.xpath.XPathException;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * A cache of the documents parsed from files, bounded by the total size of
+ * the files on disk; the memory used by the parsed documents is not
+ * measured.
+ *
+ * <p>
+ * Entries are keyed by the real path of the file and remember its
+ * modification time and size; both are checked again at every lookup and
+ * the file is parsed anew if either has changed. When the total size of the
+ * cached files exceeds the capacity, the least recently used documents are
+ * discarded.
+ */
+final class DocumentCache {
+	/**
+	 * The default capacity, 16 MiB of XML files.
+	 */
+	static final long DEFAULT_CAPACITY = 16L * 1024 * 1024;
+
+	private static final Map<Path, Entry> entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true);
+	private static long capacity = DEFAULT_CAPACITY;
+	private static long size;
+
+	private DocumentCache() {
+	}
+
+	/**
+	 * Returns the document parsed from {@code file}, parsing it only if it
+	 * is not cached or if it has changed since it was cached.
+	 */
+	static Document get(Path file) throws XPathException {
+		Path key;
+		BasicFileAttributes attributes;
+		try {
+			key = file.toRealPath();
+			attributes = Files.readAttributes(key, BasicFileAttributes.class);
+		} catch (IOException e) {
+			throw new XPathException(e);
+		}
+
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		long fileSize = attributes.size();
+
+		synchronized (DocumentCache.class) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.lastModified == lastModified && entry.size == fileSize) {
+				return entry.document;
+			}
+		}
+
+		Document document = parse(key);
+
+		synchronized (DocumentCache.class) {
+			Entry previous = entries.remove(key);
+			if (previous != null) {
+				size -= previous.size;
+			}
+
+			if (fileSize <= capacity) {
+				entries.put(key, new Entry(document, lastModified, fileSize));
+				size += fileSize;
+				evict();
+			}
+		}
+
+		return document;
+	}
+
+	private static Document parse(Path file) throws XPathException {
+		try (InputStream stream = Files.newInputStream(file)) {
+			InputSource source = new InputSource(stream);
+			source.setSystemId(file.toUri().toString());
+
+			return DocumentBuilderPool.parse(source);
+		} catch (IOException e) {
+			throw new XPathException(e);
+		}
+	}
+
+	private static void evict() {
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (size > capacity && eldest.hasNext()) {
+			size -= eldest.next().size;
+			eldest.remove();
+		}
+	}
+
+	static synchronized long getCapacity() {
+		return capacity;
+	}
+
+	static synchronized void setCapacity(long newCapacity) {
+		if (newCapacity < 0) {
+			throw new IllegalArgumentException("Negative cache capacity: " + newCapacity);
+		}
+
+		capacity = newCapacity;
+		evict();
+	}
+
+	static synchronized long getSize() {
+		return size;
+	}
+
+	static synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	private static final class Entry {
+		final Document document;
+		final long lastModified;
+		final long size;
+
+		Entry(Document document, long lastModified, long size) {
+			this.document = document;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+	}
+}
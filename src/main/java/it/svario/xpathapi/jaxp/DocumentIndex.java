@@ -0,0 +1,320 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.w3c.dom.traversal.NodeFilter;
+
+/**
+ * An index of the elements of a document by expanded name and by the value
+ * of some ID-like attributes.
+ *
+ * <p>
+ * The index is attached to its document as user data, so it lives as long
+ * as the document does. It listens for DOM mutation events and drops itself
+ * at the first change to the document.
+ */
+final class DocumentIndex implements EventListener {
+	private static final String USER_DATA_KEY = DocumentIndex.class.getName();
+	private static final String[] MUTATION_EVENTS = { "DOMNodeInserted", "DOMNodeRemoved", "DOMAttrModified" };
+
+	private final Document document;
+	private final Map<QName, List<Element>> byName;
+	private final Set<QName> nestedNames;
+	private final Map<QName, Map<String, List<Element>>> byAttribute;
+	private volatile boolean valid;
+
+	private DocumentIndex(Document document, Set<QName> idAttributes) {
+		this.document = document;
+		this.byName = new HashMap<QName, List<Element>>();
+		this.nestedNames = new HashSet<QName>();
+		this.byAttribute = new HashMap<QName, Map<String, List<Element>>>();
+		for (QName idAttribute : idAttributes) {
+			byAttribute.put(idAttribute, new HashMap<String, List<Element>>());
+		}
+
+		build();
+		this.valid = true;
+	}
+
+	/**
+	 * Indexes {@code document}, replacing any previous index.
+	 *
+	 * @throws IllegalArgumentException if the DOM implementation does not
+	 *             support mutation events, so that changes to the document
+	 *             could not be noticed
+	 */
+	static void create(Document document, Set<QName> idAttributes) {
+		if (!(document instanceof EventTarget) || !document.getImplementation().hasFeature("MutationEvents", "2.0")) {
+			throw new IllegalArgumentException("The DOM implementation does not support mutation events");
+		}
+
+		remove(document);
+
+		DocumentIndex index = new DocumentIndex(document, idAttributes);
+		for (String eventType : MUTATION_EVENTS) {
+			((EventTarget) document).addEventListener(eventType, index, false);
+		}
+		document.setUserData(USER_DATA_KEY, index, null);
+	}
+
+	/**
+	 * Returns the valid index of {@code node}, or null if {@code node} is
+	 * not an indexed document.
+	 */
+	static DocumentIndex forNode(Node node) {
+		if (node.getNodeType() != Node.DOCUMENT_NODE) {
+			return null;
+		}
+
+		DocumentIndex index = (DocumentIndex) node.getUserData(USER_DATA_KEY);
+		if (index == null || !index.valid) {
+			return null;
+		}
+
+		return index;
+	}
+
+	static void remove(Document document) {
+		DocumentIndex index = (DocumentIndex) document.getUserData(USER_DATA_KEY);
+		if (index != null) {
+			index.invalidate();
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		invalidate();
+	}
+
+	private synchronized void invalidate() {
+		if (!valid) {
+			return;
+		}
+
+		valid = false;
+		for (String eventType : MUTATION_EVENTS) {
+			((EventTarget) document).removeEventListener(eventType, this, false);
+		}
+		document.setUserData(USER_DATA_KEY, null, null);
+	}
+
+	private void build() {
+		Map<QName, int[]> openCounts = new HashMap<QName, int[]>();
+
+		Node node = document.getFirstChild();
+		while (node != null) {
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				enter((Element) node, openCounts);
+			}
+
+			Node child = node.getFirstChild();
+			if (child != null && (node.getNodeType() == Node.ELEMENT_NODE || node.getNodeType() == Node.ENTITY_REFERENCE_NODE)) {
+				node = child;
+				continue;
+			}
+
+			while (node != null) {
+				if (node.getNodeType() == Node.ELEMENT_NODE) {
+					openCounts.get(nameOf(node))[0]--;
+				}
+
+				Node next = node.getNextSibling();
+				if (next != null) {
+					node = next;
+					break;
+				}
+
+				node = node.getParentNode();
+				if (node == document) {
+					node = null;
+				}
+			}
+		}
+	}
+
+	private void enter(Element element, Map<QName, int[]> openCounts) {
+		QName name = nameOf(element);
+
+		List<Element> elements = byName.get(name);
+		if (elements == null) {
+			elements = new ArrayList<Element>();
+			byName.put(name, elements);
+		}
+		elements.add(element);
+
+		int[] openCount = openCounts.get(name);
+		if (openCount == null) {
+			openCount = new int[1];
+			openCounts.put(name, openCount);
+		}
+		if (openCount[0] > 0) {
+			nestedNames.add(name);
+		}
+		openCount[0]++;
+
+		if (byAttribute.isEmpty() || !element.hasAttributes()) {
+			return;
+		}
+
+		NamedNodeMap attrs = element.getAttributes();
+		for (int i = 0; i < attrs.getLength(); i++) {
+			Node attr = attrs.item(i);
+			Map<String, List<Element>> byValue = byAttribute.get(nameOf(attr));
+			if (byValue == null) {
+				continue;
+			}
+
+			String value = ((Attr) attr).getValue();
+			List<Element> owners = byValue.get(value);
+			if (owners == null) {
+				owners = new ArrayList<Element>(1);
+				byValue.put(value, owners);
+			}
+			owners.add(element);
+		}
+	}
+
+	private static QName nameOf(Node node) {
+		String namespaceURI = node.getNamespaceURI();
+		if (namespaceURI == null) {
+			namespaceURI = XMLConstants.NULL_NS_URI;
+		}
+
+		return new QName(namespaceURI, PathNodeIterator.localNameOf(node));
+	}
+
+	/**
+	 * Returns the first {@code limit} nodes selected by {@code path}, or null
+	 * if the index cannot answer the path.
+	 *
+	 * <p>
+	 * The index answers absolute paths whose first step is a descendant step
+	 * with a name test and no positional predicates, followed only by child
+	 * steps; the elements that match the first step are looked up instead of
+	 * searched.
+	 */
+	List<Node> select(SimplePath path, int limit) {
+		if (!path.absolute || path.steps.isEmpty()) {
+			return null;
+		}
+
+		SimplePath.Step first = path.steps.get(0);
+		if (!first.descendant || first.namespaceURI == null || first.localName == null) {
+			return null;
+		}
+		for (SimplePath.Predicate predicate : first.predicates) {
+			if (predicate.isPositional()) {
+				return null;
+			}
+		}
+		for (int s = 1; s < path.steps.size(); s++) {
+			if (path.steps.get(s).descendant) {
+				return null;
+			}
+		}
+		if (path.attributeStep != null && path.attributeStep.descendant) {
+			return null;
+		}
+
+		QName name = new QName(first.namespaceURI, first.localName);
+		if (path.steps.size() > 1 && nestedNames.contains(name)) {
+			// the matches of nested candidates would interleave
+			return null;
+		}
+
+		List<Node> nodes = new ArrayList<Node>();
+		SimplePath tail = (path.steps.size() > 1) ? path.tail() : null;
+
+		for (Element candidate : candidates(first, name)) {
+			if (nodes.size() >= limit) {
+				break;
+			}
+			if (!first.matches(candidate.getNamespaceURI(), PathNodeIterator.localNameOf(candidate)) || !attributesMatch(candidate, first.predicates)) {
+				continue;
+			}
+
+			if (tail != null) {
+				PathNodeIterator walker = new PathNodeIterator(tail, candidate, NodeFilter.SHOW_ALL, null);
+				Node node;
+				while (nodes.size() < limit && (node = walker.produceNext()) != null) {
+					nodes.add(node);
+				}
+			} else if (path.attributeStep != null) {
+				addAttributes(candidate, path.attributeStep, nodes, limit);
+			} else {
+				nodes.add(candidate);
+			}
+		}
+
+		return nodes;
+	}
+
+	private List<Element> candidates(SimplePath.Step first, QName name) {
+		for (SimplePath.Predicate predicate : first.predicates) {
+			if (predicate.value == null) {
+				continue;
+			}
+
+			Map<String, List<Element>> byValue = byAttribute.get(new QName(predicate.attribute.namespaceURI, predicate.attribute.localName));
+			if (byValue != null) {
+				List<Element> owners = byValue.get(predicate.value);
+				return (owners != null) ? owners : Collections.<Element> emptyList();
+			}
+		}
+
+		List<Element> elements = byName.get(name);
+		return (elements != null) ? elements : Collections.<Element> emptyList();
+	}
+
+	private static boolean attributesMatch(Element element, List<SimplePath.Predicate> predicates) {
+		for (SimplePath.Predicate predicate : predicates) {
+			String value = attributeValue(element, predicate.attribute);
+			if (value == null || (predicate.value != null && !predicate.value.equals(value))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static String attributeValue(Element element, SimplePath.NameTest nameTest) {
+		NamedNodeMap attrs = element.getAttributes();
+
+		for (int i = 0; i < attrs.getLength(); i++) {
+			Node attr = attrs.item(i);
+			if (!PathNodeIterator.isNamespaceDeclaration(attr) && nameTest.matches(attr.getNamespaceURI(), PathNodeIterator.localNameOf(attr))) {
+				return attr.getNodeValue();
+			}
+		}
+
+		return null;
+	}
+
+	private static void addAttributes(Element element, SimplePath.Step attributeStep, List<Node> nodes, int limit) {
+		NamedNodeMap attrs = element.getAttributes();
+
+		for (int i = 0; i < attrs.getLength() && nodes.size() < limit; i++) {
+			Node attr = attrs.item(i);
+			if (!PathNodeIterator.isNamespaceDeclaration(attr) && attributeStep.matches(attr.getNamespaceURI(), PathNodeIterator.localNameOf(attr))) {
+				nodes.add(attr);
+			}
+		}
+	}
+}
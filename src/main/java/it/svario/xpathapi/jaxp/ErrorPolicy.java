@@ -0,0 +1,22 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * What to do when the evaluation on one of many nodes fails.
+ *
+ * @see XPathParallel#setErrorPolicy(ErrorPolicy)
+ */
+public enum ErrorPolicy {
+	/**
+	 * The whole evaluation fails with the exception raised by the first
+	 * failing node, in input order.
+	 */
+	FAIL,
+
+	/**
+	 * The result for the failing node is {@code null} and the evaluation
+	 * continues with the other nodes.
+	 */
+	RETURN_NULL
+}
@@ -0,0 +1,37 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * The strategies used by XPathAPI to reuse its internal {@code XPath}
+ * objects.
+ *
+ * <p>
+ * The {@code XPathFactory} is always created once. JAXP {@code XPath}
+ * objects and their compiled expressions are not thread-safe, so they are
+ * either bound to a thread or lent to one thread at a time.
+ *
+ * @see XPathAPI#setEvaluatorMode(EvaluatorMode)
+ */
+public enum EvaluatorMode {
+	/**
+	 * Each thread keeps its own {@code XPath} object and its own compiled
+	 * expressions for as long as the thread lives.
+	 *
+	 * <p>
+	 * This is the fastest mode for a fixed number of long-lived threads.
+	 */
+	THREAD_LOCAL,
+
+	/**
+	 * {@code XPath} objects and their compiled expressions are kept in a
+	 * shared bounded pool and borrowed for the duration of each query.
+	 *
+	 * <p>
+	 * This mode is suited for virtual threads and for short-lived threads,
+	 * for which per-thread state would never be reused.
+	 *
+	 * @see XPathAPI#setEvaluatorPoolSize(int)
+	 */
+	POOLED
+}
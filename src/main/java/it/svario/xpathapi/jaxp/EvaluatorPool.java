@@ -0,0 +1,170 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out {@link XPathEvaluator}s of an {@link XPathEngine} according to
+ * the current {@link EvaluatorMode}.
+ *
+ * <p>
+ * The pool never blocks: when all the pooled evaluators are in use a new one
+ * is created, and it is discarded on release if the pool is already full.
+ * Evaluators of an engine other than the default one are bound to their
+ * thread or pooled just like those of the default engine, but separately.
+ */
+class EvaluatorPool {
+	static final int DEFAULT_POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+	private static volatile XPathEngine defaultEngine = FactoryEngine.fromSystemProperty();
+
+	private static volatile EvaluatorMode mode = EvaluatorMode.THREAD_LOCAL;
+	private static volatile int poolSize = DEFAULT_POOL_SIZE;
+
+	private static final ConcurrentMap<XPathEngine, Pool> pools = new ConcurrentHashMap<XPathEngine, Pool>();
+
+	private static final ThreadLocal<XPathEvaluator> threadEvaluators = new ThreadLocal<XPathEvaluator>();
+	private static final ThreadLocal<Map<XPathEngine, XPathEvaluator>> otherThreadEvaluators = new ThreadLocal<Map<XPathEngine, XPathEvaluator>>() {
+		@Override
+		protected Map<XPathEngine, XPathEvaluator> initialValue() {
+			return new IdentityHashMap<XPathEngine, XPathEvaluator>();
+		}
+	};
+
+	static XPathEvaluator acquire() {
+		return acquire(defaultEngine);
+	}
+
+	static XPathEvaluator acquire(XPathEngine engine) {
+		if (mode == EvaluatorMode.THREAD_LOCAL) {
+			return threadEvaluator(engine);
+		}
+
+		return poolOf(engine).acquire();
+	}
+
+	private static XPathEvaluator threadEvaluator(XPathEngine engine) {
+		XPathEvaluator evaluator = threadEvaluators.get();
+		if (evaluator != null && evaluator.getEngine() == engine) {
+			return evaluator;
+		}
+
+		if (engine == defaultEngine) {
+			evaluator = new XPathEvaluator(engine, false);
+			threadEvaluators.set(evaluator);
+			return evaluator;
+		}
+
+		Map<XPathEngine, XPathEvaluator> evaluators = otherThreadEvaluators.get();
+		evaluator = evaluators.get(engine);
+		if (evaluator == null) {
+			evaluator = new XPathEvaluator(engine, false);
+			evaluators.put(engine, evaluator);
+		}
+
+		return evaluator;
+	}
+
+	private static Pool poolOf(XPathEngine engine) {
+		Pool pool = pools.get(engine);
+		if (pool == null) {
+			pool = pools.computeIfAbsent(engine, Pool::new);
+		}
+
+		return pool;
+	}
+
+	static void release(XPathEvaluator evaluator) {
+		if (!evaluator.isPooled() || mode != EvaluatorMode.POOLED) {
+			return;
+		}
+
+		poolOf(evaluator.getEngine()).release(evaluator);
+	}
+
+	static XPathEngine getDefaultEngine() {
+		return defaultEngine;
+	}
+
+	static void setDefaultEngine(XPathEngine engine) {
+		if (engine == null) {
+			throw new IllegalArgumentException("XPath engine cannot be null");
+		}
+
+		XPathEngine previous = defaultEngine;
+		defaultEngine = engine;
+		if (previous != engine) {
+			pools.remove(previous);
+		}
+	}
+
+	static EvaluatorMode getMode() {
+		return mode;
+	}
+
+	static void setMode(EvaluatorMode newMode) {
+		if (newMode == null) {
+			throw new IllegalArgumentException("Evaluator mode cannot be null");
+		}
+
+		mode = newMode;
+	}
+
+	static int getPoolSize() {
+		return poolSize;
+	}
+
+	static void setPoolSize(int newPoolSize) {
+		if (newPoolSize < 0) {
+			throw new IllegalArgumentException("Negative pool size: " + newPoolSize);
+		}
+
+		poolSize = newPoolSize;
+
+		for (Pool pool : pools.values()) {
+			pool.trim();
+		}
+	}
+
+	private static final class Pool {
+		private final XPathEngine engine;
+		private final Queue<XPathEvaluator> idleEvaluators = new ConcurrentLinkedQueue<XPathEvaluator>();
+		private final AtomicInteger idleCount = new AtomicInteger();
+
+		Pool(XPathEngine engine) {
+			this.engine = engine;
+		}
+
+		XPathEvaluator acquire() {
+			XPathEvaluator evaluator = idleEvaluators.poll();
+			if (evaluator == null) {
+				return new XPathEvaluator(engine, true);
+			}
+
+			idleCount.decrementAndGet();
+			return evaluator;
+		}
+
+		void release(XPathEvaluator evaluator) {
+			if (idleCount.incrementAndGet() > poolSize) {
+				idleCount.decrementAndGet();
+				return;
+			}
+
+			idleEvaluators.offer(evaluator);
+		}
+
+		void trim() {
+			while (idleCount.get() > poolSize && idleEvaluators.poll() != null) {
+				idleCount.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * A size-bounded LRU cache of compiled XPath expressions.
+ *
+ * <p>
+ * Compiled {@code XPathExpression}s are not guaranteed to be thread-safe by
+ * JAXP, so every {@link XPathEvaluator} keeps its own set of compiled
+ * expressions. The capacity, the statistics and the {@link #clear()}
+ * operation are instead shared by all the caches.
+ */
+class ExpressionCache {
+	static final int DEFAULT_CAPACITY = 256;
+
+	private static volatile int capacity = DEFAULT_CAPACITY;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+	private static final AtomicInteger generation = new AtomicInteger();
+
+	private final Map<Key, CompiledExpression> entries;
+	private int entriesGeneration;
+
+	ExpressionCache() {
+		entries = new LinkedHashMap<Key, CompiledExpression>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CompiledExpression> eldest) {
+				if (size() > capacity) {
+					evictions.incrementAndGet();
+					return true;
+				}
+
+				return false;
+			}
+		};
+		entriesGeneration = generation.get();
+	}
+
+	/**
+	 * Returns the compiled form of {@code xpathString}, compiling it with
+	 * {@code xpath} only if it has not been compiled already with the same
+	 * namespace bindings.
+	 */
+	CompiledExpression compile(XPath xpath, String xpathString, NamespaceContext nsContext) throws XPathExpressionException {
+		if (capacity == 0) {
+			misses.incrementAndGet();
+			return CompiledExpression.compile(xpath, xpathString, nsContext);
+		}
+
+		int currentGeneration = generation.get();
+		if (entriesGeneration != currentGeneration) {
+			entries.clear();
+			entriesGeneration = currentGeneration;
+		}
+
+		Key key = new Key(xpathString, nsContext);
+
+		CompiledExpression compiled = entries.get(key);
+		if (compiled != null) {
+			hits.incrementAndGet();
+			return compiled;
+		}
+
+		misses.incrementAndGet();
+		compiled = CompiledExpression.compile(xpath, xpathString, nsContext);
+		entries.put(key, compiled);
+
+		return compiled;
+	}
+
+	static int getCapacity() {
+		return capacity;
+	}
+
+	static void setCapacity(int newCapacity) {
+		if (newCapacity < 0) {
+			throw new IllegalArgumentException("Negative cache capacity: " + newCapacity);
+		}
+
+		capacity = newCapacity;
+		clear();
+	}
+
+	static void clear() {
+		generation.incrementAndGet();
+	}
+
+	static CacheStatistics statistics() {
+		return new CacheStatistics(hits.get(), misses.get(), evictions.get(), capacity);
+	}
+
+	private static final class Key {
+		private final String xpathString;
+		private final NamespaceContext nsContext;
+		private final int hashCode;
+
+		Key(String xpathString, NamespaceContext nsContext) {
+			this.xpathString = xpathString;
+			this.nsContext = nsContext;
+			this.hashCode = 31 * xpathString.hashCode() + nsContext.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+			return hashCode == other.hashCode && xpathString.equals(other.xpathString) && nsContext.equals(other.nsContext);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * An immutable snapshot of the evaluations of one expression recorded by a
+ * {@link SlowQueryLog}.
+ */
+public final class ExpressionProfile {
+	private final String expression;
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final long slowCount;
+
+	ExpressionProfile(String expression, long count, long totalNanos, long maxNanos, long slowCount) {
+		this.expression = expression;
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.slowCount = slowCount;
+	}
+
+	/**
+	 * Returns the expression, in its template form.
+	 *
+	 * @return the expression
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Returns the number of evaluations of the expression.
+	 *
+	 * @return the number of evaluations
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the total time spent evaluating the expression.
+	 *
+	 * @return the total time, in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Returns the average time of an evaluation of the expression.
+	 *
+	 * @return the mean time in nanoseconds, or {@code 0.0} if the
+	 *         expression has not been evaluated
+	 */
+	public double getMeanNanos() {
+		return (count == 0) ? 0.0 : (double) totalNanos / count;
+	}
+
+	/**
+	 * Returns the longest evaluation of the expression.
+	 *
+	 * @return the maximum time, in nanoseconds
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * Returns the number of evaluations slower than the threshold.
+	 *
+	 * @return the number of slow evaluations
+	 */
+	public long getSlowCount() {
+		return slowCount;
+	}
+
+	@Override
+	public String toString() {
+		return "ExpressionProfile[" + expression + ", count=" + count + ", total=" + (totalNanos / 1000) + "us, max=" + (maxNanos / 1000) + "us, slow=" + slowCount + "]";
+	}
+}
@@ -0,0 +1,53 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+
+/**
+ * An {@link XPathEngine} backed by a JAXP {@code XPathFactory}.
+ *
+ * <p>
+ * {@code XPathFactory} is not thread-safe, so the creation of new
+ * {@code XPath} objects is serialized.
+ */
+final class FactoryEngine implements XPathEngine {
+	static final String JDK_FACTORY_CLASS = "com.sun.org.apache.xpath.internal.jaxp.XPathFactoryImpl";
+
+	private final XPathFactory factory;
+	private final String name;
+
+	FactoryEngine(XPathFactory factory, String name) {
+		this.factory = factory;
+		this.name = name;
+	}
+
+	/**
+	 * Returns the default engine, as chosen with
+	 * {@link XPathEngine#ENGINE_PROPERTY}.
+	 */
+	static XPathEngine fromSystemProperty() {
+		String engine = System.getProperty(ENGINE_PROPERTY);
+		if (engine == null || engine.isEmpty()) {
+			return XPathEngine.discovered();
+		}
+		if (engine.equals("jdk")) {
+			return XPathEngine.jdk();
+		}
+
+		return XPathEngine.forFactoryClass(engine, null);
+	}
+
+	@Override
+	public XPath newXPath() {
+		synchronized (factory) {
+			return factory.newXPath();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "XPathEngine[" + name + "]";
+	}
+}
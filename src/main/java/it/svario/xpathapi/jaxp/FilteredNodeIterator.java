@@ -0,0 +1,126 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Node;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+
+/**
+ * A {@code NodeIterator} over nodes produced on demand by a subclass and
+ * filtered with {@code whatToShow} and a {@code NodeFilter}.
+ *
+ * <p>
+ * The nodes already returned are kept so that {@code previousNode} can walk
+ * back over them; nodes that have not been requested yet are never
+ * produced. As for any {@code NodeIterator}, {@link NodeFilter#FILTER_SKIP}
+ * and {@link NodeFilter#FILTER_REJECT} have the same effect.
+ */
+abstract class FilteredNodeIterator implements NodeIterator {
+	private final Node root;
+	private final int whatToShow;
+	private final NodeFilter filter;
+
+	private final List<Node> visited = new ArrayList<Node>();
+	private int position;
+	private boolean detached;
+	private boolean exhausted;
+
+	protected FilteredNodeIterator(Node root, int whatToShow, NodeFilter filter) {
+		this.root = root;
+		this.whatToShow = whatToShow;
+		this.filter = filter;
+	}
+
+	/**
+	 * Returns the next candidate node, or null if there are no more nodes.
+	 */
+	protected abstract Node produceNext();
+
+	/**
+	 * Releases the resources held to produce the next nodes.
+	 */
+	protected void release() {
+	}
+
+	@Override
+	public void detach() {
+		detached = true;
+		visited.clear();
+		release();
+	}
+
+	@Override
+	public boolean getExpandEntityReferences() {
+		return true;
+	}
+
+	@Override
+	public NodeFilter getFilter() {
+		return filter;
+	}
+
+	@Override
+	public Node getRoot() {
+		return root;
+	}
+
+	@Override
+	public int getWhatToShow() {
+		return whatToShow;
+	}
+
+	@Override
+	public Node nextNode() throws DOMException {
+		checkValidState("next");
+
+		if (position < visited.size()) {
+			return visited.get(position++);
+		}
+
+		while (!exhausted) {
+			Node node = produceNext();
+			if (node == null) {
+				exhausted = true;
+				release();
+			} else if (accept(node)) {
+				visited.add(node);
+				position++;
+				return node;
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public Node previousNode() throws DOMException {
+		checkValidState("previous");
+
+		if (position == 0) {
+			return null;
+		}
+
+		position--;
+		return visited.get(position);
+	}
+
+	private boolean accept(Node node) {
+		int typeMask = 1 << (node.getNodeType() - 1);
+		if ((whatToShow & typeMask) == 0) {
+			return false;
+		}
+
+		return filter == null || filter.acceptNode(node) == NodeFilter.FILTER_ACCEPT;
+	}
+
+	private void checkValidState(String direction) throws DOMException {
+		if (detached) {
+			String msg = "Called " + direction + "Node() after detach()";
+			throw new DOMException(DOMException.INVALID_STATE_ERR, msg);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.Collection;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Reports the duration of the phases of the evaluations to the current
+ * {@link QueryListener} and {@link SlowQueryLog}.
+ *
+ * <p>
+ * Phases are timed with {@link #start()} and {@link #end}; whole
+ * evaluations are reported to the {@link SlowQueryLog} with
+ * {@link #completed}. When neither a listener nor a slow-query log is set,
+ * the clock is never read and the cost is that of a volatile read.
+ */
+final class Instrumentation {
+	static final long NOT_TIMED = Long.MIN_VALUE;
+
+	private static volatile QueryListener listener;
+	private static volatile SlowQueryLog slowQueryLog;
+	private static volatile boolean timed;
+
+	private Instrumentation() {
+	}
+
+	static QueryListener getListener() {
+		return listener;
+	}
+
+	static synchronized void setListener(QueryListener newListener) {
+		listener = newListener;
+		timed = (listener != null || slowQueryLog != null);
+	}
+
+	static SlowQueryLog getSlowQueryLog() {
+		return slowQueryLog;
+	}
+
+	static synchronized void setSlowQueryLog(SlowQueryLog newSlowQueryLog) {
+		slowQueryLog = newSlowQueryLog;
+		timed = (listener != null || slowQueryLog != null);
+	}
+
+	/**
+	 * Returns the start time of a phase, or {@link #NOT_TIMED} if nobody is
+	 * listening.
+	 */
+	static long start() {
+		return timed ? System.nanoTime() : NOT_TIMED;
+	}
+
+	/**
+	 * Reports the end of a phase started at {@code start} and returns the
+	 * start time of the next phase.
+	 */
+	static long end(QueryPhase phase, String expression, long start, int resultSize) {
+		if (start == NOT_TIMED) {
+			return NOT_TIMED;
+		}
+
+		long end = System.nanoTime();
+
+		QueryListener current = listener;
+		if (current != null) {
+			current.phaseCompleted(phase, expression, end - start, resultSize);
+		}
+
+		return end;
+	}
+
+	/**
+	 * Reports the end of a phase started at {@code start} and shared by all
+	 * of {@code expressions}; each of them is charged an equal part of its
+	 * duration, so that the totals per expression add up to the time spent.
+	 */
+	static void endShared(QueryPhase phase, Collection<String> expressions, long start) {
+		if (start == NOT_TIMED || expressions.isEmpty()) {
+			return;
+		}
+
+		long duration = System.nanoTime() - start;
+
+		QueryListener current = listener;
+		if (current != null) {
+			for (String expression : expressions) {
+				current.phaseCompleted(phase, expression, duration / expressions.size(), -1);
+			}
+		}
+	}
+
+	/**
+	 * Reports to the slow-query log an evaluation that started at
+	 * {@code start} and ended at {@code end}.
+	 */
+	static void completed(String expression, Node contextNode, long start, long end, int resultSize) {
+		SlowQueryLog current = slowQueryLog;
+		if (start == NOT_TIMED || current == null) {
+			return;
+		}
+
+		current.record(expression, contextNode, end - start, resultSize);
+	}
+
+	/**
+	 * Returns the number of nodes in {@code result}, or {@code -1} if it is
+	 * not a node selection.
+	 */
+	static int sizeOf(Object result) {
+		if (result instanceof NodeList) {
+			return ((NodeList) result).getLength();
+		}
+		if (result instanceof Node) {
+			return 1;
+		}
+		if (result == null) {
+			return 0;
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,49 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A read-only list with the textual content of the nodes of a
+ * {@code NodeList}.
+ *
+ * <p>
+ * The textual content of each node is computed only when the element is
+ * first accessed, and is then kept. Like the node lists returned by the
+ * XPath engine, the list is not safe for concurrent access.
+ */
+final class LazyStringList extends AbstractList<String> implements RandomAccess {
+	private final NodeList nodeList;
+	private final String[] strings;
+	private final boolean[] computed;
+
+	LazyStringList(NodeList nodeList) {
+		this.nodeList = nodeList;
+		this.strings = new String[nodeList.getLength()];
+		this.computed = new boolean[strings.length];
+	}
+
+	@Override
+	public String get(int index) {
+		if (index < 0 || index >= strings.length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + strings.length);
+		}
+
+		if (!computed[index]) {
+			Node node = nodeList.item(index);
+			strings[index] = node.getTextContent();
+			computed[index] = true;
+		}
+
+		return strings[index];
+	}
+
+	@Override
+	public int size() {
+		return strings.length;
+	}
+}
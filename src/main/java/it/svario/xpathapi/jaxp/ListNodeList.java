@@ -0,0 +1,56 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A {@code NodeList} backed by a list of nodes.
+ */
+final class ListNodeList implements NodeList {
+	private final List<Node> nodes;
+	private final boolean shared;
+
+	ListNodeList(List<Node> nodes) {
+		this(nodes, false);
+	}
+
+	private ListNodeList(List<Node> nodes, boolean shared) {
+		this.nodes = nodes;
+		this.shared = shared;
+	}
+
+	/**
+	 * Returns a node list backed by an unmodifiable view of {@code nodes},
+	 * meant to be handed out many times.
+	 */
+	static ListNodeList snapshot(List<Node> nodes) {
+		return new ListNodeList(Collections.unmodifiableList(nodes), true);
+	}
+
+	@Override
+	public Node item(int index) {
+		if (index < 0 || index >= nodes.size()) {
+			return null;
+		}
+
+		return nodes.get(index);
+	}
+
+	@Override
+	public int getLength() {
+		return nodes.size();
+	}
+
+	/**
+	 * Returns a modifiable list of the nodes: the list that backs this node
+	 * list, or a copy of it if this node list is a shared snapshot.
+	 */
+	List<Node> asList() {
+		return shared ? new ArrayList<Node>(nodes) : nodes;
+	}
+}
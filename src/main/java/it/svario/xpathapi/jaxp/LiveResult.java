@@ -0,0 +1,360 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.xml.xpath.XPathException;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.w3c.dom.events.MutationEvent;
+import org.w3c.dom.traversal.NodeFilter;
+
+/**
+ * The nodes selected by an {@link XPathQuery}, kept up to date while the
+ * document changes.
+ *
+ * <p>
+ * The result listens for the DOM mutation events of its document. When the
+ * query is a simple location path (see
+ * {@link XPathAPI#setSimplePathEngineEnabled(boolean)}) without positional
+ * predicates, each change is applied incrementally: only the inserted or
+ * removed subtree, or the subtree of the element whose attribute changed,
+ * is matched again, and attribute changes that the path does not test are
+ * ignored. Other queries can depend on any part of the document, so their
+ * result is evaluated again, the next time it is read, after any change to
+ * the tree that contains the context node.
+ *
+ * <pre>
+ * LiveResult selected = XPathQuery.compile("//item[@selected]").selectLiveResult(doc);
+ * selected.addListener(result -&gt; refreshSelection());
+ * ...
+ * selected.close();
+ * </pre>
+ *
+ * <p>
+ * A live result keeps listening until it is closed. Like the DOM itself,
+ * it must not be read while the document is being changed by another
+ * thread.
+ *
+ * @see XPathQuery#selectLiveResult(Node, String...)
+ */
+public final class LiveResult implements EventListener, AutoCloseable {
+	private static final String[] MUTATION_EVENTS = { "DOMNodeInserted", "DOMNodeRemoved", "DOMAttrModified", "DOMCharacterDataModified" };
+
+	private final XPathQuery query;
+	private final Node contextNode;
+	private final String[] args;
+	private final SimplePath path;
+	private final Node root;
+	private final EventTarget target;
+	private final List<LiveResultListener> listeners = new CopyOnWriteArrayList<LiveResultListener>();
+
+	private List<Node> nodes;
+	private boolean stale;
+	private Node removing;
+	private boolean closed;
+
+	LiveResult(XPathQuery query, SimplePath path, Node contextNode, String[] args) throws XPathException {
+		Document document = (contextNode.getNodeType() == Node.DOCUMENT_NODE) ? (Document) contextNode : contextNode.getOwnerDocument();
+		if (!(document instanceof EventTarget) || !document.getImplementation().hasFeature("MutationEvents", "2.0")) {
+			throw new IllegalArgumentException("The DOM implementation does not support mutation events");
+		}
+
+		this.query = query;
+		this.contextNode = contextNode;
+		this.args = args.clone();
+
+		Node treeRoot = PathNodeIterator.rootOf(contextNode);
+		if (path != null && !path.hasPositionalPredicates() && (!path.absolute || treeRoot.getNodeType() == Node.DOCUMENT_NODE)) {
+			this.path = path;
+			this.root = PathNodeIterator.startNode(path, contextNode);
+		} else {
+			this.path = null;
+			this.root = treeRoot;
+		}
+
+		this.nodes = evaluate();
+
+		// Mutation events bubble up to the root of the tree, which is not
+		// the document if the context node is not attached to it.
+		this.target = (EventTarget) treeRoot;
+		for (String eventType : MUTATION_EVENTS) {
+			target.addEventListener(eventType, this, false);
+		}
+	}
+
+	/**
+	 * Returns the query whose result this is.
+	 *
+	 * @return the query
+	 */
+	public XPathQuery getQuery() {
+		return query;
+	}
+
+	/**
+	 * Tells whether the changes to the document are applied incrementally
+	 * or by evaluating the query again.
+	 *
+	 * @return true if the result is updated incrementally
+	 */
+	public boolean isIncremental() {
+		return path != null;
+	}
+
+	/**
+	 * Returns the nodes currently selected by the query, in document order.
+	 *
+	 * @return an unmodifiable snapshot of the selected nodes
+	 *
+	 * @throws XPathException if the query must be evaluated again and its
+	 *             evaluation fails
+	 */
+	public synchronized List<Node> getNodes() throws XPathException {
+		if (stale) {
+			nodes = evaluate();
+			stale = false;
+		}
+
+		return Collections.unmodifiableList(new ArrayList<Node>(nodes));
+	}
+
+	/**
+	 * Registers a listener to be told when the selected nodes change.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addListener(LiveResultListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Listener cannot be null");
+		}
+
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters a listener.
+	 *
+	 * @param listener the listener to remove
+	 */
+	public void removeListener(LiveResultListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Stops following the changes to the document. The nodes read after
+	 * this call are those selected when the result was closed.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		for (String eventType : MUTATION_EVENTS) {
+			target.removeEventListener(eventType, this, false);
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		boolean changed;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+
+			changed = (path != null) ? apply((MutationEvent) event) : invalidate((MutationEvent) event);
+		}
+
+		if (changed) {
+			for (LiveResultListener listener : listeners) {
+				listener.resultChanged(this);
+			}
+		}
+	}
+
+	private boolean invalidate(MutationEvent event) {
+		removing = event.getType().equals("DOMNodeRemoved") ? (Node) event.getTarget() : null;
+		stale = true;
+
+		return true;
+	}
+
+	private boolean apply(MutationEvent event) {
+		Node changed = (Node) event.getTarget();
+		if (changed == root && path.steps.isEmpty() && event.getType().equals("DOMAttrModified")) {
+			// A path such as @id selects the attributes of the root itself.
+			List<Node> attributes = attributesOfRoot();
+			boolean attributesChanged = !attributes.equals(nodes);
+			nodes = attributes;
+			return attributesChanged;
+		}
+		if (changed == root || !isUnder(changed, root)) {
+			return false;
+		}
+
+		switch (event.getType()) {
+		case "DOMNodeInserted":
+			return (changed.getNodeType() == Node.ELEMENT_NODE) ? insert(changed) : fallBackIfEntityReference(changed);
+		case "DOMNodeRemoved":
+			return (changed.getNodeType() == Node.ELEMENT_NODE) ? remove(changed) : fallBackIfEntityReference(changed);
+		case "DOMAttrModified":
+			Node attr = event.getRelatedNode();
+			if (attr != null && (PathNodeIterator.isNamespaceDeclaration(attr) || !path.dependsOnAttribute(attr.getNamespaceURI(), PathNodeIterator.localNameOf(attr)))) {
+				return false;
+			}
+			// A removed attribute has no owner element any more, so it is
+			// not found among the nodes of the subtree of its element.
+			boolean removed = event.getAttrChange() == MutationEvent.REMOVAL && nodes.remove(attr);
+			removed |= remove(changed);
+			return insert(changed) || removed;
+		default:
+			return false;
+		}
+	}
+
+	private boolean fallBackIfEntityReference(Node changed) {
+		if (changed.getNodeType() != Node.ENTITY_REFERENCE_NODE) {
+			return false;
+		}
+
+		removing = null;
+		stale = true;
+		return true;
+	}
+
+	/**
+	 * Adds the matches in the subtree of {@code element}, which are
+	 * contiguous in document order.
+	 */
+	private boolean insert(Node element) {
+		SimplePath.Frame parentFrame = frameOf(element.getParentNode());
+		if (parentFrame == null) {
+			return false;
+		}
+
+		List<Node> matches = new ArrayList<Node>();
+		PathNodeIterator walker = new PathNodeIterator(path, element, parentFrame);
+		Node node;
+		while ((node = walker.produceNext()) != null) {
+			matches.add(node);
+		}
+		if (matches.isEmpty()) {
+			return false;
+		}
+
+		nodes.addAll(indexOf(matches.get(0)), matches);
+		return true;
+	}
+
+	/**
+	 * Removes the matches in the subtree of {@code element}, which are
+	 * contiguous in document order.
+	 */
+	private boolean remove(Node element) {
+		int start = indexOf(element);
+		int end = start;
+		while (end < nodes.size() && isUnder(nodes.get(end), element)) {
+			end++;
+		}
+		if (end == start) {
+			return false;
+		}
+
+		nodes.subList(start, end).clear();
+		return true;
+	}
+
+	private List<Node> attributesOfRoot() {
+		List<Node> attributes = new ArrayList<Node>();
+		PathNodeIterator walker = new PathNodeIterator(path, root, NodeFilter.SHOW_ALL, null);
+		Node node;
+		while ((node = walker.produceNext()) != null) {
+			attributes.add(node);
+		}
+
+		return attributes;
+	}
+
+	/**
+	 * Returns the frame of {@code parent}, computed along its ancestors, or
+	 * null if none of its descendants can be selected.
+	 */
+	private SimplePath.Frame frameOf(Node parent) {
+		List<Node> ancestors = new ArrayList<Node>();
+		for (Node node = parent; node != root; node = node.getParentNode()) {
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				ancestors.add(node);
+			}
+		}
+
+		SimplePath.Frame frame = path.rootFrame();
+		for (int i = ancestors.size() - 1; i >= 0; i--) {
+			Node ancestor = ancestors.get(i);
+			frame = path.childFrame(frame, ancestor.getNamespaceURI(), PathNodeIterator.localNameOf(ancestor), nameTest -> PathNodeIterator.attributeValue(ancestor, nameTest));
+			if (!path.canMatchDescendants(frame)) {
+				return null;
+			}
+		}
+
+		return frame;
+	}
+
+	/**
+	 * Returns the index of the first selected node that does not precede
+	 * {@code node} in document order.
+	 */
+	private int indexOf(Node node) {
+		int low = 0;
+		int high = nodes.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			Node other = nodes.get(middle);
+			if (other != node && (other.compareDocumentPosition(node) & Node.DOCUMENT_POSITION_FOLLOWING) != 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	private static boolean isUnder(Node node, Node ancestor) {
+		if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+			node = ((Attr) node).getOwnerElement();
+		}
+		while (node != null && node != ancestor) {
+			node = node.getParentNode();
+		}
+
+		return node != null;
+	}
+
+	private List<Node> evaluate() throws XPathException {
+		List<Node> selected = new ArrayList<Node>(query.selectListOfNodes(contextNode, args));
+		if (removing != null && removing.getParentNode() != null) {
+			for (int i = selected.size() - 1; i >= 0; i--) {
+				if (isUnder(selected.get(i), removing)) {
+					selected.remove(i);
+				}
+			}
+		}
+
+		return selected;
+	}
+
+	@Override
+	public String toString() {
+		return "LiveResult[" + query.getExpression() + "]";
+	}
+}
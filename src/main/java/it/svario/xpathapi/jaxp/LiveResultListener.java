@@ -0,0 +1,25 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * Is told when the nodes of a {@link LiveResult} change.
+ *
+ * <p>
+ * Listeners are called synchronously, from within the DOM mutation event
+ * that changed the result: when a node is removed, they are called before
+ * it is detached from its parent. They must not modify the document.
+ *
+ * @see LiveResult#addListener(LiveResultListener)
+ */
+@FunctionalInterface
+public interface LiveResultListener {
+	/**
+	 * Called after a change to the document that changed, or for results
+	 * that are not updated incrementally may have changed, the selected
+	 * nodes.
+	 *
+	 * @param result the changed result
+	 */
+	void resultChanged(LiveResult result);
+}
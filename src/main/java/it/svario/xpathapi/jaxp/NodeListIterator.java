@@ -2,86 +2,34 @@
 
 package it.svario.xpathapi.jaxp;
 
-import org.w3c.dom.DOMException;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.traversal.NodeFilter;
-import org.w3c.dom.traversal.NodeIterator;
 
 /**
  * A simple iterator over a NodeList
  */
-class NodeListIterator implements NodeIterator {
-	private final int INVALID = -2;
-
-	private int position;
+class NodeListIterator extends FilteredNodeIterator {
 	private NodeList list;
-	private int length;
+	private int next;
 
-	protected NodeListIterator(final NodeList list) {
+	protected NodeListIterator(final NodeList list, final Node root, final int whatToShow, final NodeFilter filter) {
+		super(root, whatToShow, filter);
 		this.list = list;
-		length = list.getLength();
-		position = 0;
+		this.next = 0;
 	}
 
 	@Override
-	public void detach() {
-		position = INVALID;
-		list = null;
-		length = 0;
-	}
-
-	@Override
-	public boolean getExpandEntityReferences() {
-		// XXX: correct?
-		return true;
-	}
-
-	@Override
-	public NodeFilter getFilter() {
-		// XXX: correct?
-		return null;
-	}
-
-	@Override
-	public Node getRoot() {
-		// XXX: correct?
-		return list.item(0);
-	}
-
-	@Override
-	public int getWhatToShow() {
-		// XXX: correct?
-		return NodeFilter.SHOW_ALL;
-	}
-
-	@Override
-	public Node nextNode() throws DOMException {
-		checkValidState("next");
-
-		if (position >= length) { return null; }
+	protected Node produceNext() {
+		if (next >= list.getLength()) {
+			return null;
+		}
 
-		Node node = list.item(position);
-		position = position + 1;
-		return node;
+		return list.item(next++);
 	}
 
 	@Override
-	public Node previousNode() throws DOMException {
-		checkValidState("previous");
-
-		if (position == 0) { return null; }
-
-		position = position - 1;
-		Node node = list.item(position);
-		return node;
-	}
-
-	private void checkValidState(String direction) throws DOMException {
-		if (position == INVALID) {
-			// FIXME: use the default message string
-			String msg = "Called " + direction + "Node() after detach()";
-			throw new DOMException(DOMException.INVALID_STATE_ERR, msg);
-		}
+	protected void release() {
+		list = null;
 	}
 }
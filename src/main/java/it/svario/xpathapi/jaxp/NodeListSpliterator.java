@@ -0,0 +1,95 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A {@code Spliterator} over a range of a {@code NodeList}.
+ *
+ * <p>
+ * The range is split in halves, so that the parallel streams built on it
+ * are balanced. The node lists returned by the XPath engine are not safe
+ * for concurrent access, so before the first split they are copied, while
+ * holding their lock, into a {@link ListNodeList}, which is read without
+ * locking by all the halves. Node lists that are never split, as in
+ * sequential streams, are read in place.
+ */
+class NodeListSpliterator implements Spliterator<Node> {
+	private static final int CHARACTERISTICS = ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+
+	private NodeList list;
+	private int index;
+	private final int end;
+
+	NodeListSpliterator(NodeList list) {
+		this(list, 0, list.getLength());
+	}
+
+	private NodeListSpliterator(NodeList list, int index, int end) {
+		this.list = list;
+		this.index = index;
+		this.end = end;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Node> action) {
+		if (index >= end) {
+			return false;
+		}
+
+		action.accept(list.item(index++));
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super Node> action) {
+		while (index < end) {
+			action.accept(list.item(index++));
+		}
+	}
+
+	@Override
+	public Spliterator<Node> trySplit() {
+		int mid = (index + end) >>> 1;
+		if (mid <= index) {
+			return null;
+		}
+
+		if (!(list instanceof ListNodeList)) {
+			list = copyOf(list);
+		}
+
+		NodeListSpliterator prefix = new NodeListSpliterator(list, index, mid);
+		index = mid;
+
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return end - index;
+	}
+
+	@Override
+	public int characteristics() {
+		return CHARACTERISTICS;
+	}
+
+	private static ListNodeList copyOf(NodeList list) {
+		synchronized (list) {
+			int length = list.getLength();
+			List<Node> nodes = new ArrayList<Node>(length);
+			for (int i = 0; i < length; i++) {
+				nodes.add(list.item(i));
+			}
+
+			return new ListNodeList(nodes);
+		}
+	}
+}
@@ -4,72 +4,231 @@ package it.svario.xpathapi.jaxp;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
+/**
+ * An immutable set of namespace bindings.
+ *
+ * <p>
+ * The contexts built from caller-supplied mappings are memoised and shared
+ * among all the calls that pass equal mappings. The namespaces in scope for
+ * a node are collected again at every call, unless the node cache is
+ * enabled with {@link #setNodeCacheEnabled(boolean)}: then they are
+ * collected only the first time the node is used as namespace node (the
+ * node is held weakly, so that its document can be garbage collected), and
+ * namespace declarations added, removed or moved afterwards are not seen
+ * until {@link #clearCache()} is called.
+ */
 class NodeNamespaceContext implements NamespaceContext {
-	private Map<String, String> namespaces;
-	private String defaultNSURI;
+	private static final int NODE_STRIPES = 16;
+	private static final int MAX_MAP_CONTEXTS = 256;
 
-	protected NodeNamespaceContext(Node node) {
-		defaultNSURI = null;
-		namespaces = new HashMap<String, String>();
-		addCommonNamespaces();
-		extractNamespacesFromNode(node);
-	}
+	private static final List<Map<Node, NodeNamespaceContext>> nodeContexts = newNodeContexts();
+	private static final ConcurrentMap<MapKey, NodeNamespaceContext> mapContexts = new ConcurrentHashMap<MapKey, NodeNamespaceContext>();
 
-	protected NodeNamespaceContext(Node node, Map<String, String> namespaces) {
-		this(node);
-		this.namespaces.putAll(namespaces);
-	}
+	private static volatile boolean nodeCacheEnabled = false;
+
+	private static final NodeNamespaceContext EMPTY = new NodeNamespaceContext(new HashMap<String, String>(), XMLConstants.NULL_NS_URI);
 
-	private void addCommonNamespaces() {
+	private final Map<String, String> namespaces;
+	private final Map<String, List<String>> prefixesByURI;
+	private final String defaultNSURI;
+	private final int hash;
+
+	private NodeNamespaceContext(Map<String, String> namespaces, String defaultNSURI) {
 		namespaces.put(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI);
 		namespaces.put(XMLConstants.XMLNS_ATTRIBUTE, XMLConstants.XMLNS_ATTRIBUTE_NS_URI);
+
+		this.namespaces = namespaces;
+		this.defaultNSURI = defaultNSURI;
+		this.prefixesByURI = indexPrefixes(namespaces);
+
+		int h = namespaces.hashCode();
+		if (defaultNSURI != null) {
+			h = 31 * h + defaultNSURI.hashCode();
+		}
+		this.hash = h;
+	}
+
+	/**
+	 * Returns the namespaces in scope for {@code node}.
+	 */
+	static NodeNamespaceContext forNode(Node node) {
+		if (!nodeCacheEnabled) {
+			return extractNamespacesFromNode(node);
+		}
+
+		Map<Node, NodeNamespaceContext> contexts = nodeContexts.get(stripeOf(node));
+
+		NodeNamespaceContext nsContext;
+		synchronized (contexts) {
+			nsContext = contexts.get(node);
+		}
+
+		if (nsContext == null) {
+			nsContext = extractNamespacesFromNode(node);
+			synchronized (contexts) {
+				contexts.put(node, nsContext);
+			}
+		}
+
+		return nsContext;
+	}
+
+	/**
+	 * Returns the namespaces in scope for {@code node} overridden by those
+	 * in {@code namespaces}.
+	 */
+	static NodeNamespaceContext forNode(Node node, Map<String, String> namespaces) {
+		return withMapping(forNode(node), namespaces);
+	}
+
+	/**
+	 * Returns the namespaces defined in {@code namespaces}.
+	 */
+	static NodeNamespaceContext forMap(Map<String, String> namespaces) {
+		return withMapping(EMPTY, namespaces);
 	}
 
-	private void extractNamespacesFromNode(Node node) {
-		if (node.getParentNode() == null) {
+	private static NodeNamespaceContext withMapping(NodeNamespaceContext base, Map<String, String> namespaces) {
+		if (namespaces.isEmpty()) {
+			return base;
+		}
+
+		MapKey key = new MapKey(base, namespaces);
+
+		NodeNamespaceContext nsContext = mapContexts.get(key);
+		if (nsContext == null) {
+			Map<String, String> merged = new HashMap<String, String>(base.namespaces);
+			merged.putAll(namespaces);
+			nsContext = new NodeNamespaceContext(merged, base.defaultNSURI);
+
+			if (mapContexts.size() >= MAX_MAP_CONTEXTS) {
+				mapContexts.clear();
+			}
+			mapContexts.put(key.detached(), nsContext);
+		}
+
+		return nsContext;
+	}
+
+	static boolean isNodeCacheEnabled() {
+		return nodeCacheEnabled;
+	}
+
+	static void setNodeCacheEnabled(boolean enabled) {
+		nodeCacheEnabled = enabled;
+		clearCache();
+	}
+
+	/**
+	 * Forgets all the memoised namespace contexts.
+	 */
+	static void clearCache() {
+		for (Map<Node, NodeNamespaceContext> contexts : nodeContexts) {
+			synchronized (contexts) {
+				contexts.clear();
+			}
+		}
+		mapContexts.clear();
+	}
+
+	private static List<Map<Node, NodeNamespaceContext>> newNodeContexts() {
+		List<Map<Node, NodeNamespaceContext>> stripes = new ArrayList<Map<Node, NodeNamespaceContext>>(NODE_STRIPES);
+		for (int i = 0; i < NODE_STRIPES; i++) {
+			stripes.add(new WeakHashMap<Node, NodeNamespaceContext>());
+		}
+
+		return stripes;
+	}
+
+	private static int stripeOf(Node node) {
+		int h = System.identityHashCode(node);
+		h ^= (h >>> 16);
+
+		return h & (NODE_STRIPES - 1);
+	}
+
+	private static NodeNamespaceContext extractNamespacesFromNode(Node node) {
+		Map<String, String> namespaces = new HashMap<String, String>();
+		String defaultNSURI = null;
+
+		if (node.getNodeType() == Node.DOCUMENT_NODE) {
+			node = ((Document) node).getDocumentElement();
+		} else if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+			node = ((Attr) node).getOwnerElement();
+		} else if (node.getNodeType() != Node.ELEMENT_NODE && node.getParentNode() != null) {
+			node = node.getParentNode();
+		} else if (node.getParentNode() == null) {
 			node = node.getFirstChild();
 		}
 
-		NamedNodeMap attrs = node.getAttributes();
+		while (node != null) {
+			NamedNodeMap attrs = node.getAttributes();
+
+			for (int i = 0; i < attrs.getLength(); i++) {
+				Node attr = attrs.item(i);
+				String name = attr.getNodeName();
+				if (isDefaultNS(name) && defaultNSURI == null) {
+					defaultNSURI = attr.getNodeValue();
+				} else if (isPrefix(name)) {
+					String prefix = prefixStringIn(name);
+					String uri = attr.getNodeValue();
+					if (!namespaces.containsKey(prefix)) {
+						namespaces.put(prefix, uri);
+					}
+				}
+			}
 
-		for (int i = 0; i < attrs.getLength(); i++) {
-			Node attr = attrs.item(i);
-			String name = attr.getNodeName();
-			if (isDefaultNS(name) && defaultNSURI == null) {
-				defaultNSURI = attr.getNodeValue();
-			} else if (isPrefix(name)) {
-				String prefix = prefixStringIn(name);
-				String uri = attr.getNodeValue();
-				if (!namespaces.containsKey(prefix)) {
-					namespaces.put(prefix, uri);
+			Node parent = node.getParentNode();
+			if (parent.getNodeType() == Node.ELEMENT_NODE) {
+				node = parent;
+			} else {
+				if (parent.getNodeType() == Node.DOCUMENT_NODE && defaultNSURI == null) {
+					defaultNSURI = XMLConstants.NULL_NS_URI;
 				}
+				node = null;
 			}
 		}
 
-		Node parent = node.getParentNode();
-		if (parent.getNodeType() == Node.ELEMENT_NODE) {
-			extractNamespacesFromNode(parent);
-		} else if (parent.getNodeType() == Node.DOCUMENT_NODE) {
-			if (defaultNSURI == null) {
-				defaultNSURI = XMLConstants.NULL_NS_URI;
+		return new NodeNamespaceContext(namespaces, defaultNSURI);
+	}
+
+	private static Map<String, List<String>> indexPrefixes(Map<String, String> namespaces) {
+		Map<String, List<String>> index = new HashMap<String, List<String>>();
+
+		for (Entry<String, String> ns : namespaces.entrySet()) {
+			List<String> prefixes = index.get(ns.getValue());
+			if (prefixes == null) {
+				prefixes = new ArrayList<String>(1);
+				index.put(ns.getValue(), prefixes);
 			}
+			prefixes.add(ns.getKey());
 		}
+
+		for (Entry<String, List<String>> entry : index.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+
+		return index;
 	}
 
-	private boolean isDefaultNS(String name) {
+	private static boolean isDefaultNS(String name) {
 		return name.equals("xmlns");
 	}
 
-	private boolean isPrefix(String name) {
+	private static boolean isPrefix(String name) {
 		return name.startsWith("xmlns:");
 	}
 
-	private String prefixStringIn(String name) {
+	private static String prefixStringIn(String name) {
 		int startIdx = name.indexOf(":");
 		return name.substring(startIdx + 1);
 	}
@@ -84,8 +243,9 @@ class NodeNamespaceContext implements NamespaceContext {
 			return defaultNSURI;
 		}
 
-		if (namespaces.containsKey(prefix)) {
-			return namespaces.get(prefix);
+		String uri = namespaces.get(prefix);
+		if (uri != null) {
+			return uri;
 		}
 
 		return XMLConstants.NULL_NS_URI;
@@ -101,25 +261,105 @@ class NodeNamespaceContext implements NamespaceContext {
 			return XMLConstants.DEFAULT_NS_PREFIX;
 		}
 
-		for (Entry<String, String> ns : namespaces.entrySet()) {
-			if (ns.getValue().equals(namespaceURI)) {
-				return ns.getKey();
-			}
+		List<String> prefixes = prefixesByURI.get(namespaceURI);
+		if (prefixes != null) {
+			return prefixes.get(0);
 		}
 
 		return null;
 	}
 
 	@Override
-	@SuppressWarnings("rawtypes")
-	public Iterator getPrefixes(String namespaceURI) {
-		Set<String> prefixes = new HashSet<String>();
+	public Iterator<String> getPrefixes(String namespaceURI) {
+		if (namespaceURI == null) {
+			throw new IllegalArgumentException();
+		}
+
+		List<String> prefixes = prefixesByURI.get(namespaceURI);
+
+		if (namespaceURI.equals(defaultNSURI)) {
+			List<String> all = new ArrayList<String>();
+			all.add(XMLConstants.DEFAULT_NS_PREFIX);
+			if (prefixes != null) {
+				all.addAll(prefixes);
+			}
+			return Collections.unmodifiableList(all).iterator();
+		}
 
-		String prefix = getPrefix(namespaceURI);
-		if (prefix != null) {
-			prefixes.add(prefix);
+		if (prefixes == null) {
+			return Collections.<String> emptyList().iterator();
 		}
 
 		return prefixes.iterator();
 	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof NodeNamespaceContext)) {
+			return false;
+		}
+
+		NodeNamespaceContext other = (NodeNamespaceContext) obj;
+		if (hash != other.hash) {
+			return false;
+		}
+
+		if (defaultNSURI == null ? other.defaultNSURI != null : !defaultNSURI.equals(other.defaultNSURI)) {
+			return false;
+		}
+
+		return namespaces.equals(other.namespaces);
+	}
+
+	/**
+	 * The key under which the combination of a context and a
+	 * caller-supplied mapping is memoised.
+	 */
+	private static final class MapKey {
+		private final NodeNamespaceContext base;
+		private final Map<String, String> namespaces;
+		private final int hash;
+
+		MapKey(NodeNamespaceContext base, Map<String, String> namespaces) {
+			this(base, namespaces, 31 * base.hash + namespaces.hashCode());
+		}
+
+		private MapKey(NodeNamespaceContext base, Map<String, String> namespaces, int hash) {
+			this.base = base;
+			this.namespaces = namespaces;
+			this.hash = hash;
+		}
+
+		/**
+		 * Returns a copy of this key that is not affected by later changes
+		 * to the caller's mapping.
+		 */
+		MapKey detached() {
+			return new MapKey(base, new HashMap<String, String>(namespaces), hash);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof MapKey)) {
+				return false;
+			}
+
+			MapKey other = (MapKey) obj;
+			return hash == other.hash && base.equals(other.base) && namespaces.equals(other.namespaces);
+		}
+	}
 }
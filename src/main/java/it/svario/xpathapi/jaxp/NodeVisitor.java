@@ -0,0 +1,30 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import org.w3c.dom.Node;
+
+/**
+ * Receives, one at a time and in document order, the nodes selected by an
+ * XPath expression.
+ *
+ * <pre>
+ * XPathAPI.forEachNode(doc, "//friend", friend -&gt; {
+ *     process(friend);
+ *     return !isLast(friend);
+ * });
+ * </pre>
+ *
+ * @see XPathAPI#forEachNode(Node, String, NodeVisitor, String...)
+ */
+@FunctionalInterface
+public interface NodeVisitor {
+	/**
+	 * Called for each selected node, until it returns false.
+	 *
+	 * @param node the selected node
+	 *
+	 * @return true to visit the next node, false to stop
+	 */
+	boolean visit(Node node);
+}
@@ -0,0 +1,310 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.Arrays;
+import javax.xml.xpath.XPathException;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Extracts the numbers written in the text of nodes into primitive arrays.
+ *
+ * <p>
+ * The text of elements with a single text child, of attributes and of text
+ * nodes is read in place, without concatenating it into a new string; the
+ * digits are then parsed directly. Numbers are written as an optional sign,
+ * digits with an optional decimal point and, for {@code double}s only, an
+ * optional exponent, surrounded by optional whitespace. Doubles with at
+ * most 15 significant digits and a small exponent are computed exactly
+ * with one multiplication or division; the others are delegated to
+ * {@code Double.parseDouble}.
+ */
+final class NumberArrays {
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	private NumberArrays() {
+	}
+
+	static double[] doubles(NodeList nodeList, NumberPolicy policy) throws XPathException {
+		checkPolicy(policy);
+
+		int listLength = nodeList.getLength();
+		double[] values = new double[listLength];
+		int count = 0;
+
+		for (int i = 0; i < listLength; i++) {
+			String text = textOf(nodeList.item(i));
+			double value = parseDouble(text);
+			if (Double.isNaN(value)) {
+				if (policy.isSkip()) {
+					continue;
+				}
+				if (policy.isFail()) {
+					throw notANumber(text);
+				}
+				value = policy.doubleValue();
+			}
+			values[count++] = value;
+		}
+
+		return (count == listLength) ? values : Arrays.copyOf(values, count);
+	}
+
+	static long[] longs(NodeList nodeList, NumberPolicy policy) throws XPathException {
+		checkPolicy(policy);
+		long defaultValue = policy.longValue(false);
+
+		int listLength = nodeList.getLength();
+		long[] values = new long[listLength];
+		int count = 0;
+
+		for (int i = 0; i < listLength; i++) {
+			String text = textOf(nodeList.item(i));
+			long value = parseLong(text, Long.MIN_VALUE, Long.MAX_VALUE);
+			if (value == INVALID && !isLongMinValue(text)) {
+				if (policy.isSkip()) {
+					continue;
+				}
+				if (policy.isFail()) {
+					throw notANumber(text);
+				}
+				value = defaultValue;
+			}
+			values[count++] = value;
+		}
+
+		return (count == listLength) ? values : Arrays.copyOf(values, count);
+	}
+
+	static int[] ints(NodeList nodeList, NumberPolicy policy) throws XPathException {
+		checkPolicy(policy);
+		long defaultValue = policy.longValue(true);
+
+		int listLength = nodeList.getLength();
+		int[] values = new int[listLength];
+		int count = 0;
+
+		for (int i = 0; i < listLength; i++) {
+			String text = textOf(nodeList.item(i));
+			long value = parseLong(text, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			if (value == INVALID) {
+				if (policy.isSkip()) {
+					continue;
+				}
+				if (policy.isFail()) {
+					throw notANumber(text);
+				}
+				value = defaultValue;
+			}
+			values[count++] = (int) value;
+		}
+
+		return (count == listLength) ? values : Arrays.copyOf(values, count);
+	}
+
+	private static void checkPolicy(NumberPolicy policy) {
+		if (policy == null) {
+			throw new IllegalArgumentException("Number policy cannot be null");
+		}
+	}
+
+	private static XPathException notANumber(String text) {
+		return new XPathException("Not a number: \"" + text + "\"");
+	}
+
+	/**
+	 * Returns the text of {@code node}, reading it in place when possible.
+	 */
+	static String textOf(Node node) {
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			Node child = node.getFirstChild();
+			if (child == null) {
+				return "";
+			}
+			if (child.getNextSibling() == null && (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE)) {
+				return ((CharacterData) child).getData();
+			}
+			break;
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+			return ((CharacterData) node).getData();
+		case Node.ATTRIBUTE_NODE:
+			return node.getNodeValue();
+		default:
+			break;
+		}
+
+		String text = node.getTextContent();
+		return (text == null) ? "" : text;
+	}
+
+	/**
+	 * The value returned by {@link #parseLong} for invalid numbers. It is
+	 * also a valid {@code long}, told apart with {@link #isLongMinValue}.
+	 */
+	private static final long INVALID = Long.MIN_VALUE;
+
+	private static boolean isLongMinValue(String text) {
+		return text.trim().equals(Long.toString(Long.MIN_VALUE));
+	}
+
+	/**
+	 * Parses an integer between {@code min} and {@code max}, or returns
+	 * {@link #INVALID}.
+	 */
+	static long parseLong(String text, long min, long max) {
+		int end = trimEnd(text);
+		int i = trimStart(text, end);
+		if (i == end) {
+			return INVALID;
+		}
+
+		boolean negative = false;
+		char first = text.charAt(i);
+		if (first == '-' || first == '+') {
+			negative = (first == '-');
+			i++;
+			if (i == end) {
+				return INVALID;
+			}
+		}
+
+		// Accumulate negatively, as Long.parseLong does, so that the
+		// minimum value does not overflow.
+		long limit = negative ? min : -max;
+		long multiplyLimit = limit / 10;
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || result < multiplyLimit) {
+				return INVALID;
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				return INVALID;
+			}
+			result -= digit;
+		}
+
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parses a decimal number, or returns {@code NaN}.
+	 */
+	static double parseDouble(String text) {
+		int end = trimEnd(text);
+		int start = trimStart(text, end);
+		int i = start;
+		if (i == end) {
+			return Double.NaN;
+		}
+
+		boolean negative = false;
+		char first = text.charAt(i);
+		if (first == '-' || first == '+') {
+			negative = (first == '-');
+			i++;
+		}
+
+		long mantissa = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean anyDigit = false;
+		boolean pointSeen = false;
+
+		for (; i < end; i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				anyDigit = true;
+				if (mantissa != 0 || c != '0') {
+					significantDigits++;
+				}
+				if (significantDigits <= MAX_EXACT_DIGITS) {
+					mantissa = 10 * mantissa + (c - '0');
+					if (pointSeen) {
+						exponent--;
+					}
+				} else if (!pointSeen) {
+					exponent++;
+				}
+			} else if (c == '.' && !pointSeen) {
+				pointSeen = true;
+			} else {
+				break;
+			}
+		}
+		if (!anyDigit) {
+			return Double.NaN;
+		}
+
+		if (i < end) {
+			char c = text.charAt(i);
+			if (c != 'e' && c != 'E') {
+				return Double.NaN;
+			}
+			i++;
+
+			boolean negativeExponent = false;
+			if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+				negativeExponent = (text.charAt(i) == '-');
+				i++;
+			}
+			if (i == end) {
+				return Double.NaN;
+			}
+
+			int explicitExponent = 0;
+			for (; i < end; i++) {
+				int digit = text.charAt(i) - '0';
+				if (digit < 0 || digit > 9) {
+					return Double.NaN;
+				}
+				if (explicitExponent < 100000) {
+					explicitExponent = 10 * explicitExponent + digit;
+				}
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+
+		if (mantissa == 0) {
+			return negative ? -0.0 : 0.0;
+		}
+		if (significantDigits > MAX_EXACT_DIGITS || exponent < -22 || exponent > 22) {
+			return Double.parseDouble(text.substring(start, end));
+		}
+
+		double value = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+		return negative ? -value : value;
+	}
+
+	private static int trimEnd(String text) {
+		int end = text.length();
+		while (end > 0 && isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+
+		return end;
+	}
+
+	private static int trimStart(String text, int end) {
+		int start = 0;
+		while (start < end && isWhitespace(text.charAt(start))) {
+			start++;
+		}
+
+		return start;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+}
@@ -0,0 +1,90 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * What to do with the selected nodes whose text is empty or is not a
+ * number, when numbers are extracted into primitive arrays.
+ *
+ * @see XPathAPI#selectDoubles(org.w3c.dom.Node, String, NumberPolicy, String...)
+ */
+public final class NumberPolicy {
+	/**
+	 * The node is left out of the result, which is then shorter than the
+	 * selection.
+	 */
+	public static final NumberPolicy SKIP = new NumberPolicy("SKIP", 0, 0);
+
+	/**
+	 * The value for the node is {@code NaN}. This policy can only be used
+	 * for {@code double} results.
+	 */
+	public static final NumberPolicy NAN = new NumberPolicy("NAN", Double.NaN, 0);
+
+	/**
+	 * The extraction fails with an {@code XPathException}.
+	 */
+	public static final NumberPolicy FAIL = new NumberPolicy("FAIL", 0, 0);
+
+	private final String name;
+	private final double doubleValue;
+	private final long longValue;
+
+	private NumberPolicy(String name, double doubleValue, long longValue) {
+		this.name = name;
+		this.doubleValue = doubleValue;
+		this.longValue = longValue;
+	}
+
+	/**
+	 * Returns the policy that uses {@code value} for the nodes that are not
+	 * numbers.
+	 *
+	 * @param value the value used in place of the invalid numbers
+	 *
+	 * @return the policy
+	 */
+	public static NumberPolicy orDefault(double value) {
+		return new NumberPolicy("DEFAULT(" + value + ")", value, (long) value);
+	}
+
+	/**
+	 * Returns the policy that uses {@code value} for the nodes that are not
+	 * numbers.
+	 *
+	 * @param value the value used in place of the invalid numbers
+	 *
+	 * @return the policy
+	 */
+	public static NumberPolicy orDefault(long value) {
+		return new NumberPolicy("DEFAULT(" + value + ")", value, value);
+	}
+
+	boolean isSkip() {
+		return this == SKIP;
+	}
+
+	boolean isFail() {
+		return this == FAIL;
+	}
+
+	double doubleValue() {
+		return doubleValue;
+	}
+
+	long longValue(boolean isInt) {
+		if (this == NAN) {
+			throw new IllegalArgumentException("NaN cannot be stored in an integer array");
+		}
+		if (isInt && (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE)) {
+			throw new IllegalArgumentException("Default value out of int range: " + longValue);
+		}
+
+		return longValue;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
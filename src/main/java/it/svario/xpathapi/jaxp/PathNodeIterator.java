@@ -0,0 +1,235 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.XMLConstants;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.traversal.NodeFilter;
+
+/**
+ * An iterator that evaluates a {@link SimplePath} while it walks the DOM
+ * tree, one match at a time.
+ *
+ * <p>
+ * The tree is walked in document order and the subtrees that cannot contain
+ * any match are not entered, so the cost of the iteration is proportional
+ * to the part of the tree that precedes the last requested node.
+ */
+class PathNodeIterator extends FilteredNodeIterator implements SimplePath.Attributes {
+	private final SimplePath path;
+
+	private final List<Level> levels;
+	private final List<Node> pendingAttributes;
+	private Node current;
+
+	PathNodeIterator(SimplePath path, Node contextNode, int whatToShow, NodeFilter filter) {
+		super(startNode(path, contextNode), whatToShow, filter);
+		this.path = path;
+		this.levels = new ArrayList<Level>();
+		this.pendingAttributes = new ArrayList<Node>(0);
+
+		Node start = getRoot();
+		SimplePath.Frame rootFrame = path.rootFrame();
+		if (path.attributeStep != null && path.isMatch(rootFrame) && start.getNodeType() == Node.ELEMENT_NODE) {
+			// A path made only of an attribute step, such as @id, selects
+			// the attributes of the start node itself.
+			collectAttributes(start);
+		}
+		if (path.canMatchDescendants(rootFrame)) {
+			levels.add(new Level(start, rootFrame, firstChild(start), false));
+		}
+	}
+
+	/**
+	 * Creates an iterator over the matches in the subtree of
+	 * {@code element}, element included, given the frame of its parent.
+	 * Paths with positional predicates cannot be matched this way, because
+	 * the preceding siblings of {@code element} are not counted.
+	 */
+	PathNodeIterator(SimplePath path, Node element, SimplePath.Frame parentFrame) {
+		super(element, NodeFilter.SHOW_ALL, null);
+		this.path = path;
+		this.levels = new ArrayList<Level>();
+		this.pendingAttributes = new ArrayList<Node>(0);
+
+		levels.add(new Level(element.getParentNode(), parentFrame, element, true));
+	}
+
+	/**
+	 * Returns the node whose subtree is walked: the root of the tree that
+	 * contains the context node for absolute paths, the context node
+	 * otherwise.
+	 */
+	static Node startNode(SimplePath path, Node contextNode) {
+		if (!path.absolute) {
+			return contextNode;
+		}
+
+		return rootOf(contextNode);
+	}
+
+	/**
+	 * Returns the root of the tree that contains {@code node}.
+	 */
+	static Node rootOf(Node node) {
+		Node root = node;
+		if (root.getNodeType() == Node.ATTRIBUTE_NODE && ((Attr) root).getOwnerElement() != null) {
+			root = ((Attr) root).getOwnerElement();
+		}
+		while (root.getParentNode() != null) {
+			root = root.getParentNode();
+		}
+
+		return root;
+	}
+
+	@Override
+	protected Node produceNext() {
+		while (true) {
+			if (!pendingAttributes.isEmpty()) {
+				return pendingAttributes.remove(0);
+			}
+
+			if (levels.isEmpty()) {
+				return null;
+			}
+
+			Level level = levels.get(levels.size() - 1);
+			Node child = level.nextChild;
+			if (child == null) {
+				levels.remove(levels.size() - 1);
+				continue;
+			}
+			level.nextChild = level.single ? null : nextSibling(child, level.node);
+
+			if (child.getNodeType() != Node.ELEMENT_NODE) {
+				continue;
+			}
+
+			current = child;
+			SimplePath.Frame frame = path.childFrame(level.frame, child.getNamespaceURI(), localNameOf(child), this);
+			current = null;
+
+			if (path.canMatchDescendants(frame)) {
+				levels.add(new Level(child, frame, firstChild(child), false));
+			}
+
+			if (path.isMatch(frame)) {
+				if (path.attributeStep == null) {
+					return child;
+				}
+				collectAttributes(child);
+			}
+		}
+	}
+
+	@Override
+	protected void release() {
+		levels.clear();
+		pendingAttributes.clear();
+	}
+
+	@Override
+	public String getValue(SimplePath.NameTest nameTest) {
+		return attributeValue(current, nameTest);
+	}
+
+	/**
+	 * Returns the value of the first attribute of {@code element} that
+	 * matches {@code nameTest}, or null if there is none.
+	 */
+	static String attributeValue(Node element, SimplePath.NameTest nameTest) {
+		NamedNodeMap attrs = element.getAttributes();
+
+		for (int i = 0; i < attrs.getLength(); i++) {
+			Node attr = attrs.item(i);
+			if (!isNamespaceDeclaration(attr) && nameTest.matches(attr.getNamespaceURI(), localNameOf(attr))) {
+				return attr.getNodeValue();
+			}
+		}
+
+		return null;
+	}
+
+	private void collectAttributes(Node element) {
+		NamedNodeMap attrs = element.getAttributes();
+
+		for (int i = 0; i < attrs.getLength(); i++) {
+			Node attr = attrs.item(i);
+			if (!isNamespaceDeclaration(attr) && path.attributeStep.matches(attr.getNamespaceURI(), localNameOf(attr))) {
+				pendingAttributes.add(attr);
+			}
+		}
+	}
+
+	static boolean isNamespaceDeclaration(Node attr) {
+		if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI())) {
+			return true;
+		}
+
+		String name = ((Attr) attr).getName();
+		return name.equals(XMLConstants.XMLNS_ATTRIBUTE) || name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":");
+	}
+
+	static String localNameOf(Node node) {
+		String localName = node.getLocalName();
+		if (localName == null) {
+			return node.getNodeName();
+		}
+
+		return localName;
+	}
+
+	/**
+	 * Returns the first child of {@code parent}, looking through entity
+	 * references as XPath does.
+	 */
+	private static Node firstChild(Node parent) {
+		return enter(parent.getFirstChild(), parent);
+	}
+
+	private static Node nextSibling(Node node, Node parent) {
+		Node next = node.getNextSibling();
+		if (next != null) {
+			return enter(next, parent);
+		}
+
+		Node up = node.getParentNode();
+		if (up == null || up == parent) {
+			return null;
+		}
+
+		return nextSibling(up, parent);
+	}
+
+	private static Node enter(Node node, Node parent) {
+		if (node == null || node.getNodeType() != Node.ENTITY_REFERENCE_NODE) {
+			return node;
+		}
+
+		Node child = node.getFirstChild();
+		if (child != null) {
+			return enter(child, parent);
+		}
+
+		return nextSibling(node, parent);
+	}
+
+	private static final class Level {
+		final Node node;
+		final SimplePath.Frame frame;
+		final boolean single;
+		Node nextChild;
+
+		Level(Node node, SimplePath.Frame frame, Node nextChild, boolean single) {
+			this.node = node;
+			this.frame = frame;
+			this.nextChild = nextChild;
+			this.single = single;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * An immutable snapshot of the latencies of one phase of the evaluations of
+ * one expression.
+ *
+ * <p>
+ * Percentiles are estimated from a histogram with power-of-two buckets:
+ * they are the upper bound of the bucket that contains the percentile and
+ * may overestimate it by up to a factor of two.
+ *
+ * @see QueryMetrics
+ */
+public final class PhaseStatistics {
+	private final String expression;
+	private final QueryPhase phase;
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final long medianNanos;
+	private final long p90Nanos;
+	private final long p99Nanos;
+	private final long resultCount;
+
+	PhaseStatistics(String expression, QueryPhase phase, long count, long totalNanos, long maxNanos, long medianNanos, long p90Nanos, long p99Nanos, long resultCount) {
+		this.expression = expression;
+		this.phase = phase;
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.medianNanos = medianNanos;
+		this.p90Nanos = p90Nanos;
+		this.p99Nanos = p99Nanos;
+		this.resultCount = resultCount;
+	}
+
+	/**
+	 * Returns the expression, in its template form.
+	 *
+	 * @return the expression
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Returns the phase these statistics refer to.
+	 *
+	 * @return the phase
+	 */
+	public QueryPhase getPhase() {
+		return phase;
+	}
+
+	/**
+	 * Returns the number of times the phase has completed.
+	 *
+	 * @return the number of recorded events
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the total time spent in the phase.
+	 *
+	 * @return the sum of the durations, in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Returns the average duration of the phase.
+	 *
+	 * @return the mean duration in nanoseconds, or {@code 0.0} if no event
+	 *         has been recorded
+	 */
+	public double getMeanNanos() {
+		return (count == 0) ? 0.0 : (double) totalNanos / count;
+	}
+
+	/**
+	 * Returns the longest duration of the phase.
+	 *
+	 * @return the maximum duration, in nanoseconds
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * Returns the estimated median duration of the phase.
+	 *
+	 * @return the 50th percentile, in nanoseconds
+	 */
+	public long getMedianNanos() {
+		return medianNanos;
+	}
+
+	/**
+	 * Returns the estimated 90th percentile of the duration of the phase.
+	 *
+	 * @return the 90th percentile, in nanoseconds
+	 */
+	public long getP90Nanos() {
+		return p90Nanos;
+	}
+
+	/**
+	 * Returns the estimated 99th percentile of the duration of the phase.
+	 *
+	 * @return the 99th percentile, in nanoseconds
+	 */
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	/**
+	 * Returns the total number of nodes selected or converted in this
+	 * phase.
+	 *
+	 * @return the sum of the result sizes, not counting phases that do not
+	 *         produce nodes
+	 */
+	public long getResultCount() {
+		return resultCount;
+	}
+
+	@Override
+	public String toString() {
+		return "PhaseStatistics[" + expression + ", " + phase + ", count=" + count + ", mean=" + (long) getMeanNanos() + "ns, p99=" + p99Nanos + "ns, max=" + maxNanos + "ns]";
+	}
+}
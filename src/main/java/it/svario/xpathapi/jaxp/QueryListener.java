@@ -0,0 +1,31 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * Receives the timings of the phases of every XPath evaluation.
+ *
+ * <p>
+ * Listeners are called synchronously, on the thread that runs the query
+ * and possibly from many threads at once: they must be thread-safe, fast
+ * and must not throw exceptions.
+ *
+ * @see XPathAPI#setQueryListener(QueryListener)
+ * @see QueryMetrics
+ */
+public interface QueryListener {
+	/**
+	 * Called after a phase of the evaluation of an expression has completed
+	 * successfully.
+	 *
+	 * @param phase the completed phase
+	 * @param expression the expression as written by the caller, with its
+	 *            "{@code {}}" place-holders not yet replaced by the
+	 *            arguments
+	 * @param durationNanos the duration of the phase, in nanoseconds
+	 * @param resultSize the number of nodes selected or converted, or
+	 *            {@code -1} if the phase does not produce nodes or the
+	 *            expression does not select nodes
+	 */
+	void phaseCompleted(QueryPhase phase, String expression, long durationNanos, int resultSize);
+}
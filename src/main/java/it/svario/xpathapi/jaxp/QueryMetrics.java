@@ -0,0 +1,251 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link QueryListener} that keeps a latency histogram for every phase of
+ * every expression and exposes them over JMX.
+ *
+ * <p>
+ * Recording an event costs a map lookup and a few uncontended atomic
+ * additions. To bound the memory used, at most a fixed number of distinct
+ * expressions are tracked; events of further expressions are recorded
+ * under {@link #OTHER_EXPRESSIONS}.
+ *
+ * <pre>
+ * QueryMetrics metrics = new QueryMetrics();
+ * metrics.registerMBean();
+ * XPathAPI.setQueryListener(metrics);
+ * </pre>
+ *
+ * @see XPathAPI#setQueryListener(QueryListener)
+ */
+public final class QueryMetrics implements QueryListener, QueryMetricsMXBean {
+	/**
+	 * The name under which {@link #registerMBean()} registers the metrics.
+	 */
+	public static final String OBJECT_NAME = "it.svario.xpathapi.jaxp:type=QueryMetrics";
+
+	/**
+	 * The expression under which the events are recorded once the maximum
+	 * number of expressions has been reached.
+	 */
+	public static final String OTHER_EXPRESSIONS = "(other)";
+
+	static final int DEFAULT_MAX_EXPRESSIONS = 1000;
+
+	private static final QueryPhase[] PHASES = QueryPhase.values();
+
+	private final int maxExpressions;
+	private final ConcurrentMap<String, Histogram[]> histograms = new ConcurrentHashMap<String, Histogram[]>();
+
+	/**
+	 * Creates metrics that track up to 1000 distinct expressions.
+	 */
+	public QueryMetrics() {
+		this(DEFAULT_MAX_EXPRESSIONS);
+	}
+
+	/**
+	 * Creates metrics that track up to {@code maxExpressions} distinct
+	 * expressions.
+	 *
+	 * @param maxExpressions the maximum number of expressions tracked
+	 *            separately
+	 *
+	 * @throws IllegalArgumentException if {@code maxExpressions} is negative
+	 */
+	public QueryMetrics(int maxExpressions) {
+		if (maxExpressions < 0) {
+			throw new IllegalArgumentException("Negative number of expressions: " + maxExpressions);
+		}
+
+		this.maxExpressions = maxExpressions;
+	}
+
+	@Override
+	public void phaseCompleted(QueryPhase phase, String expression, long durationNanos, int resultSize) {
+		histogramsOf(expression)[phase.ordinal()].record(durationNanos, resultSize);
+	}
+
+	private Histogram[] histogramsOf(String expression) {
+		Histogram[] expressionHistograms = histograms.get(expression);
+		if (expressionHistograms != null) {
+			return expressionHistograms;
+		}
+
+		if (histograms.size() >= maxExpressions) {
+			expression = OTHER_EXPRESSIONS;
+		}
+
+		return histograms.computeIfAbsent(expression, key -> newHistograms());
+	}
+
+	private static Histogram[] newHistograms() {
+		Histogram[] phaseHistograms = new Histogram[PHASES.length];
+		for (int i = 0; i < phaseHistograms.length; i++) {
+			phaseHistograms[i] = new Histogram();
+		}
+
+		return phaseHistograms;
+	}
+
+	/**
+	 * Returns the statistics of one phase of one expression.
+	 *
+	 * @param expression the expression, in its template form
+	 * @param phase the phase
+	 *
+	 * @return a snapshot of the statistics, or null if the expression has
+	 *         not been recorded
+	 */
+	public PhaseStatistics getStatistics(String expression, QueryPhase phase) {
+		Histogram[] expressionHistograms = histograms.get(expression);
+		if (expressionHistograms == null) {
+			return null;
+		}
+
+		return expressionHistograms[phase.ordinal()].snapshot(expression, phase);
+	}
+
+	@Override
+	public List<PhaseStatistics> getStatistics() {
+		List<PhaseStatistics> statistics = new ArrayList<PhaseStatistics>();
+
+		for (Map.Entry<String, Histogram[]> entry : histograms.entrySet()) {
+			for (QueryPhase phase : PHASES) {
+				Histogram histogram = entry.getValue()[phase.ordinal()];
+				if (histogram.count.sum() > 0) {
+					statistics.add(histogram.snapshot(entry.getKey(), phase));
+				}
+			}
+		}
+
+		return statistics;
+	}
+
+	@Override
+	public int getExpressionCount() {
+		return histograms.size();
+	}
+
+	@Override
+	public void reset() {
+		histograms.clear();
+	}
+
+	/**
+	 * Registers these metrics in the platform MBean server under
+	 * {@link #OBJECT_NAME}.
+	 *
+	 * @return the name of the registered MBean
+	 *
+	 * @throws JMException if the metrics cannot be registered, for example
+	 *             because other metrics are already registered
+	 */
+	public ObjectName registerMBean() throws JMException {
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+
+		return name;
+	}
+
+	/**
+	 * Removes these metrics from the platform MBean server.
+	 *
+	 * @throws JMException if the metrics cannot be unregistered
+	 */
+	public void unregisterMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+	}
+
+	/**
+	 * A histogram of durations with one bucket for each power of two.
+	 */
+	private static final class Histogram {
+		private static final int BUCKETS = 64;
+
+		final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final LongAdder resultCount = new LongAdder();
+		private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+		Histogram() {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		void record(long durationNanos, int resultSize) {
+			if (durationNanos < 0) {
+				durationNanos = 0;
+			}
+
+			count.increment();
+			totalNanos.add(durationNanos);
+			buckets[bucketOf(durationNanos)].increment();
+			if (resultSize > 0) {
+				resultCount.add(resultSize);
+			}
+
+			long max = maxNanos.get();
+			while (durationNanos > max && !maxNanos.compareAndSet(max, durationNanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		/**
+		 * Returns the bucket of the durations between {@code 2^(i-1)} and
+		 * {@code 2^i - 1} nanoseconds.
+		 */
+		private static int bucketOf(long nanos) {
+			return Math.min(BUCKETS - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+		}
+
+		PhaseStatistics snapshot(String expression, QueryPhase phase) {
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets[i].sum();
+				total += counts[i];
+			}
+
+			long max = maxNanos.get();
+			return new PhaseStatistics(expression, phase, total, totalNanos.sum(), max,
+			                           percentile(counts, total, 0.50, max), percentile(counts, total, 0.90, max),
+			                           percentile(counts, total, 0.99, max), resultCount.sum());
+		}
+
+		private static long percentile(long[] counts, long total, double fraction, long max) {
+			long rank = (long) Math.ceil(total * fraction);
+			long seen = 0;
+
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank && seen > 0) {
+					long upperBound = (i == 0) ? 0 : (1L << i) - 1;
+					return Math.min(upperBound, max);
+				}
+			}
+
+			return max;
+		}
+	}
+}
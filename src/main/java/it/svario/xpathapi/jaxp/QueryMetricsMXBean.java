@@ -0,0 +1,30 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.List;
+
+/**
+ * The management interface of {@link QueryMetrics}.
+ */
+public interface QueryMetricsMXBean {
+	/**
+	 * Returns the latency statistics of every expression and phase recorded
+	 * so far.
+	 *
+	 * @return a snapshot of the statistics
+	 */
+	List<PhaseStatistics> getStatistics();
+
+	/**
+	 * Returns the number of distinct expressions recorded so far.
+	 *
+	 * @return the number of expressions
+	 */
+	int getExpressionCount();
+
+	/**
+	 * Discards all the recorded statistics.
+	 */
+	void reset();
+}
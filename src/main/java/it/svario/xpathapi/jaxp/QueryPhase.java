@@ -0,0 +1,37 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * The phases of the evaluation of an XPath expression reported to a
+ * {@link QueryListener}.
+ *
+ * @see XPathAPI#setQueryListener(QueryListener)
+ */
+public enum QueryPhase {
+	/**
+	 * The collection of the namespace bindings in scope for the namespace
+	 * node, or their merge with a namespace mapping.
+	 */
+	NAMESPACE_CONTEXT,
+
+	/**
+	 * The lookup of the expression in the expression cache and, on a miss,
+	 * its compilation.
+	 */
+	COMPILATION,
+
+	/**
+	 * The evaluation of the compiled expression on the context node, either
+	 * by JAXP or by the built-in engine for simple paths. Simple paths
+	 * iterated lazily, by a {@code NodeIterator}, are evaluated while the
+	 * iterator is advanced and this phase is not reported for them.
+	 */
+	EVALUATION,
+
+	/**
+	 * The conversion of the selected nodes into a list of nodes or into
+	 * strings.
+	 */
+	CONVERSION
+}
@@ -0,0 +1,290 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathConstants;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+
+/**
+ * A size-bounded LRU cache of the results of the queries run on a document.
+ *
+ * <p>
+ * Like {@link DocumentIndex}, each cache is attached to its document as
+ * user data, so it is garbage collected together with the document and no
+ * global structure keeps documents alive. When the DOM implementation
+ * supports mutation events the cache drops itself at the first change to
+ * the document; otherwise it must be invalidated explicitly.
+ *
+ * <p>
+ * Node sets are kept as unmodifiable snapshots, so that the same result can
+ * be handed out many times and read from many threads; the lists of nodes
+ * built from them are copies. The capacity, the
+ * statistics and the {@link #clear()} operation are shared by all the
+ * caches.
+ */
+final class ResultCache implements EventListener {
+	private static final String USER_DATA_KEY = ResultCache.class.getName();
+	private static final String[] MUTATION_EVENTS = { "DOMNodeInserted", "DOMNodeRemoved", "DOMAttrModified", "DOMCharacterDataModified" };
+	private static final Object NULL_RESULT = new Object();
+
+	private static volatile int capacity = 0;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+	private static final AtomicInteger generation = new AtomicInteger();
+
+	private final Document document;
+	private final boolean listening;
+	private final int entriesGeneration;
+	private final Map<Key, Object> entries;
+	private volatile boolean valid;
+
+	private ResultCache(Document document, boolean listening) {
+		this.document = document;
+		this.listening = listening;
+		this.entriesGeneration = generation.get();
+		this.entries = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+				if (size() > capacity) {
+					evictions.incrementAndGet();
+					return true;
+				}
+
+				return false;
+			}
+		};
+		this.valid = true;
+	}
+
+	/**
+	 * Returns the valid cache of the document of {@code contextNode},
+	 * creating it if needed, or null if the cache is disabled or if
+	 * {@code contextNode} is not attached to its document.
+	 *
+	 * <p>
+	 * Changes to detached subtrees do not fire events on the document, so
+	 * their results could not be invalidated.
+	 */
+	static ResultCache forNode(Node contextNode) {
+		if (capacity == 0) {
+			return null;
+		}
+
+		Document document = (contextNode.getNodeType() == Node.DOCUMENT_NODE) ? (Document) contextNode : contextNode.getOwnerDocument();
+		if (document == null || rootOf(contextNode) != document) {
+			return null;
+		}
+
+		ResultCache cache = (ResultCache) document.getUserData(USER_DATA_KEY);
+		if (cache != null && cache.valid && cache.entriesGeneration == generation.get()) {
+			return cache;
+		}
+
+		synchronized (ResultCache.class) {
+			cache = (ResultCache) document.getUserData(USER_DATA_KEY);
+			if (cache != null && cache.valid && cache.entriesGeneration == generation.get()) {
+				return cache;
+			}
+			if (cache != null) {
+				cache.invalidate();
+			}
+
+			return create(document);
+		}
+	}
+
+	private static Node rootOf(Node node) {
+		Node root = (node.getNodeType() == Node.ATTRIBUTE_NODE) ? ((Attr) node).getOwnerElement() : node;
+		if (root == null) {
+			return node;
+		}
+
+		Node parent;
+		while ((parent = root.getParentNode()) != null) {
+			root = parent;
+		}
+
+		return root;
+	}
+
+	private static ResultCache create(Document document) {
+		boolean supportsEvents = (document instanceof EventTarget) && document.getImplementation().hasFeature("MutationEvents", "2.0");
+
+		ResultCache cache = new ResultCache(document, supportsEvents);
+		if (supportsEvents) {
+			for (String eventType : MUTATION_EVENTS) {
+				((EventTarget) document).addEventListener(eventType, cache, false);
+			}
+		}
+		document.setUserData(USER_DATA_KEY, cache, null);
+
+		return cache;
+	}
+
+	/**
+	 * Discards the results cached for {@code document}, if any.
+	 */
+	static void invalidate(Document document) {
+		ResultCache cache = (ResultCache) document.getUserData(USER_DATA_KEY);
+		if (cache != null) {
+			cache.invalidate();
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		invalidate();
+	}
+
+	private synchronized void invalidate() {
+		if (!valid) {
+			return;
+		}
+
+		valid = false;
+		entries.clear();
+		if (listening) {
+			for (String eventType : MUTATION_EVENTS) {
+				((EventTarget) document).removeEventListener(eventType, this, false);
+			}
+		}
+		if (document.getUserData(USER_DATA_KEY) == this) {
+			document.setUserData(USER_DATA_KEY, null, null);
+		}
+	}
+
+	/**
+	 * Returns the cached result for {@code key}, or {@code key} itself if
+	 * there is none.
+	 */
+	synchronized Object get(Key key) {
+		Object result = entries.get(key);
+		if (result == null) {
+			misses.incrementAndGet();
+			return key;
+		}
+
+		hits.incrementAndGet();
+		return (result == NULL_RESULT) ? null : result;
+	}
+
+	/**
+	 * Caches {@code result} and returns the snapshot of it that must be
+	 * handed out in its place.
+	 */
+	synchronized Object put(Key key, Object result) {
+		Object snapshot = XPathConstants.NODESET.equals(key.returnType) ? snapshotOf((NodeList) result) : result;
+		if (valid) {
+			entries.put(key, (snapshot == null) ? NULL_RESULT : snapshot);
+		}
+
+		return snapshot;
+	}
+
+	private static NodeList snapshotOf(NodeList nodeList) {
+		int listLength = nodeList.getLength();
+		List<Node> nodes = new ArrayList<Node>(listLength);
+		for (int i = 0; i < listLength; i++) {
+			nodes.add(nodeList.item(i));
+		}
+
+		return ListNodeList.snapshot(nodes);
+	}
+
+	static int getCapacity() {
+		return capacity;
+	}
+
+	static void setCapacity(int newCapacity) {
+		if (newCapacity < 0) {
+			throw new IllegalArgumentException("Negative cache capacity: " + newCapacity);
+		}
+
+		capacity = newCapacity;
+		clear();
+	}
+
+	static void clear() {
+		generation.incrementAndGet();
+	}
+
+	static CacheStatistics statistics() {
+		return new CacheStatistics(hits.get(), misses.get(), evictions.get(), capacity);
+	}
+
+	/**
+	 * Identifies a query by its context node, its expression, its namespace
+	 * bindings, its arguments, the type of its result and the engines that
+	 * evaluate it.
+	 */
+	static final class Key {
+		private final Node contextNode;
+		private final String xpathString;
+		private final NamespaceContext nsContext;
+		private final String[] args;
+		private final TemplateMode templateMode;
+		private final QName returnType;
+		private final XPathEngine engine;
+		private final boolean simplePathEngine;
+		private final int hashCode;
+
+		Key(Node contextNode, String xpathString, NamespaceContext nsContext, String[] args, QName returnType) {
+			this.contextNode = contextNode;
+			this.xpathString = xpathString;
+			this.nsContext = nsContext;
+			this.args = (args == null) ? new String[0] : args.clone();
+			this.templateMode = Templates.getMode();
+			this.returnType = returnType;
+			this.engine = EvaluatorPool.getDefaultEngine();
+			this.simplePathEngine = SimplePathEngine.isEnabled();
+
+			int h = System.identityHashCode(contextNode);
+			h = 31 * h + xpathString.hashCode();
+			h = 31 * h + nsContext.hashCode();
+			h = 31 * h + Arrays.hashCode(this.args);
+			h = 31 * h + returnType.hashCode();
+			h = 31 * h + engine.hashCode();
+			this.hashCode = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+			return hashCode == other.hashCode && contextNode == other.contextNode && xpathString.equals(other.xpathString) && nsContext.equals(other.nsContext) &&
+			       Arrays.equals(args, other.args) && templateMode == other.templateMode && returnType.equals(other.returnType) && engine.equals(other.engine) &&
+			       simplePathEngine == other.simplePathEngine;
+		}
+	}
+}
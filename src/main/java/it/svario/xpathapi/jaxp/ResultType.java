@@ -0,0 +1,79 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * The kinds of result that can be requested for each expression of an
+ * {@link XPathBatch}.
+ *
+ * <p>
+ * Each type corresponds to one of the selection methods of
+ * {@link XPathAPI} and produces the same Java type.
+ */
+public enum ResultType {
+	/**
+	 * The first matching node, as a {@code org.w3c.dom.Node}.
+	 *
+	 * @see XPathAPI#selectSingleNode(org.w3c.dom.Node, String, String...)
+	 */
+	SINGLE_NODE,
+
+	/**
+	 * The textual content of the first matching node, as a {@code String}.
+	 *
+	 * @see XPathAPI#selectSingleNodeAsString(org.w3c.dom.Node, String,
+	 *      String...)
+	 */
+	SINGLE_NODE_AS_STRING,
+
+	/**
+	 * All the matching nodes, as a {@code org.w3c.dom.NodeList}.
+	 *
+	 * @see XPathAPI#selectNodeList(org.w3c.dom.Node, String, String...)
+	 */
+	NODE_LIST,
+
+	/**
+	 * All the matching nodes, as a {@code List<Node>}.
+	 *
+	 * @see XPathAPI#selectListOfNodes(org.w3c.dom.Node, String, String...)
+	 */
+	LIST_OF_NODES,
+
+	/**
+	 * The textual content of all the matching nodes, as a
+	 * {@code List<String>}.
+	 *
+	 * @see XPathAPI#selectNodeListAsStrings(org.w3c.dom.Node, String,
+	 *      String...)
+	 */
+	NODE_LIST_AS_STRINGS,
+
+	/**
+	 * The value of the expression, as a {@code Double}.
+	 *
+	 * @see XPathAPI#selectNumber(org.w3c.dom.Node, String, String...)
+	 */
+	NUMBER,
+
+	/**
+	 * The value of the expression, as a {@code Boolean}.
+	 *
+	 * @see XPathAPI#selectBoolean(org.w3c.dom.Node, String, String...)
+	 */
+	BOOLEAN,
+
+	/**
+	 * The value of the expression, as a {@code String}.
+	 *
+	 * @see XPathAPI#selectString(org.w3c.dom.Node, String, String...)
+	 */
+	STRING,
+
+	/**
+	 * The number of matching nodes, as a {@code Long}.
+	 *
+	 * @see XPathAPI#selectCount(org.w3c.dom.Node, String, String...)
+	 */
+	COUNT
+}
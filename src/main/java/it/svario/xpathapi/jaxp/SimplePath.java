@@ -0,0 +1,587 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathVariableResolver;
+
+/**
+ * A parsed XPath location path restricted to a simple, forward-only subset
+ * of XPath.
+ *
+ * <p>
+ * The subset is made of
+ * <ul>
+ * <li>child ({@code /}) and descendant ({@code //}) steps with name tests
+ * ({@code name}, {@code prefix:name}, {@code prefix:*} or {@code *});</li>
+ * <li>an optional final attribute step ({@code @name});</li>
+ * <li>predicates that test the position of a node among its siblings
+ * ({@code [2]}), the presence of an attribute ({@code [@id]}) or the value
+ * of an attribute ({@code [@id='x']}, or {@code [@id=$var]} where variables
+ * are allowed).</li>
+ * </ul>
+ *
+ * <p>
+ * All these expressions can be evaluated in a single forward pass over a
+ * document, without looking ahead: each element is given a {@link Frame}
+ * computed from the frame of its parent, its name and its attributes, and
+ * the elements of the document are visited in document order.
+ */
+final class SimplePath {
+	final boolean absolute;
+	final List<Step> steps;
+	final Step attributeStep;
+	private final boolean hasVariables;
+
+	private SimplePath(boolean absolute, List<Step> steps, Step attributeStep, boolean hasVariables) {
+		this.absolute = absolute;
+		this.steps = Collections.unmodifiableList(steps);
+		this.attributeStep = attributeStep;
+		this.hasVariables = hasVariables;
+	}
+
+	/**
+	 * Parses {@code xpathString}, resolving its prefixes with
+	 * {@code nsContext}.
+	 *
+	 * @throws XPathExpressionException if the expression is not part of the
+	 *             supported subset; the message explains why
+	 */
+	static SimplePath parse(String xpathString, NamespaceContext nsContext) throws XPathExpressionException {
+		return new Parser(xpathString, nsContext, false).parse();
+	}
+
+	/**
+	 * Returns a parsed path, or null if {@code xpathString} is not part of
+	 * the supported subset.
+	 */
+	static SimplePath parseOrNull(String xpathString, NamespaceContext nsContext) {
+		return parseOrNull(xpathString, nsContext, false);
+	}
+
+	/**
+	 * Returns a parsed path, or null if {@code xpathString} is not part of
+	 * the supported subset; attribute values may be compared to variables,
+	 * to be resolved with {@link #bind(XPathVariableResolver)}.
+	 */
+	static SimplePath parseOrNull(String xpathString, NamespaceContext nsContext, boolean allowVariables) {
+		try {
+			return new Parser(xpathString, nsContext, allowVariables).parse();
+		} catch (XPathExpressionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a copy of this path in which the variables are replaced by
+	 * their values, or null if some variable has no string value.
+	 */
+	SimplePath bind(XPathVariableResolver resolver) {
+		if (!hasVariables) {
+			return this;
+		}
+
+		List<Step> boundSteps = new ArrayList<Step>(steps.size());
+		for (Step step : steps) {
+			List<Predicate> predicates = new ArrayList<Predicate>(step.predicates.size());
+			for (Predicate predicate : step.predicates) {
+				if (predicate.variable == null) {
+					predicates.add(predicate);
+					continue;
+				}
+
+				Object value = resolver.resolveVariable(predicate.variable);
+				if (!(value instanceof String)) {
+					return null;
+				}
+				predicates.add(Predicate.attribute(predicate.attribute, (String) value));
+			}
+			boundSteps.add(new Step(step.descendant, step, predicates));
+		}
+
+		return new SimplePath(absolute, boundSteps, attributeStep, false);
+	}
+
+	/**
+	 * Returns the relative path made of all the steps of this path but the
+	 * first one.
+	 */
+	SimplePath tail() {
+		return new SimplePath(false, steps.subList(1, steps.size()), attributeStep, hasVariables);
+	}
+
+	/**
+	 * Returns the frame of the node from which the path is evaluated.
+	 */
+	Frame rootFrame() {
+		BitSet states = new BitSet();
+		states.set(0);
+
+		return new Frame(states);
+	}
+
+	/**
+	 * Returns the frame of an element whose parent has frame {@code parent}.
+	 *
+	 * <p>
+	 * The children of a parent must be passed in document order, because
+	 * the positional predicates are counted in {@code parent}.
+	 */
+	Frame childFrame(Frame parent, String namespaceURI, String localName, Attributes attributes) {
+		int finalState = steps.size();
+		BitSet states = new BitSet();
+
+		for (int k = parent.states.nextSetBit(0); k >= 0; k = parent.states.nextSetBit(k + 1)) {
+			if (k < finalState) {
+				Step step = steps.get(k);
+				if (step.descendant) {
+					states.set(k);
+				}
+				if (step.matches(namespaceURI, localName) && predicatesMatch(parent, k, attributes)) {
+					states.set(k + 1);
+				}
+			} else if (attributeStep != null && attributeStep.descendant) {
+				states.set(finalState);
+			}
+		}
+
+		return new Frame(states);
+	}
+
+	/**
+	 * Returns whether the element with the given frame is selected by this
+	 * path or, if the path ends with an attribute step, whether its
+	 * attributes are.
+	 */
+	boolean isMatch(Frame frame) {
+		return frame.states.get(steps.size());
+	}
+
+	/**
+	 * Returns whether some descendant of the element with the given frame
+	 * can be selected by this path.
+	 */
+	boolean canMatchDescendants(Frame frame) {
+		if (frame.states.isEmpty()) {
+			return false;
+		}
+
+		if (attributeStep != null && attributeStep.descendant) {
+			return true;
+		}
+
+		return frame.states.nextSetBit(0) < steps.size();
+	}
+
+	/**
+	 * Returns whether some step has a positional predicate.
+	 */
+	boolean hasPositionalPredicates() {
+		for (Step step : steps) {
+			for (Predicate predicate : step.predicates) {
+				if (predicate.isPositional()) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns whether the presence or the value of the given attribute can
+	 * change the nodes selected by this path.
+	 */
+	boolean dependsOnAttribute(String namespaceURI, String localName) {
+		if (attributeStep != null && attributeStep.matches(namespaceURI, localName)) {
+			return true;
+		}
+
+		for (Step step : steps) {
+			for (Predicate predicate : step.predicates) {
+				if (!predicate.isPositional() && predicate.attribute.matches(namespaceURI, localName)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private boolean predicatesMatch(Frame parent, int stepIdx, Attributes attributes) {
+		List<Predicate> predicates = steps.get(stepIdx).predicates;
+
+		for (int j = 0; j < predicates.size(); j++) {
+			Predicate predicate = predicates.get(j);
+
+			if (predicate.isPositional()) {
+				if (parent.increment(stepIdx, j, predicates.size(), steps.size()) != predicate.position) {
+					return false;
+				}
+			} else {
+				String value = attributes.getValue(predicate.attribute);
+				if (value == null || (predicate.value != null && !predicate.value.equals(value))) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * The attributes of the element being matched.
+	 */
+	interface Attributes {
+		/**
+		 * Returns the value of the first attribute that matches
+		 * {@code nameTest}, or null if there is none.
+		 */
+		String getValue(NameTest nameTest);
+	}
+
+	/**
+	 * The set of steps that the children of an element can match, along
+	 * with the counters of the positional predicates.
+	 */
+	static final class Frame {
+		private final BitSet states;
+		private int[][] counters;
+
+		private Frame(BitSet states) {
+			this.states = states;
+		}
+
+		private int increment(int stepIdx, int predicateIdx, int predicateCount, int stepCount) {
+			if (counters == null) {
+				counters = new int[stepCount][];
+			}
+			if (counters[stepIdx] == null) {
+				counters[stepIdx] = new int[predicateCount];
+			}
+
+			return ++counters[stepIdx][predicateIdx];
+		}
+	}
+
+	/**
+	 * A name test, with null meaning "any" for both namespace and local name.
+	 */
+	static class NameTest {
+		final String namespaceURI;
+		final String localName;
+
+		NameTest(String namespaceURI, String localName) {
+			this.namespaceURI = namespaceURI;
+			this.localName = localName;
+		}
+
+		boolean matches(String nodeNamespaceURI, String nodeLocalName) {
+			if (localName != null && !localName.equals(nodeLocalName)) {
+				return false;
+			}
+
+			if (namespaceURI == null) {
+				return true;
+			}
+
+			if (nodeNamespaceURI == null) {
+				nodeNamespaceURI = XMLConstants.NULL_NS_URI;
+			}
+
+			return namespaceURI.equals(nodeNamespaceURI);
+		}
+	}
+
+	static final class Step extends NameTest {
+		final boolean descendant;
+		final List<Predicate> predicates;
+
+		Step(boolean descendant, NameTest nameTest, List<Predicate> predicates) {
+			super(nameTest.namespaceURI, nameTest.localName);
+			this.descendant = descendant;
+			this.predicates = Collections.unmodifiableList(predicates);
+		}
+	}
+
+	static final class Predicate {
+		final int position;
+		final NameTest attribute;
+		final String value;
+		final QName variable;
+
+		private Predicate(int position, NameTest attribute, String value, QName variable) {
+			this.position = position;
+			this.attribute = attribute;
+			this.value = value;
+			this.variable = variable;
+		}
+
+		static Predicate position(int position) {
+			return new Predicate(position, null, null, null);
+		}
+
+		static Predicate attribute(NameTest attribute, String value) {
+			return new Predicate(0, attribute, value, null);
+		}
+
+		static Predicate variable(NameTest attribute, QName variable) {
+			return new Predicate(0, attribute, null, variable);
+		}
+
+		boolean isPositional() {
+			return position > 0;
+		}
+	}
+
+	private static final class Parser {
+		private final String xpath;
+		private final NamespaceContext nsContext;
+		private final boolean allowVariables;
+		private boolean hasVariables;
+		private int pos;
+
+		Parser(String xpath, NamespaceContext nsContext, boolean allowVariables) {
+			this.xpath = xpath;
+			this.nsContext = nsContext;
+			this.allowVariables = allowVariables;
+			this.pos = 0;
+		}
+
+		SimplePath parse() throws XPathExpressionException {
+			List<Step> steps = new ArrayList<Step>();
+			Step attributeStep = null;
+
+			skipSpaces();
+			boolean absolute = xpath.startsWith("/", pos);
+			boolean descendant = false;
+
+			if (absolute) {
+				descendant = consumeSlashes();
+				skipSpaces();
+				if (pos == xpath.length()) {
+					throw unsupported("the root node cannot be selected");
+				}
+			}
+
+			while (true) {
+				skipSpaces();
+				if (pos == xpath.length()) {
+					throw unsupported("a step is missing");
+				}
+
+				if (xpath.charAt(pos) == '@') {
+					pos++;
+					attributeStep = new Step(descendant, parseNameTest(), new ArrayList<Predicate>());
+					skipSpaces();
+					if (pos != xpath.length()) {
+						throw unsupported("only the last step can select attributes");
+					}
+					break;
+				}
+
+				NameTest nameTest = parseNameTest();
+				List<Predicate> predicates = parsePredicates();
+				steps.add(new Step(descendant, nameTest, predicates));
+
+				skipSpaces();
+				if (pos == xpath.length()) {
+					break;
+				}
+
+				if (xpath.charAt(pos) != '/') {
+					throw unsupported("unexpected '" + xpath.charAt(pos) + "'");
+				}
+				descendant = consumeSlashes();
+			}
+
+			return new SimplePath(absolute, steps, attributeStep, hasVariables);
+		}
+
+		private boolean consumeSlashes() {
+			pos++;
+			if (pos < xpath.length() && xpath.charAt(pos) == '/') {
+				pos++;
+				return true;
+			}
+
+			return false;
+		}
+
+		private NameTest parseNameTest() throws XPathExpressionException {
+			skipSpaces();
+
+			if (pos < xpath.length() && xpath.charAt(pos) == '*') {
+				pos++;
+				return new NameTest(null, null);
+			}
+
+			String name = parseNCName();
+			if (pos < xpath.length() && xpath.charAt(pos) == ':') {
+				if (pos + 1 < xpath.length() && xpath.charAt(pos + 1) == ':') {
+					throw unsupported("axis '" + name + "' is not supported");
+				}
+
+				pos++;
+				String uri = nsContext.getNamespaceURI(name);
+				if (uri == null || uri.length() == 0) {
+					throw new XPathExpressionException("Prefix must resolve to a namespace: " + name);
+				}
+
+				if (pos < xpath.length() && xpath.charAt(pos) == '*') {
+					pos++;
+					return new NameTest(uri, null);
+				}
+
+				return new NameTest(uri, parseNCName());
+			}
+
+			skipSpaces();
+			if (pos < xpath.length() && xpath.charAt(pos) == '(') {
+				throw unsupported("node tests and functions such as '" + name + "()' are not supported");
+			}
+
+			return new NameTest(XMLConstants.NULL_NS_URI, name);
+		}
+
+		private String parseNCName() throws XPathExpressionException {
+			int start = pos;
+			while (pos < xpath.length() && isNameChar(xpath.charAt(pos), pos == start)) {
+				pos++;
+			}
+
+			if (pos == start) {
+				if (pos == xpath.length()) {
+					throw unsupported("a name is missing");
+				}
+				throw unsupported("unexpected '" + xpath.charAt(pos) + "'");
+			}
+
+			return xpath.substring(start, pos);
+		}
+
+		private List<Predicate> parsePredicates() throws XPathExpressionException {
+			List<Predicate> predicates = new ArrayList<Predicate>(1);
+
+			skipSpaces();
+			while (pos < xpath.length() && xpath.charAt(pos) == '[') {
+				pos++;
+				skipSpaces();
+				predicates.add(parsePredicate());
+				skipSpaces();
+				if (pos >= xpath.length() || xpath.charAt(pos) != ']') {
+					throw unsupported("only [n], [@attr] and [@attr='value'] predicates are supported");
+				}
+				pos++;
+				skipSpaces();
+			}
+
+			return predicates;
+		}
+
+		private Predicate parsePredicate() throws XPathExpressionException {
+			if (pos < xpath.length() && Character.isDigit(xpath.charAt(pos))) {
+				int start = pos;
+				while (pos < xpath.length() && Character.isDigit(xpath.charAt(pos))) {
+					pos++;
+				}
+
+				int position;
+				try {
+					position = Integer.parseInt(xpath.substring(start, pos));
+				} catch (NumberFormatException e) {
+					throw unsupported("position out of range");
+				}
+				if (position == 0) {
+					throw unsupported("position 0 never matches");
+				}
+
+				return Predicate.position(position);
+			}
+
+			if (pos >= xpath.length() || xpath.charAt(pos) != '@') {
+				throw unsupported("only [n], [@attr] and [@attr='value'] predicates are supported");
+			}
+
+			pos++;
+			NameTest attribute = parseAttributeNameTest();
+			skipSpaces();
+
+			if (pos < xpath.length() && xpath.charAt(pos) == '=') {
+				pos++;
+				skipSpaces();
+				if (allowVariables && pos < xpath.length() && xpath.charAt(pos) == '$') {
+					pos++;
+					hasVariables = true;
+					return Predicate.variable(attribute, new QName(parseNCName()));
+				}
+				return Predicate.attribute(attribute, parseLiteral());
+			}
+
+			return Predicate.attribute(attribute, null);
+		}
+
+		private NameTest parseAttributeNameTest() throws XPathExpressionException {
+			NameTest nameTest = parseNameTest();
+			if (nameTest.localName == null) {
+				throw unsupported("attribute wildcards are not supported in predicates");
+			}
+
+			return nameTest;
+		}
+
+		private String parseLiteral() throws XPathExpressionException {
+			if (pos >= xpath.length()) {
+				throw unsupported("a string literal is missing");
+			}
+
+			char quote = xpath.charAt(pos);
+			if (quote != '\'' && quote != '"') {
+				throw unsupported("attributes can only be compared to string literals");
+			}
+
+			int end = xpath.indexOf(quote, pos + 1);
+			if (end == -1) {
+				throw new XPathExpressionException("Unterminated string literal in " + xpath);
+			}
+
+			String literal = xpath.substring(pos + 1, end);
+			pos = end + 1;
+
+			return literal;
+		}
+
+		private void skipSpaces() {
+			while (pos < xpath.length() && isSpace(xpath.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private static boolean isSpace(char c) {
+			return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+		}
+
+		private static boolean isNameChar(char c, boolean first) {
+			if (Character.isLetter(c) || c == '_') {
+				return true;
+			}
+
+			if (first) {
+				return false;
+			}
+
+			return Character.isDigit(c) || c == '-' || c == '.';
+		}
+
+		private XPathExpressionException unsupported(String reason) {
+			return new XPathExpressionException("Expression outside the simple path subset (" + reason + "): " + xpath);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.w3c.dom.Node;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+
+/**
+ * Evaluates {@link SimplePath}s by walking the DOM tree directly.
+ *
+ * <p>
+ * Going through JAXP costs, for every evaluation, the conversion of the
+ * DOM tree into the internal model of the XPath engine and the generic
+ * interpretation of the compiled expression. For the simple path subset a
+ * plain walk in document order gives the same nodes at a fraction of the
+ * cost; documents with a {@link DocumentIndex} are not even walked for
+ * the paths that the index can answer.
+ */
+final class SimplePathEngine {
+	private static volatile boolean enabled = true;
+
+	private SimplePathEngine() {
+	}
+
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	static void setEnabled(boolean newEnabled) {
+		enabled = newEnabled;
+		ExpressionCache.clear();
+	}
+
+	/**
+	 * Returns the first {@code limit} nodes selected by {@code path} from
+	 * {@code contextNode}, in document order, or null if the path must be
+	 * evaluated by JAXP instead.
+	 */
+	static List<Node> select(SimplePath path, Node contextNode, int limit) {
+		if (contextNode == null) {
+			return null;
+		}
+
+		if (path.absolute) {
+			Node root = PathNodeIterator.startNode(path, contextNode);
+			if (root.getNodeType() != Node.DOCUMENT_NODE) {
+				return null;
+			}
+
+			DocumentIndex index = DocumentIndex.forNode(root);
+			List<Node> indexed = (index != null) ? index.select(path, limit) : null;
+			if (indexed != null) {
+				return indexed;
+			}
+		}
+
+		PathNodeIterator walker = new PathNodeIterator(path, contextNode, NodeFilter.SHOW_ALL, null);
+		List<Node> nodes = new ArrayList<Node>();
+
+		Node node;
+		while (nodes.size() < limit && (node = walker.produceNext()) != null) {
+			nodes.add(node);
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * Returns an iterator over the nodes selected by {@code path} from
+	 * {@code contextNode} and accepted by {@code whatToShow} and
+	 * {@code filter}, or null if the path must be evaluated by JAXP instead.
+	 *
+	 * <p>
+	 * The tree is walked lazily, as the iterator is advanced, unless the
+	 * document has a {@link DocumentIndex} that answers the path.
+	 */
+	static NodeIterator iterate(SimplePath path, Node contextNode, int whatToShow, NodeFilter filter) {
+		if (contextNode == null) {
+			return null;
+		}
+
+		if (path.absolute) {
+			Node root = PathNodeIterator.startNode(path, contextNode);
+			if (root.getNodeType() != Node.DOCUMENT_NODE) {
+				return null;
+			}
+
+			DocumentIndex index = DocumentIndex.forNode(root);
+			List<Node> indexed = (index != null) ? index.select(path, Integer.MAX_VALUE) : null;
+			if (indexed != null) {
+				return new NodeListIterator(new ListNodeList(indexed), contextNode, whatToShow, filter);
+			}
+		}
+
+		return new PathNodeIterator(path, contextNode, whatToShow, filter);
+	}
+}
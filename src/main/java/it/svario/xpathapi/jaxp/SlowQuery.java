@@ -0,0 +1,98 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * An evaluation that took longer than the threshold of the
+ * {@link SlowQueryLog}.
+ */
+public final class SlowQuery {
+	private final String expression;
+	private final String contextPath;
+	private final int documentSize;
+	private final long durationNanos;
+	private final int resultSize;
+	private final long timestamp;
+	private final String threadName;
+
+	SlowQuery(String expression, String contextPath, int documentSize, long durationNanos, int resultSize, long timestamp, String threadName) {
+		this.expression = expression;
+		this.contextPath = contextPath;
+		this.documentSize = documentSize;
+		this.durationNanos = durationNanos;
+		this.resultSize = resultSize;
+		this.timestamp = timestamp;
+		this.threadName = threadName;
+	}
+
+	/**
+	 * Returns the evaluated expression, in its template form.
+	 *
+	 * @return the expression
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Returns the location of the context node in its document, as an
+	 * XPath such as {@code /root/item[3]/@id}.
+	 *
+	 * @return the path of the context node
+	 */
+	public String getContextPath() {
+		return contextPath;
+	}
+
+	/**
+	 * Returns the number of nodes in the tree that contains the context
+	 * node, attributes included.
+	 *
+	 * @return the size of the queried document
+	 */
+	public int getDocumentSize() {
+		return documentSize;
+	}
+
+	/**
+	 * Returns the time taken to compile and evaluate the expression.
+	 *
+	 * @return the duration, in nanoseconds
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * Returns the number of selected nodes.
+	 *
+	 * @return the number of nodes, or {@code -1} if the expression did not
+	 *         select nodes
+	 */
+	public int getResultSize() {
+		return resultSize;
+	}
+
+	/**
+	 * Returns the time at which the evaluation ended.
+	 *
+	 * @return the time, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the name of the thread that ran the evaluation.
+	 *
+	 * @return the thread name
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+
+	@Override
+	public String toString() {
+		return "Slow XPath query (" + (durationNanos / 1000000) + " ms): " + expression + " on " + contextPath + " of a document with " + documentSize + " nodes, " + resultSize + " results, thread " + threadName;
+	}
+}
@@ -0,0 +1,372 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Records the evaluations slower than a threshold and profiles the time
+ * spent on each expression.
+ *
+ * <p>
+ * Every evaluation is added to the profile of its expression; the slow
+ * ones are also kept, with the location of their context node and the size
+ * of their document, among the most recent slow queries and are logged at
+ * level {@code WARNING} to the {@code java.util.logging} logger named after
+ * this class. The time recorded is that spent compiling and evaluating the
+ * expression. The document is walked to measure its size only once an
+ * evaluation has passed the threshold, so faster evaluations never pay for
+ * it.
+ *
+ * <p>
+ * The profiles are updated with lock-free counters, so the log can be
+ * enabled on busy servers. To bound the memory used, at most a fixed number
+ * of distinct expressions are profiled; further expressions are profiled
+ * together under {@link QueryMetrics#OTHER_EXPRESSIONS}.
+ *
+ * <pre>
+ * SlowQueryLog slowQueries = new SlowQueryLog(50, TimeUnit.MILLISECONDS);
+ * XPathAPI.setSlowQueryLog(slowQueries);
+ * ...
+ * System.out.println(slowQueries.report(10));
+ * </pre>
+ *
+ * @see XPathAPI#setSlowQueryLog(SlowQueryLog)
+ */
+public final class SlowQueryLog {
+	static final int DEFAULT_CAPACITY = 100;
+
+	private static final Logger logger = Logger.getLogger(SlowQueryLog.class.getName());
+
+	private final long thresholdNanos;
+	private final int maxExpressions;
+
+	private final AtomicReferenceArray<SlowQuery> recent;
+	private final AtomicLong recorded = new AtomicLong();
+
+	private final ConcurrentMap<String, Profile> profiles = new ConcurrentHashMap<String, Profile>();
+
+	/**
+	 * Creates a log that records the evaluations slower than
+	 * {@code threshold}, keeping the 100 most recent ones and profiling up
+	 * to 1000 expressions.
+	 *
+	 * @param threshold the minimum duration of a slow evaluation
+	 * @param unit the unit of {@code threshold}
+	 */
+	public SlowQueryLog(long threshold, TimeUnit unit) {
+		this(threshold, unit, DEFAULT_CAPACITY, QueryMetrics.DEFAULT_MAX_EXPRESSIONS);
+	}
+
+	/**
+	 * Creates a log that records the evaluations slower than
+	 * {@code threshold}.
+	 *
+	 * @param threshold the minimum duration of a slow evaluation
+	 * @param unit the unit of {@code threshold}
+	 * @param capacity the number of recent slow queries kept
+	 * @param maxExpressions the maximum number of expressions profiled
+	 *            separately
+	 *
+	 * @throws IllegalArgumentException if {@code threshold} or
+	 *             {@code maxExpressions} are negative or if
+	 *             {@code capacity} is not positive
+	 */
+	public SlowQueryLog(long threshold, TimeUnit unit, int capacity, int maxExpressions) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Negative threshold: " + threshold);
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		if (maxExpressions < 0) {
+			throw new IllegalArgumentException("Negative number of expressions: " + maxExpressions);
+		}
+
+		this.thresholdNanos = unit.toNanos(threshold);
+		this.maxExpressions = maxExpressions;
+		this.recent = new AtomicReferenceArray<SlowQuery>(capacity);
+	}
+
+	/**
+	 * Returns the minimum duration of a slow evaluation.
+	 *
+	 * @param unit the unit of the result
+	 *
+	 * @return the threshold, in {@code unit}
+	 */
+	public long getThreshold(TimeUnit unit) {
+		return unit.convert(thresholdNanos, TimeUnit.NANOSECONDS);
+	}
+
+	void record(String expression, Node contextNode, long durationNanos, int resultSize) {
+		boolean slow = durationNanos >= thresholdNanos;
+		profileOf(expression).record(durationNanos, slow);
+
+		if (!slow) {
+			return;
+		}
+
+		SlowQuery query = new SlowQuery(expression, pathOf(contextNode), sizeOf(contextNode), durationNanos, resultSize, System.currentTimeMillis(), Thread.currentThread().getName());
+
+		long index = recorded.getAndIncrement();
+		recent.set((int) (index % recent.length()), query);
+
+		if (logger.isLoggable(Level.WARNING)) {
+			logger.warning(query.toString());
+		}
+	}
+
+	private Profile profileOf(String expression) {
+		Profile profile = profiles.get(expression);
+		if (profile != null) {
+			return profile;
+		}
+
+		if (profiles.size() >= maxExpressions) {
+			expression = QueryMetrics.OTHER_EXPRESSIONS;
+		}
+
+		return profiles.computeIfAbsent(expression, key -> new Profile());
+	}
+
+	/**
+	 * Returns the most recent slow queries, oldest first.
+	 *
+	 * @return the recorded slow queries
+	 */
+	public List<SlowQuery> getSlowQueries() {
+		long end = recorded.get();
+		long start = Math.max(0, end - recent.length());
+
+		List<SlowQuery> queries = new ArrayList<SlowQuery>((int) (end - start));
+		for (long i = start; i < end; i++) {
+			SlowQuery query = recent.get((int) (i % recent.length()));
+			if (query != null) {
+				queries.add(query);
+			}
+		}
+
+		return queries;
+	}
+
+	/**
+	 * Returns the {@code n} expressions on which the most time has been
+	 * spent.
+	 *
+	 * @param n the maximum number of expressions returned
+	 *
+	 * @return the profiles of the expressions, slowest first
+	 */
+	public List<ExpressionProfile> topByTotalTime(int n) {
+		return top(n, Comparator.comparingLong(ExpressionProfile::getTotalNanos));
+	}
+
+	/**
+	 * Returns the {@code n} expressions evaluated most often.
+	 *
+	 * @param n the maximum number of expressions returned
+	 *
+	 * @return the profiles of the expressions, most evaluated first
+	 */
+	public List<ExpressionProfile> topByCount(int n) {
+		return top(n, Comparator.comparingLong(ExpressionProfile::getCount));
+	}
+
+	private List<ExpressionProfile> top(int n, Comparator<ExpressionProfile> order) {
+		List<ExpressionProfile> all = new ArrayList<ExpressionProfile>(profiles.size());
+		for (Map.Entry<String, Profile> entry : profiles.entrySet()) {
+			all.add(entry.getValue().snapshot(entry.getKey()));
+		}
+
+		Collections.sort(all, order.reversed());
+
+		return new ArrayList<ExpressionProfile>(all.subList(0, Math.min(n, all.size())));
+	}
+
+	/**
+	 * Returns a human-readable report of the {@code n} hottest expressions
+	 * by total time and by count, followed by the most recent slow queries.
+	 *
+	 * @param n the number of expressions in each ranking
+	 *
+	 * @return the report
+	 */
+	public String report(int n) {
+		StringBuilder report = new StringBuilder();
+
+		report.append("Top ").append(n).append(" XPath expressions by total time:\n");
+		for (ExpressionProfile profile : topByTotalTime(n)) {
+			appendProfile(report, profile);
+		}
+
+		report.append("Top ").append(n).append(" XPath expressions by count:\n");
+		for (ExpressionProfile profile : topByCount(n)) {
+			appendProfile(report, profile);
+		}
+
+		report.append("Recent slow XPath queries (threshold ").append(getThreshold(TimeUnit.MILLISECONDS)).append(" ms):\n");
+		for (SlowQuery query : getSlowQueries()) {
+			report.append("  ").append(query).append('\n');
+		}
+
+		return report.toString();
+	}
+
+	private static void appendProfile(StringBuilder report, ExpressionProfile profile) {
+		report.append(String.format("  %10.3f ms total %10d calls %10.3f ms max %6d slow  %s%n",
+		                            profile.getTotalNanos() / 1e6, profile.getCount(), profile.getMaxNanos() / 1e6, profile.getSlowCount(), profile.getExpression()));
+	}
+
+	/**
+	 * Discards all the profiles and the recorded slow queries.
+	 */
+	public void reset() {
+		profiles.clear();
+		for (int i = 0; i < recent.length(); i++) {
+			recent.set(i, null);
+		}
+	}
+
+	/**
+	 * Returns the location of {@code node} as an XPath with positional
+	 * predicates.
+	 */
+	static String pathOf(Node node) {
+		if (node == null) {
+			return "";
+		}
+		if (node.getNodeType() == Node.DOCUMENT_NODE) {
+			return "/";
+		}
+
+		StringBuilder path = new StringBuilder();
+		prependSteps(path, node);
+
+		return path.toString();
+	}
+
+	private static void prependSteps(StringBuilder path, Node node) {
+		while (node != null && node.getNodeType() != Node.DOCUMENT_NODE) {
+			String step;
+			Node parent;
+
+			switch (node.getNodeType()) {
+			case Node.ATTRIBUTE_NODE:
+				step = "@" + node.getNodeName();
+				parent = ((Attr) node).getOwnerElement();
+				break;
+			case Node.ELEMENT_NODE:
+				step = node.getNodeName() + "[" + positionOf(node) + "]";
+				parent = node.getParentNode();
+				break;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+				step = "text()";
+				parent = node.getParentNode();
+				break;
+			default:
+				step = "node()";
+				parent = node.getParentNode();
+				break;
+			}
+
+			path.insert(0, step).insert(0, '/');
+			node = parent;
+		}
+	}
+
+	private static int positionOf(Node element) {
+		int position = 1;
+		for (Node sibling = element.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+			if (sibling.getNodeType() == Node.ELEMENT_NODE && sibling.getNodeName().equals(element.getNodeName())) {
+				position++;
+			}
+		}
+
+		return position;
+	}
+
+	/**
+	 * Returns the number of nodes, attributes included, in the tree that
+	 * contains {@code node}. The whole tree is walked, so this is only called
+	 * for slow queries.
+	 */
+	static int sizeOf(Node node) {
+		if (node == null) {
+			return 0;
+		}
+
+		Node root = node;
+		if (root.getNodeType() == Node.ATTRIBUTE_NODE) {
+			root = ((Attr) root).getOwnerElement();
+		}
+		while (root != null && root.getParentNode() != null) {
+			root = root.getParentNode();
+		}
+		if (root == null) {
+			return 1;
+		}
+
+		int size = 0;
+		Node current = root;
+		while (current != null) {
+			size++;
+			NamedNodeMap attributes = current.getAttributes();
+			if (attributes != null) {
+				size += attributes.getLength();
+			}
+
+			if (current.getFirstChild() != null) {
+				current = current.getFirstChild();
+				continue;
+			}
+
+			while (current != null && current != root && current.getNextSibling() == null) {
+				current = current.getParentNode();
+			}
+			current = (current == null || current == root) ? null : current.getNextSibling();
+		}
+
+		return size;
+	}
+
+	private static final class Profile {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAdder slowCount = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		void record(long durationNanos, boolean slow) {
+			count.increment();
+			totalNanos.add(durationNanos);
+			if (slow) {
+				slowCount.increment();
+			}
+
+			long max = maxNanos.get();
+			while (durationNanos > max && !maxNanos.compareAndSet(max, durationNanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		ExpressionProfile snapshot(String expression) {
+			return new ExpressionProfile(expression, count.sum(), totalNanos.sum(), maxNanos.get(), slowCount.sum());
+		}
+	}
+}
@@ -0,0 +1,632 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPathException;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An XPath expression evaluated while an XML document is being read, without
+ * building its DOM tree.
+ *
+ * <p>
+ * Streaming queries are meant for documents too big to be loaded in memory.
+ * The document is read once with a StAX parser and the memory used does not
+ * depend on its size, only on its depth and on the size of the results.
+ *
+ * <p>
+ * Only a forward-only subset of XPath can be evaluated this way: child
+ * ({@code /}) and descendant ({@code //}) steps with name tests, an optional
+ * final attribute step ({@code @name}) and predicates of the forms
+ * {@code [2]}, {@code [@attr]} and {@code [@attr='value']}. For example
+ *
+ * <pre>
+ * StreamingQuery query = StreamingQuery.compile("//item[@type='book']/title");
+ * List&lt;String&gt; titles = query.selectNodeListAsStrings(Paths.get("feed.xml"));
+ * </pre>
+ *
+ * <p>
+ * Expressions outside this subset are rejected by {@code compile} with an
+ * explanation. Nodes are returned as detached copies, each one in a document
+ * of its own. {@code StreamingQuery} objects are immutable and thread-safe.
+ *
+ * <p>
+ * Document type declarations are not processed and external entities are
+ * never resolved, so documents that reference entities declared in a DTD
+ * are rejected.
+ */
+public final class StreamingQuery {
+	private static final XMLInputFactory inputFactory = newInputFactory();
+	private static final DocumentBuilderFactory fragmentFactory = newFragmentFactory();
+
+	private final String xpathString;
+	private final SimplePath path;
+
+	private StreamingQuery(String xpathString, SimplePath path) {
+		this.xpathString = xpathString;
+		this.path = path;
+	}
+
+	/**
+	 * Compiles an XPath expression that does not use any namespace prefix.
+	 *
+	 * @param xpathString the XPath expression to compile
+	 *
+	 * @return the compiled query
+	 *
+	 * @throws XPathException if the expression is not valid or cannot be
+	 *             evaluated in streaming mode
+	 */
+	public static StreamingQuery compile(String xpathString) throws XPathException {
+		Map<String, String> noNamespaces = Collections.emptyMap();
+		return compile(xpathString, noNamespaces);
+	}
+
+	/**
+	 * Compiles an XPath expression whose namespace prefixes are defined in
+	 * the {@code namespaces} mapping.
+	 *
+	 * @param xpathString the XPath expression to compile
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 *
+	 * @return the compiled query
+	 *
+	 * @throws XPathException if the expression is not valid or cannot be
+	 *             evaluated in streaming mode
+	 */
+	public static StreamingQuery compile(String xpathString, Map<String, String> namespaces) throws XPathException {
+		SimplePath path = SimplePath.parse(xpathString, NodeNamespaceContext.forMap(namespaces));
+		return new StreamingQuery(xpathString, path);
+	}
+
+	/**
+	 * Returns the XPath expression, as passed to {@code compile}.
+	 *
+	 * @return the XPath expression
+	 */
+	public String getExpression() {
+		return xpathString;
+	}
+
+	/**
+	 * Returns a list with the textual content of all the nodes that match
+	 * this query in the document read from {@code stream}.
+	 *
+	 * @param stream the XML document; it is not closed
+	 *
+	 * @return a list with the textual content of the matching nodes
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public List<String> selectNodeListAsStrings(InputStream stream) throws XPathException {
+		return evaluate(createReader(stream), false, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a list with the textual content of all the nodes that match
+	 * this query in the document read from {@code reader}.
+	 *
+	 * @param reader the XML document; it is not closed
+	 *
+	 * @return a list with the textual content of the matching nodes
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public List<String> selectNodeListAsStrings(Reader reader) throws XPathException {
+		return evaluate(createReader(reader), false, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a list with the textual content of all the nodes that match
+	 * this query in the document stored in {@code file}.
+	 *
+	 * @param file the XML document
+	 *
+	 * @return a list with the textual content of the matching nodes
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public List<String> selectNodeListAsStrings(Path file) throws XPathException {
+		return evaluate(file, false, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the textual content of the first node that matches this query
+	 * in the document read from {@code stream}.
+	 *
+	 * <p>
+	 * The document is read only up to the end of the first match.
+	 *
+	 * @param stream the XML document; it is not closed
+	 *
+	 * @return the content of the first matching node or null if no node
+	 *         matches
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public String selectSingleNodeAsString(InputStream stream) throws XPathException {
+		return firstOf(this.<String> evaluate(createReader(stream), false, 1));
+	}
+
+	/**
+	 * Returns the textual content of the first node that matches this query
+	 * in the document read from {@code reader}.
+	 *
+	 * <p>
+	 * The document is read only up to the end of the first match.
+	 *
+	 * @param reader the XML document; it is not closed
+	 *
+	 * @return the content of the first matching node or null if no node
+	 *         matches
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public String selectSingleNodeAsString(Reader reader) throws XPathException {
+		return firstOf(this.<String> evaluate(createReader(reader), false, 1));
+	}
+
+	/**
+	 * Returns the textual content of the first node that matches this query
+	 * in the document stored in {@code file}.
+	 *
+	 * <p>
+	 * The document is read only up to the end of the first match.
+	 *
+	 * @param file the XML document
+	 *
+	 * @return the content of the first matching node or null if no node
+	 *         matches
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public String selectSingleNodeAsString(Path file) throws XPathException {
+		return firstOf(this.<String> evaluate(file, false, 1));
+	}
+
+	/**
+	 * Selects all the nodes that match this query in the document read from
+	 * {@code stream}, returning detached copies of them.
+	 *
+	 * @param stream the XML document; it is not closed
+	 *
+	 * @return copies of all the matching nodes
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public List<Node> selectListOfNodes(InputStream stream) throws XPathException {
+		return evaluate(createReader(stream), true, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Selects all the nodes that match this query in the document read from
+	 * {@code reader}, returning detached copies of them.
+	 *
+	 * @param reader the XML document; it is not closed
+	 *
+	 * @return copies of all the matching nodes
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public List<Node> selectListOfNodes(Reader reader) throws XPathException {
+		return evaluate(createReader(reader), true, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Selects all the nodes that match this query in the document stored in
+	 * {@code file}, returning detached copies of them.
+	 *
+	 * @param file the XML document
+	 *
+	 * @return copies of all the matching nodes
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public List<Node> selectListOfNodes(Path file) throws XPathException {
+		return evaluate(file, true, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Selects the first node that matches this query in the document read
+	 * from {@code stream}, returning a detached copy of it.
+	 *
+	 * <p>
+	 * The document is read only up to the end of the first match.
+	 *
+	 * @param stream the XML document; it is not closed
+	 *
+	 * @return a copy of the first matching node or null if no node matches
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public Node selectSingleNode(InputStream stream) throws XPathException {
+		return firstOf(this.<Node> evaluate(createReader(stream), true, 1));
+	}
+
+	/**
+	 * Selects the first node that matches this query in the document read
+	 * from {@code reader}, returning a detached copy of it.
+	 *
+	 * <p>
+	 * The document is read only up to the end of the first match.
+	 *
+	 * @param reader the XML document; it is not closed
+	 *
+	 * @return a copy of the first matching node or null if no node matches
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public Node selectSingleNode(Reader reader) throws XPathException {
+		return firstOf(this.<Node> evaluate(createReader(reader), true, 1));
+	}
+
+	/**
+	 * Selects the first node that matches this query in the document stored
+	 * in {@code file}, returning a detached copy of it.
+	 *
+	 * <p>
+	 * The document is read only up to the end of the first match.
+	 *
+	 * @param file the XML document
+	 *
+	 * @return a copy of the first matching node or null if no node matches
+	 *
+	 * @throws XPathException if the document cannot be read or parsed
+	 */
+	public Node selectSingleNode(Path file) throws XPathException {
+		return firstOf(this.<Node> evaluate(file, true, 1));
+	}
+
+	@Override
+	public String toString() {
+		return "StreamingQuery[" + xpathString + "]";
+	}
+
+	private static <T> T firstOf(List<T> results) {
+		if (results.isEmpty()) {
+			return null;
+		}
+
+		return results.get(0);
+	}
+
+	private <T> List<T> evaluate(Path file, boolean asNodes, int limit) throws XPathException {
+		try (InputStream stream = Files.newInputStream(file)) {
+			return evaluate(createReader(stream), asNodes, limit);
+		} catch (IOException e) {
+			throw new XPathException(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> List<T> evaluate(XMLStreamReader reader, boolean asNodes, int limit) throws XPathException {
+		try {
+			Matcher matcher = new Matcher(path, asNodes, limit);
+			matcher.run(reader);
+			return (List<T>) matcher.results;
+		} catch (XMLStreamException e) {
+			throw new XPathException(e);
+		} finally {
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				// ignore, the results have already been read
+			}
+		}
+	}
+
+	private static XMLStreamReader createReader(InputStream stream) throws XPathException {
+		try {
+			synchronized (inputFactory) {
+				return inputFactory.createXMLStreamReader(stream);
+			}
+		} catch (XMLStreamException e) {
+			throw new XPathException(e);
+		}
+	}
+
+	private static XMLStreamReader createReader(Reader reader) throws XPathException {
+		try {
+			synchronized (inputFactory) {
+				return inputFactory.createXMLStreamReader(reader);
+			}
+		} catch (XMLStreamException e) {
+			throw new XPathException(e);
+		}
+	}
+
+	private static XMLInputFactory newInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+		return factory;
+	}
+
+	private static DocumentBuilderFactory newFragmentFactory() {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+
+		return factory;
+	}
+
+	private static DocumentBuilder newFragmentBuilder() throws XPathException {
+		try {
+			synchronized (fragmentFactory) {
+				return fragmentFactory.newDocumentBuilder();
+			}
+		} catch (ParserConfigurationException e) {
+			throw new XPathException(e);
+		}
+	}
+
+	/**
+	 * The state of a single streaming evaluation: the frames of the open
+	 * elements and the matches whose content is still being read.
+	 */
+	private static final class Matcher implements SimplePath.Attributes {
+		private final SimplePath path;
+		private final boolean asNodes;
+		private final int limit;
+
+		private final List<SimplePath.Frame> frames = new ArrayList<SimplePath.Frame>();
+		private final List<Capture> captures = new ArrayList<Capture>();
+		final List<Object> results = new ArrayList<Object>();
+
+		private XMLStreamReader reader;
+		private DocumentBuilder fragmentBuilder;
+		private int skipDepth;
+
+		Matcher(SimplePath path, boolean asNodes, int limit) {
+			this.path = path;
+			this.asNodes = asNodes;
+			this.limit = limit;
+		}
+
+		void run(XMLStreamReader streamReader) throws XMLStreamException, XPathException {
+			this.reader = streamReader;
+			frames.add(path.rootFrame());
+
+			while (reader.hasNext()) {
+				int event = reader.next();
+
+				if (skipDepth > 0) {
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						skipDepth++;
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						skipDepth--;
+					}
+					continue;
+				}
+
+				switch (event) {
+				case XMLStreamConstants.START_ELEMENT:
+					startElement();
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					frames.remove(frames.size() - 1);
+					endElement();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					for (Capture capture : captures) {
+						capture.text(reader.getText());
+					}
+					break;
+				case XMLStreamConstants.COMMENT:
+					for (Capture capture : captures) {
+						capture.comment(reader.getText());
+					}
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					for (Capture capture : captures) {
+						capture.processingInstruction(reader.getPITarget(), reader.getPIData());
+					}
+					break;
+				default:
+					break;
+				}
+
+				if (results.size() >= limit && captures.isEmpty()) {
+					return;
+				}
+			}
+		}
+
+		private void startElement() throws XPathException {
+			SimplePath.Frame parent = frames.get(frames.size() - 1);
+			SimplePath.Frame frame = path.childFrame(parent, reader.getNamespaceURI(), reader.getLocalName(), this);
+
+			for (Capture capture : captures) {
+				capture.startElement(reader);
+			}
+
+			if (path.isMatch(frame) && results.size() < limit) {
+				if (path.attributeStep == null) {
+					Capture capture = new Capture(results.size(), asNodes ? newFragmentBuilder().newDocument() : null);
+					results.add(null);
+					capture.startElement(reader);
+					captures.add(capture);
+				} else {
+					selectAttributes();
+				}
+			}
+
+			if (!path.canMatchDescendants(frame) && captures.isEmpty()) {
+				skipDepth = 1;
+				return;
+			}
+
+			frames.add(frame);
+		}
+
+		private void endElement() {
+			for (int i = captures.size() - 1; i >= 0; i--) {
+				Capture capture = captures.get(i);
+				if (capture.endElement()) {
+					results.set(capture.slot, capture.result());
+					captures.remove(i);
+				}
+			}
+		}
+
+		@Override
+		public String getValue(SimplePath.NameTest nameTest) {
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				if (nameTest.matches(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i))) {
+					return reader.getAttributeValue(i);
+				}
+			}
+
+			return null;
+		}
+
+		private void selectAttributes() throws XPathException {
+			for (int i = 0; i < reader.getAttributeCount() && results.size() < limit; i++) {
+				String namespaceURI = reader.getAttributeNamespace(i);
+				if (!path.attributeStep.matches(namespaceURI, reader.getAttributeLocalName(i))) {
+					continue;
+				}
+
+				String value = reader.getAttributeValue(i);
+				if (!asNodes) {
+					results.add(value);
+					continue;
+				}
+
+				Document fragment = newFragmentBuilder().newDocument();
+				Attr attr = fragment.createAttributeNS(emptyToNull(namespaceURI), qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)));
+				attr.setValue(value);
+				results.add(attr);
+			}
+		}
+
+		private DocumentBuilder newFragmentBuilder() throws XPathException {
+			if (fragmentBuilder == null) {
+				fragmentBuilder = StreamingQuery.newFragmentBuilder();
+			}
+
+			return fragmentBuilder;
+		}
+	}
+
+	private static String qualifiedName(String prefix, String localName) {
+		if (prefix == null || prefix.length() == 0) {
+			return localName;
+		}
+
+		return prefix + ":" + localName;
+	}
+
+	private static String emptyToNull(String namespaceURI) {
+		if (namespaceURI == null || namespaceURI.length() == 0) {
+			return null;
+		}
+
+		return namespaceURI;
+	}
+
+	/**
+	 * Collects the string value, or a copy, of a matching element. Copies
+	 * include the comments and processing instructions of the element, which
+	 * are not part of its string value.
+	 */
+	private static final class Capture {
+		final int slot;
+		private final StringBuilder text;
+		private final Document fragment;
+		private Node current;
+		private int depth;
+
+		Capture(int slot, Document fragment) {
+			this.slot = slot;
+			this.fragment = fragment;
+			this.text = (fragment == null) ? new StringBuilder() : null;
+			this.current = fragment;
+		}
+
+		void startElement(XMLStreamReader reader) {
+			depth++;
+
+			if (fragment == null) {
+				return;
+			}
+
+			Element element = fragment.createElementNS(emptyToNull(reader.getNamespaceURI()), qualifiedName(reader.getPrefix(), reader.getLocalName()));
+
+			for (int i = 0; i < reader.getNamespaceCount(); i++) {
+				String prefix = reader.getNamespacePrefix(i);
+				String name = (prefix == null || prefix.length() == 0) ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix;
+				element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name, reader.getNamespaceURI(i));
+			}
+
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				String name = qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+				element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)), name, reader.getAttributeValue(i));
+			}
+
+			current.appendChild(element);
+			current = element;
+		}
+
+		void text(String content) {
+			if (fragment == null) {
+				text.append(content);
+			} else {
+				current.appendChild(fragment.createTextNode(content));
+			}
+		}
+
+		void comment(String content) {
+			if (fragment != null) {
+				current.appendChild(fragment.createComment(content));
+			}
+		}
+
+		void processingInstruction(String target, String data) {
+			if (fragment != null) {
+				current.appendChild(fragment.createProcessingInstruction(target, data));
+			}
+		}
+
+		boolean endElement() {
+			depth--;
+
+			if (fragment != null) {
+				current = current.getParentNode();
+			}
+
+			return depth == 0;
+		}
+
+		Object result() {
+			if (fragment == null) {
+				return text.toString();
+			}
+
+			return fragment.getDocumentElement();
+		}
+	}
+}
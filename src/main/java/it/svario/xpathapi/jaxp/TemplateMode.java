@@ -0,0 +1,35 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+/**
+ * The ways in which the "{@code {}}" place-holders of an XPath template are
+ * filled with the supplied arguments.
+ *
+ * @see XPathAPI#setTemplateMode(TemplateMode)
+ */
+public enum TemplateMode {
+	/**
+	 * Every place-holder is replaced with the text of its argument.
+	 *
+	 * <p>
+	 * No escaping is performed on the arguments, so single and double quotes
+	 * in them can break the expression. Each distinct argument produces a
+	 * distinct expression that has to be compiled on its own.
+	 */
+	SUBSTITUTION,
+
+	/**
+	 * Every place-holder written as a string literal, that is
+	 * {@code '{}'} or {@code "{}"}, is turned into an XPath variable bound
+	 * to its argument.
+	 *
+	 * <p>
+	 * The expression is compiled once and evaluated with different values,
+	 * and the arguments can contain any character, quotes included. The
+	 * place-holders that are not string literals, for example element names
+	 * or parts of longer strings, are replaced as in {@link #SUBSTITUTION}
+	 * mode.
+	 */
+	VARIABLES
+}
@@ -0,0 +1,168 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathVariableResolver;
+
+/**
+ * Expands the "{@code {}}" place-holders of XPath templates according to the
+ * current {@link TemplateMode}.
+ */
+class Templates {
+	private static final String PLACEHOLDER = "{}";
+	private static final String VARIABLE_PREFIX = "xpathapi.arg";
+
+	private static volatile TemplateMode mode = TemplateMode.SUBSTITUTION;
+
+	static TemplateMode getMode() {
+		return mode;
+	}
+
+	static void setMode(TemplateMode newMode) {
+		if (newMode == null) {
+			throw new IllegalArgumentException("Template mode cannot be null");
+		}
+
+		mode = newMode;
+	}
+
+	/**
+	 * Returns the XPath expression described by {@code template}, with the
+	 * place-holders replaced by {@code args} or by references to the
+	 * variables resolved by {@link ArgumentResolver}.
+	 */
+	static String expand(String template, String... args) {
+		return expand(template, mode, args);
+	}
+
+	static String expand(String template, TemplateMode mode, String... args) {
+		if (args.length == 0 || template.indexOf(PLACEHOLDER) == -1) {
+			return template;
+		}
+
+		boolean useVariables = (mode == TemplateMode.VARIABLES);
+
+		StringBuilder xpath = new StringBuilder(template.length() + 16);
+		int argIdx = 0;
+		int start = 0;
+		int idx;
+
+		while (argIdx < args.length && (idx = template.indexOf(PLACEHOLDER, start)) != -1) {
+			int end = idx + PLACEHOLDER.length();
+
+			if (useVariables && isQuoted(template, idx, end)) {
+				xpath.append(template, start, idx - 1);
+				xpath.append('$').append(VARIABLE_PREFIX).append(argIdx + 1);
+				end = end + 1;
+			} else {
+				xpath.append(template, start, idx);
+				xpath.append(args[argIdx]);
+			}
+
+			argIdx++;
+			start = end;
+		}
+
+		xpath.append(template, start, template.length());
+
+		return xpath.toString();
+	}
+
+	/**
+	 * Returns the number of place-holders in {@code template}.
+	 */
+	static int placeholderCount(String template) {
+		int count = 0;
+		for (int idx = template.indexOf(PLACEHOLDER); idx != -1; idx = template.indexOf(PLACEHOLDER, idx + PLACEHOLDER.length())) {
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns {@code template} with all its place-holders replaced by
+	 * references to variables, as {@link TemplateMode#VARIABLES} mode does,
+	 * or null if some place-holder is not quoted and must therefore be
+	 * replaced by its argument before compiling.
+	 */
+	static String expandToVariables(String template) {
+		StringBuilder xpath = new StringBuilder(template.length() + 16);
+		int argIdx = 0;
+		int start = 0;
+		int idx;
+
+		while ((idx = template.indexOf(PLACEHOLDER, start)) != -1) {
+			int end = idx + PLACEHOLDER.length();
+			if (!isQuoted(template, idx, end)) {
+				return null;
+			}
+
+			xpath.append(template, start, idx - 1);
+			xpath.append('$').append(VARIABLE_PREFIX).append(argIdx + 1);
+
+			argIdx++;
+			start = end + 1;
+		}
+
+		xpath.append(template, start, template.length());
+
+		return xpath.toString();
+	}
+
+	private static boolean isQuoted(String template, int placeholderStart, int placeholderEnd) {
+		if (placeholderStart == 0 || placeholderEnd == template.length()) {
+			return false;
+		}
+
+		char before = template.charAt(placeholderStart - 1);
+		char after = template.charAt(placeholderEnd);
+
+		return (before == '\'' || before == '"') && before == after;
+	}
+
+	/**
+	 * Resolves the variables generated by {@link Templates#expand} to the
+	 * arguments bound with {@link #bind(String[])}.
+	 *
+	 * <p>
+	 * JAXP captures the variable resolver when an expression is compiled,
+	 * so each {@link XPathEvaluator} owns one resolver and rebinds it before
+	 * every evaluation.
+	 */
+	static class ArgumentResolver implements XPathVariableResolver {
+		private static final String[] NO_ARGS = new String[0];
+
+		private String[] args = NO_ARGS;
+
+		void bind(String[] args) {
+			this.args = args;
+		}
+
+		void unbind() {
+			this.args = NO_ARGS;
+		}
+
+		@Override
+		public Object resolveVariable(QName variableName) {
+			String name = variableName.getLocalPart();
+			if (!name.startsWith(VARIABLE_PREFIX) || variableName.getNamespaceURI().length() != 0) {
+				return null;
+			}
+
+			int argIdx;
+			try {
+				argIdx = Integer.parseInt(name.substring(VARIABLE_PREFIX.length())) - 1;
+			} catch (NumberFormatException e) {
+				return null;
+			}
+
+			if (argIdx < 0 || argIdx >= args.length) {
+				return null;
+			}
+
+			return args[argIdx];
+		}
+	}
+}
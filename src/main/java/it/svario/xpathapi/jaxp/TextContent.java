@@ -0,0 +1,88 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.io.IOException;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Writes the textual content of nodes to an {@code Appendable} without
+ * building intermediate strings.
+ *
+ * <p>
+ * The content written is the same returned by {@code Node.getTextContent()},
+ * but the character data of the descendant text nodes is appended piece by
+ * piece instead of being concatenated first.
+ */
+final class TextContent {
+	private TextContent() {
+	}
+
+	/**
+	 * Appends the textual content of all the nodes in {@code nodeList} to
+	 * {@code sink}, separated by {@code separator}, and returns the number of
+	 * nodes.
+	 */
+	static int appendAll(NodeList nodeList, Appendable sink, CharSequence separator) throws IOException {
+		int length = nodeList.getLength();
+		for (int i = 0; i < length; i++) {
+			if (i > 0 && separator != null) {
+				sink.append(separator);
+			}
+			append(nodeList.item(i), sink);
+		}
+
+		return length;
+	}
+
+	/**
+	 * Appends the textual content of {@code node} to {@code sink}. Nothing
+	 * is appended for the nodes whose text content is null, such as
+	 * documents.
+	 */
+	static void append(Node node, Appendable sink) throws IOException {
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+		case Node.DOCUMENT_FRAGMENT_NODE:
+		case Node.ENTITY_NODE:
+		case Node.ENTITY_REFERENCE_NODE:
+			appendDescendants(node, sink);
+			break;
+		case Node.DOCUMENT_NODE:
+		case Node.DOCUMENT_TYPE_NODE:
+		case Node.NOTATION_NODE:
+			break;
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+		case Node.COMMENT_NODE:
+			sink.append(((CharacterData) node).getData());
+			break;
+		default:
+			String value = node.getNodeValue();
+			if (value != null) {
+				sink.append(value);
+			}
+			break;
+		}
+	}
+
+	private static void appendDescendants(Node root, Appendable sink) throws IOException {
+		Node current = root.getFirstChild();
+		while (current != null) {
+			short type = current.getNodeType();
+			if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+				sink.append(((CharacterData) current).getData());
+			} else if ((type == Node.ELEMENT_NODE || type == Node.ENTITY_REFERENCE_NODE) && current.getFirstChild() != null) {
+				current = current.getFirstChild();
+				continue;
+			}
+
+			while (current != root && current.getNextSibling() == null) {
+				current = current.getParentNode();
+			}
+			current = (current == root) ? null : current.getNextSibling();
+		}
+	}
+}
@@ -2,14 +2,30 @@
 
 package it.svario.xpathapi.jaxp;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
 import javax.xml.xpath.*;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.traversal.NodeFilter;
 import org.w3c.dom.traversal.NodeIterator;
+import org.xml.sax.InputSource;
 
 /**
  * The container for the various static methods exposed by the XPathAPI.
@@ -75,8 +91,8 @@ public class XPathAPI {
 	 * @throws XPathException
 	 */
 	public static Node selectSingleNode(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
-		NodeList nodes = selectNodeList(contextNode, xpathString, namespaces, args);
-		return selectFirstNode(nodes);
+		NamespaceContext nsContext = namespaceContext(xpathString, contextNode, namespaces);
+		return selectSingleNode(contextNode, xpathString, nsContext, args);
 	}
 
 	/**
@@ -104,16 +120,19 @@ public class XPathAPI {
 	 * @throws XPathException
 	 */
 	public static Node selectSingleNode(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
-		NodeList nodes = selectNodeList(contextNode, xpathString, namespaceNode, args);
-		return selectFirstNode(nodes);
+		NamespaceContext nsContext = namespaceContext(xpathString, namespaceNode);
+		return selectSingleNode(contextNode, xpathString, nsContext, args);
 	}
 
-	private static Node selectFirstNode(NodeList nodes) {
-		if (nodes.getLength() == 0) {
-			return null;
-		}
+	/**
+	 * Evaluates the XPath expression asking only for its first node in
+	 * document order: the XPath engine can stop walking the tree as soon as
+	 * it has found it, instead of building and sorting the whole node set.
+	 */
+	static Node selectSingleNode(Node contextNode, String xpathString, NamespaceContext nsContext, String... args) throws XPathException {
+		Node node = (Node) evaluate(contextNode, xpathString, nsContext, args, XPathConstants.NODE);
 
-		return nodes.item(0);
+		return node;
 	}
 
 	/**
@@ -179,7 +198,7 @@ public class XPathAPI {
 	 */
 	public static String selectSingleNodeAsString(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
 		Node node = selectSingleNode(contextNode, xpathString, namespaces, args);
-		return selectNodeAsString(node);
+		return selectNodeAsString(node, xpathString);
 	}
 
 	/**
@@ -212,10 +231,22 @@ public class XPathAPI {
 	 */
 	public static String selectSingleNodeAsString(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
 		Node node = selectSingleNode(contextNode, xpathString, namespaceNode, args);
-		return selectNodeAsString(node);
+		return selectNodeAsString(node, xpathString);
+	}
+
+	/**
+	 * Returns the textual content of {@code node}, reporting the conversion
+	 * of the result of {@code expression} to the query listener.
+	 */
+	static String selectNodeAsString(Node node, String expression) {
+		long start = Instrumentation.start();
+		String string = selectNodeAsString(node);
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, (node == null) ? 0 : 1);
+
+		return string;
 	}
 
-	private static String selectNodeAsString(Node node) {
+	static String selectNodeAsString(Node node) {
 		if (node == null) {
 			return null;
 		}
@@ -294,7 +325,7 @@ public class XPathAPI {
 	 * @see #selectListOfNodes(Node, String, Node, String...)
 	 */
 	public static NodeList selectNodeList(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
-		NamespaceContext nsContext = new NodeNamespaceContext(namespaceNode);
+		NamespaceContext nsContext = namespaceContext(xpathString, namespaceNode);
 		return selectNodeList(contextNode, xpathString, nsContext, args);
 	}
 
@@ -330,23 +361,74 @@ public class XPathAPI {
 	 * @see #selectListOfNodes(Node, String, Map, String...)
 	 */
 	public static NodeList selectNodeList(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
-		NamespaceContext nsContext = new NodeNamespaceContext(contextNode, namespaces);
+		NamespaceContext nsContext = namespaceContext(xpathString, contextNode, namespaces);
 		return selectNodeList(contextNode, xpathString, nsContext, args);
 	}
 
-	private static NodeList selectNodeList(Node contextNode, String xpathString, NamespaceContext nsContext, String... args) throws XPathException {
-		XPathFactory xpathFactory = XPathFactory.newInstance();
-		XPath xpath = xpathFactory.newXPath();
+	static NodeList selectNodeList(Node contextNode, String xpathString, NamespaceContext nsContext, String... args) throws XPathException {
+		NodeList nodes = (NodeList) evaluate(contextNode, xpathString, nsContext, args, XPathConstants.NODESET);
 
-		xpath.setNamespaceContext(nsContext);
+		return nodes;
+	}
 
-		xpathString = replacePlaceholders(xpathString, args);
+	static Object evaluate(Node contextNode, String xpathString, NamespaceContext nsContext, String[] args, QName returnType) throws XPathException {
+		ResultCache resultCache = ResultCache.forNode(contextNode);
+		if (resultCache == null) {
+			return evaluateUncached(contextNode, xpathString, nsContext, args, returnType);
+		}
 
-		XPathExpression xpathExpr = xpath.compile(xpathString);
+		ResultCache.Key key = new ResultCache.Key(contextNode, xpathString, nsContext, args, returnType);
+		Object result = resultCache.get(key);
+		if (result != key) {
+			return result;
+		}
 
-		NodeList nodes = (NodeList) xpathExpr.evaluate(contextNode, XPathConstants.NODESET);
+		return resultCache.put(key, evaluateUncached(contextNode, xpathString, nsContext, args, returnType));
+	}
 
-		return nodes;
+	/**
+	 * Evaluates {@code xpathString} like
+	 * {@link #evaluate(Node, String, NamespaceContext, String[], QName)},
+	 * but with an evaluator already acquired by the caller.
+	 */
+	private static Object evaluate(XPathEvaluator evaluator, Node contextNode, String xpathString, NamespaceContext nsContext, String[] args, QName returnType) throws XPathException {
+		ResultCache resultCache = ResultCache.forNode(contextNode);
+		if (resultCache == null) {
+			return evaluator.evaluate(contextNode, xpathString, nsContext, args, returnType);
+		}
+
+		ResultCache.Key key = new ResultCache.Key(contextNode, xpathString, nsContext, args, returnType);
+		Object result = resultCache.get(key);
+		if (result != key) {
+			return result;
+		}
+
+		return resultCache.put(key, evaluator.evaluate(contextNode, xpathString, nsContext, args, returnType));
+	}
+
+	private static Object evaluateUncached(Node contextNode, String xpathString, NamespaceContext nsContext, String[] args, QName returnType) throws XPathException {
+		XPathEvaluator evaluator = EvaluatorPool.acquire();
+		try {
+			return evaluator.evaluate(contextNode, xpathString, nsContext, args, returnType);
+		} finally {
+			EvaluatorPool.release(evaluator);
+		}
+	}
+
+	private static NamespaceContext namespaceContext(String xpathString, Node namespaceNode) {
+		long start = Instrumentation.start();
+		NamespaceContext nsContext = NodeNamespaceContext.forNode(namespaceNode);
+		Instrumentation.end(QueryPhase.NAMESPACE_CONTEXT, xpathString, start, -1);
+
+		return nsContext;
+	}
+
+	private static NamespaceContext namespaceContext(String xpathString, Node contextNode, Map<String, String> namespaces) {
+		long start = Instrumentation.start();
+		NamespaceContext nsContext = NodeNamespaceContext.forNode(contextNode, namespaces);
+		Instrumentation.end(QueryPhase.NAMESPACE_CONTEXT, xpathString, start, -1);
+
+		return nsContext;
 	}
 
 	/**
@@ -404,7 +486,7 @@ public class XPathAPI {
 	 * @throws XPathException
 	 */
 	public static List<Node> selectListOfNodes(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
-		NamespaceContext nsContext = new NodeNamespaceContext(namespaceNode);
+		NamespaceContext nsContext = namespaceContext(xpathString, namespaceNode);
 		return selectListOfNodes(contextNode, xpathString, nsContext, args);
 	}
 
@@ -432,13 +514,28 @@ public class XPathAPI {
 	 * @throws XPathException
 	 */
 	public static List<Node> selectListOfNodes(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
-		NamespaceContext nsContext = new NodeNamespaceContext(contextNode, namespaces);
+		NamespaceContext nsContext = namespaceContext(xpathString, contextNode, namespaces);
 		return selectListOfNodes(contextNode, xpathString, nsContext, args);
 	}
 
 	private static List<Node> selectListOfNodes(Node contextNode, String xpathString, NamespaceContext nsContext, String... args) throws XPathException {
-		xpathString = replacePlaceholders(xpathString, args);
-		NodeList nodeList = selectNodeList(contextNode, xpathString, nsContext);
+		NodeList nodeList = selectNodeList(contextNode, xpathString, nsContext, args);
+
+		return nodeListAsList(nodeList, xpathString);
+	}
+
+	static List<Node> nodeListAsList(NodeList nodeList, String expression) {
+		long start = Instrumentation.start();
+		List<Node> list = nodeListAsList(nodeList);
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, list.size());
+
+		return list;
+	}
+
+	static List<Node> nodeListAsList(NodeList nodeList) {
+		if (nodeList instanceof ListNodeList) {
+			return ((ListNodeList) nodeList).asList();
+		}
 
 		int listLength = nodeList.getLength();
 		List<Node> list = new ArrayList<Node>(listLength);
@@ -506,7 +603,7 @@ public class XPathAPI {
 	public static List<String> selectNodeListAsStrings(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
 		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaces, args);
 
-		return nodeListAsStringList(nodeList);
+		return nodeListAsStringList(nodeList, xpathString);
 	}
 
 	/**
@@ -538,12 +635,22 @@ public class XPathAPI {
 	public static List<String> selectNodeListAsStrings(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
 		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaceNode, args);
 
-		return nodeListAsStringList(nodeList);
+		return nodeListAsStringList(nodeList, xpathString);
+	}
+
+	static List<String> nodeListAsStringList(NodeList nodeList, String expression) {
+		long start = Instrumentation.start();
+		List<String> list = nodeListAsStringList(nodeList);
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, list.size());
+
+		return list;
 	}
 
-	private static List<String> nodeListAsStringList(NodeList nodeList) {
-		List<String> list = new ArrayList<String>(nodeList.getLength());
-		for (int i = 0; i < nodeList.getLength(); i++) {
+	static List<String> nodeListAsStringList(NodeList nodeList) {
+		int listLength = nodeList.getLength();
+		List<String> list = new ArrayList<String>(listLength);
+
+		for (int i = 0; i < listLength; i++) {
 			Node node = nodeList.item(i);
 			list.add(node.getTextContent());
 		}
@@ -552,50 +659,332 @@ public class XPathAPI {
 	}
 
 	/**
-	 * Returns an iterator over all the nodes that match the given XPath
-	 * expression.
+	 * Returns a list with the textual content of all the nodes that match the
+	 * given XPath expression, computing the content of each node only when
+	 * it is first accessed.
 	 * 
 	 * <p>
-	 * Same as {@link #selectNodeList(Node, String, String...)} but returns a
-	 * {@code NodeIterator} instead of a simple {@code NodeList}.
+	 * This function behaves like
+	 * {@link #selectNodeListAsStrings(Node, String, String...)}, but no
+	 * string is built for the elements of the list that are never read. The
+	 * returned list is read-only and is not safe for concurrent access.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return a lazy list with the textual content of the matching nodes
+	 * 
+	 * @throws XPathException
+	 */
+	public static List<String> selectNodeListAsLazyStrings(Node contextNode, String xpathString, String... args) throws XPathException {
+		return selectNodeListAsLazyStrings(contextNode, xpathString, contextNode, args);
+	}
+
+	/**
+	 * Returns a lazy list with the textual content of all the nodes that
+	 * match the given XPath expression, taking into account the namespace
+	 * mappings defined in {@code namespaces}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return a lazy list with the textual content of the matching nodes
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #selectNodeListAsLazyStrings(Node, String, String...)
+	 */
+	public static List<String> selectNodeListAsLazyStrings(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaces, args);
+
+		return nodeListAsLazyStringList(nodeList, xpathString);
+	}
+
+	/**
+	 * Returns a lazy list with the textual content of all the nodes that
+	 * match the given XPath expression, taking into account all namespaces
+	 * found {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return a lazy list with the textual content of the matching nodes
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #selectNodeListAsLazyStrings(Node, String, String...)
+	 */
+	public static List<String> selectNodeListAsLazyStrings(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaceNode, args);
+
+		return nodeListAsLazyStringList(nodeList, xpathString);
+	}
+
+	static List<String> nodeListAsLazyStringList(NodeList nodeList, String expression) {
+		long start = Instrumentation.start();
+		List<String> list = new LazyStringList(nodeList);
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, list.size());
+
+		return list;
+	}
+
+	/**
+	 * Appends the textual content of all the nodes that match the given
+	 * XPath expression to {@code sink}, separated by {@code separator}.
 	 * 
 	 * <p>
-	 * The only namespaces prefixes usable in the XPath expression are those
-	 * available in {@code contextNode}. If other additional prefixes are
-	 * required, use
-	 * {@link #selectNodeIterator(Node, String, Node, String...)}.
+	 * The text of each node is written piece by piece, so that no
+	 * {@code String} is built for it: large selections can be copied to a
+	 * {@code StringBuilder} or to a {@code Writer} without creating garbage.
+	 * The text appended for each node is the same returned by
+	 * {@link #selectNodeListAsStrings(Node, String, String...)}.
 	 * 
 	 * @param contextNode the node from which the XPath expression is
 	 *            evaluated
 	 * @param xpathString the XPath expression to evaluate
+	 * @param sink the destination of the textual content
+	 * @param separator the text appended between the content of two nodes,
+	 *            or null for none
 	 * @param args an optional array of strings used to replace the
 	 *            "{@code {}}" place-holders in {@code xpathString}
 	 * 
-	 * @return an iterator over all the nodes that match the given XPath
-	 *         expression
+	 * @return the number of nodes whose content has been appended
+	 * 
+	 * @throws XPathException
+	 * @throws IOException if {@code sink} cannot be written to
+	 */
+	public static int appendNodeListAsStrings(Node contextNode, String xpathString, Appendable sink, CharSequence separator, String... args) throws XPathException, IOException {
+		return appendNodeListAsStrings(contextNode, xpathString, contextNode, sink, separator, args);
+	}
+
+	/**
+	 * Appends the textual content of all the nodes that match the given
+	 * XPath expression to {@code sink}, taking into account the namespace
+	 * mappings defined in {@code namespaces}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param sink the destination of the textual content
+	 * @param separator the text appended between the content of two nodes,
+	 *            or null for none
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of nodes whose content has been appended
 	 * 
 	 * @throws XPathException
+	 * @throws IOException if {@code sink} cannot be written to
 	 * 
-	 * @see #selectNodeList(Node, String, String...)
+	 * @see #appendNodeListAsStrings(Node, String, Appendable, CharSequence, String...)
 	 */
-	public static NodeIterator selectNodeIterator(Node contextNode, String xpathString, String... args) throws XPathException {
-		return selectNodeIterator(contextNode, xpathString, contextNode, args);
+	public static int appendNodeListAsStrings(Node contextNode, String xpathString, Map<String, String> namespaces, Appendable sink, CharSequence separator, String... args) throws XPathException, IOException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaces, args);
+
+		return appendNodeList(nodeList, xpathString, sink, separator);
 	}
 
 	/**
-	 * Returns an iterator over all the nodes that match the given XPath
-	 * expression, taking into account all namespaces found in
-	 * {@code namespaceNode}.
+	 * Appends the textual content of all the nodes that match the given
+	 * XPath expression to {@code sink}, taking into account all namespaces
+	 * found {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param sink the destination of the textual content
+	 * @param separator the text appended between the content of two nodes,
+	 *            or null for none
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of nodes whose content has been appended
+	 * 
+	 * @throws XPathException
+	 * @throws IOException if {@code sink} cannot be written to
+	 * 
+	 * @see #appendNodeListAsStrings(Node, String, Appendable, CharSequence, String...)
+	 */
+	public static int appendNodeListAsStrings(Node contextNode, String xpathString, Node namespaceNode, Appendable sink, CharSequence separator, String... args) throws XPathException, IOException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaceNode, args);
+
+		return appendNodeList(nodeList, xpathString, sink, separator);
+	}
+
+	static int appendNodeList(NodeList nodeList, String expression, Appendable sink, CharSequence separator) throws IOException {
+		if (sink == null) {
+			throw new IllegalArgumentException("Sink cannot be null");
+		}
+
+		long start = Instrumentation.start();
+		int count = TextContent.appendAll(nodeList, sink, separator);
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, count);
+
+		return count;
+	}
+
+	/**
+	 * Passes all the nodes that match the given XPath expression to
+	 * {@code visitor}, in document order, until it returns false.
 	 * 
 	 * <p>
-	 * Same as {@link #selectNodeList(Node, String, Node, String...)} but
-	 * returns a {@code NodeIterator} instead of a simple {@code NodeList}.
+	 * Unlike {@link #selectListOfNodes(Node, String, String...)}, no list of
+	 * the matching nodes is built, and the remaining nodes are not even
+	 * fetched from the XPath result once the visitor has stopped.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param visitor the visitor of the matching nodes
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of visited nodes
+	 * 
+	 * @throws XPathException
+	 */
+	public static int forEachNode(Node contextNode, String xpathString, NodeVisitor visitor, String... args) throws XPathException {
+		return forEachNode(contextNode, xpathString, contextNode, visitor, args);
+	}
+
+	/**
+	 * Passes all the nodes that match the given XPath expression to
+	 * {@code visitor}, taking into account the namespace mappings defined
+	 * in {@code namespaces}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param visitor the visitor of the matching nodes
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of visited nodes
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #forEachNode(Node, String, NodeVisitor, String...)
+	 */
+	public static int forEachNode(Node contextNode, String xpathString, Map<String, String> namespaces, NodeVisitor visitor, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaces, args);
+
+		return visitNodeList(nodeList, xpathString, visitor);
+	}
+
+	/**
+	 * Passes all the nodes that match the given XPath expression to
+	 * {@code visitor}, taking into account all namespaces found
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param visitor the visitor of the matching nodes
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of visited nodes
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #forEachNode(Node, String, NodeVisitor, String...)
+	 */
+	public static int forEachNode(Node contextNode, String xpathString, Node namespaceNode, NodeVisitor visitor, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaceNode, args);
+
+		return visitNodeList(nodeList, xpathString, visitor);
+	}
+
+	static int visitNodeList(NodeList nodeList, String expression, NodeVisitor visitor) {
+		if (visitor == null) {
+			throw new IllegalArgumentException("Visitor cannot be null");
+		}
+
+		long start = Instrumentation.start();
+		int listLength = nodeList.getLength();
+		int visited = 0;
+		while (visited < listLength) {
+			Node node = nodeList.item(visited++);
+			if (!visitor.visit(node)) {
+				break;
+			}
+		}
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, visited);
+
+		return visited;
+	}
+
+	/**
+	 * Adds all the nodes that match the given XPath expression to
+	 * {@code nodes}.
 	 * 
 	 * <p>
 	 * This function behaves like
-	 * {@link #selectNodeIterator(Node, String, String...)}, but the namespace
-	 * prefixes that can be used in the XPath expression are not those
-	 * available in {@code contextNode}, but those available in
+	 * {@link #selectListOfNodes(Node, String, String...)}, but the nodes are
+	 * added to a collection owned by the caller, which is not cleared
+	 * first, so that the same collection can be reused by many queries.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param nodes the collection the matching nodes are added to
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of matching nodes
+	 * 
+	 * @throws XPathException
+	 */
+	public static int selectListOfNodesInto(Node contextNode, String xpathString, Collection<? super Node> nodes, String... args) throws XPathException {
+		return selectListOfNodesInto(contextNode, xpathString, contextNode, nodes, args);
+	}
+
+	/**
+	 * Adds all the nodes that match the given XPath expression to
+	 * {@code nodes}, taking into account the namespace mappings defined in
+	 * {@code namespaces}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param nodes the collection the matching nodes are added to
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of matching nodes
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #selectListOfNodesInto(Node, String, Collection, String...)
+	 */
+	public static int selectListOfNodesInto(Node contextNode, String xpathString, Map<String, String> namespaces, Collection<? super Node> nodes, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaces, args);
+
+		return addNodes(nodeList, xpathString, nodes);
+	}
+
+	/**
+	 * Adds all the nodes that match the given XPath expression to
+	 * {@code nodes}, taking into account all namespaces found
 	 * {@code namespaceNode}.
 	 * 
 	 * @param contextNode the node from which the XPath expression is
@@ -603,26 +992,1919 @@ public class XPathAPI {
 	 * @param xpathString the XPath expression to evaluate
 	 * @param namespaceNode the node from which all the namespace declarations
 	 *            will be taken
+	 * @param nodes the collection the matching nodes are added to
 	 * @param args an optional array of strings used to replace the
 	 *            "{@code {}}" place-holders in {@code xpathString}
 	 * 
-	 * @return an iterator over all the nodes that match the given XPath
-	 *         expression
+	 * @return the number of matching nodes
 	 * 
 	 * @throws XPathException
 	 * 
-	 * @see #selectNodeList(Node, String, Node, String...)
+	 * @see #selectListOfNodesInto(Node, String, Collection, String...)
 	 */
-	public static NodeIterator selectNodeIterator(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
-		NodeList nodes = selectNodeList(contextNode, xpathString, namespaceNode, args);
-		return new NodeListIterator(nodes);
+	public static int selectListOfNodesInto(Node contextNode, String xpathString, Node namespaceNode, Collection<? super Node> nodes, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaceNode, args);
+
+		return addNodes(nodeList, xpathString, nodes);
 	}
 
-	private static String replacePlaceholders(String string, String... args) {
-		for (String arg : args) {
-			string = string.replace("{}", arg);
+	static int addNodes(NodeList nodeList, String expression, Collection<? super Node> nodes) {
+		if (nodes == null) {
+			throw new IllegalArgumentException("Target collection cannot be null");
 		}
 
-		return string;
+		long start = Instrumentation.start();
+		int listLength = nodeList.getLength();
+		ensureCapacity(nodes, listLength);
+		for (int i = 0; i < listLength; i++) {
+			nodes.add(nodeList.item(i));
+		}
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, listLength);
+
+		return listLength;
+	}
+
+	/**
+	 * Adds the textual content of all the nodes that match the given XPath
+	 * expression to {@code strings}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNodeListAsStrings(Node, String, String...)}, but the
+	 * strings are added to a collection owned by the caller, which is not
+	 * cleared first, so that the same collection can be reused by many
+	 * queries.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param strings the collection the textual content is added to
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of matching nodes
+	 * 
+	 * @throws XPathException
+	 */
+	public static int selectNodeListAsStringsInto(Node contextNode, String xpathString, Collection<? super String> strings, String... args) throws XPathException {
+		return selectNodeListAsStringsInto(contextNode, xpathString, contextNode, strings, args);
+	}
+
+	/**
+	 * Adds the textual content of all the nodes that match the given XPath
+	 * expression to {@code strings}, taking into account the namespace
+	 * mappings defined in {@code namespaces}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param strings the collection the textual content is added to
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of matching nodes
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #selectNodeListAsStringsInto(Node, String, Collection, String...)
+	 */
+	public static int selectNodeListAsStringsInto(Node contextNode, String xpathString, Map<String, String> namespaces, Collection<? super String> strings, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaces, args);
+
+		return addStrings(nodeList, xpathString, strings);
+	}
+
+	/**
+	 * Adds the textual content of all the nodes that match the given XPath
+	 * expression to {@code strings}, taking into account all namespaces
+	 * found {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param strings the collection the textual content is added to
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of matching nodes
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #selectNodeListAsStringsInto(Node, String, Collection, String...)
+	 */
+	public static int selectNodeListAsStringsInto(Node contextNode, String xpathString, Node namespaceNode, Collection<? super String> strings, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaceNode, args);
+
+		return addStrings(nodeList, xpathString, strings);
+	}
+
+	static int addStrings(NodeList nodeList, String expression, Collection<? super String> strings) {
+		if (strings == null) {
+			throw new IllegalArgumentException("Target collection cannot be null");
+		}
+
+		long start = Instrumentation.start();
+		int listLength = nodeList.getLength();
+		ensureCapacity(strings, listLength);
+		for (int i = 0; i < listLength; i++) {
+			strings.add(nodeList.item(i).getTextContent());
+		}
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, listLength);
+
+		return listLength;
+	}
+
+	private static void ensureCapacity(Collection<?> collection, int added) {
+		if (collection instanceof ArrayList) {
+			((ArrayList<?>) collection).ensureCapacity(collection.size() + added);
+		}
+	}
+
+	/**
+	 * Returns an iterator over all the nodes that match the given XPath
+	 * expression.
+	 * 
+	 * <p>
+	 * Same as {@link #selectNodeList(Node, String, String...)} but returns a
+	 * {@code NodeIterator} instead of a simple {@code NodeList}.
+	 * 
+	 * <p>
+	 * Simple location paths made only of child and descendant steps with
+	 * name tests, an optional final attribute step and {@code [n]},
+	 * {@code [@attr]} or {@code [@attr='value']} predicates are evaluated
+	 * lazily: each call to {@code nextNode} walks the tree only up to the
+	 * next match, so stopping early does not pay for the rest of the
+	 * result. The tree must not be modified while such an iterator is in
+	 * use. Other expressions are evaluated in full before the iterator is
+	 * returned, and so are all expressions when the simple path engine is
+	 * disabled or when results are cached (see
+	 * {@link #setResultCacheCapacity(int)}).
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use
+	 * {@link #selectNodeIterator(Node, String, Node, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return an iterator over all the nodes that match the given XPath
+	 *         expression
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #selectNodeList(Node, String, String...)
+	 */
+	public static NodeIterator selectNodeIterator(Node contextNode, String xpathString, String... args) throws XPathException {
+		return selectNodeIterator(contextNode, xpathString, contextNode, args);
+	}
+
+	/**
+	 * Returns an iterator over all the nodes that match the given XPath
+	 * expression, taking into account all namespaces found in
+	 * {@code namespaceNode}.
+	 * 
+	 * <p>
+	 * Same as {@link #selectNodeList(Node, String, Node, String...)} but
+	 * returns a {@code NodeIterator} instead of a simple {@code NodeList}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNodeIterator(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not those
+	 * available in {@code contextNode}, but those available in
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return an iterator over all the nodes that match the given XPath
+	 *         expression
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #selectNodeList(Node, String, Node, String...)
+	 */
+	public static NodeIterator selectNodeIterator(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
+		return selectNodeIterator(contextNode, xpathString, namespaceNode, NodeFilter.SHOW_ALL, null, args);
+	}
+
+	/**
+	 * Returns an iterator over the nodes that match the given XPath
+	 * expression and that are accepted by {@code whatToShow} and
+	 * {@code filter}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNodeIterator(Node, String, String...)}, but the
+	 * returned iterator skips the nodes whose type is not included in
+	 * {@code whatToShow} and those for which {@code filter} does not return
+	 * {@link NodeFilter#FILTER_ACCEPT}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param whatToShow the types of node to return, as a combination of
+	 *            the {@code NodeFilter.SHOW_*} flags
+	 * @param filter the filter to apply to the matching nodes, or null
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return an iterator over the accepted nodes that match the given XPath
+	 *         expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static NodeIterator selectNodeIterator(Node contextNode, String xpathString, int whatToShow, NodeFilter filter, String... args) throws XPathException {
+		return selectNodeIterator(contextNode, xpathString, contextNode, whatToShow, filter, args);
+	}
+
+	/**
+	 * Returns an iterator over the nodes that match the given XPath
+	 * expression and that are accepted by {@code whatToShow} and
+	 * {@code filter}, taking into account all namespaces found in
+	 * {@code namespaceNode}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNodeIterator(Node, String, int, NodeFilter, String...)},
+	 * but the namespace prefixes that can be used in the XPath expression
+	 * are not those available in {@code contextNode}, but those available in
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param whatToShow the types of node to return, as a combination of
+	 *            the {@code NodeFilter.SHOW_*} flags
+	 * @param filter the filter to apply to the matching nodes, or null
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return an iterator over the accepted nodes that match the given XPath
+	 *         expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static NodeIterator selectNodeIterator(Node contextNode, String xpathString, Node namespaceNode, int whatToShow, NodeFilter filter, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, namespaceNode);
+		return selectNodeIterator(contextNode, xpathString, nsContext, whatToShow, filter, args);
+	}
+
+	static NodeIterator selectNodeIterator(Node contextNode, String xpathString, NamespaceContext nsContext, int whatToShow, NodeFilter filter, String... args) throws XPathException {
+		if (ResultCache.forNode(contextNode) != null) {
+			NodeList nodes = selectNodeList(contextNode, xpathString, nsContext, args);
+			return new NodeListIterator(nodes, contextNode, whatToShow, filter);
+		}
+
+		XPathEvaluator evaluator = EvaluatorPool.acquire();
+		try {
+			return evaluator.iterate(contextNode, xpathString, Templates.getMode(), nsContext, args, whatToShow, filter);
+		} finally {
+			EvaluatorPool.release(evaluator);
+		}
+	}
+
+	/**
+	 * Selects all the nodes that match the given XPath expression (returns a
+	 * {@code Stream<Node>}).
+	 * 
+	 * <p>
+	 * The stream reads the nodes directly from the result of the XPath
+	 * engine, without copying them into a list. It is ordered and sized, and
+	 * splits evenly when made parallel; DOM implementations are not required
+	 * to be thread-safe, so parallel streams should only read the nodes of
+	 * documents known to be safe for concurrent reads.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use {@link #selectNodeStream(Node, String, Map, String...)}
+	 * or {@link #selectNodeStream(Node, String, Node, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return a stream of all the nodes that match the given XPath
+	 *         expression
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #selectListOfNodes(Node, String, String...)
+	 */
+	public static Stream<Node> selectNodeStream(Node contextNode, String xpathString, String... args) throws XPathException {
+		return selectNodeStream(contextNode, xpathString, contextNode, args);
+	}
+
+	/**
+	 * Selects all the nodes that match the given XPath expression, taking
+	 * into account the namespace mappings defined in {@code namespaces}
+	 * (returns a {@code Stream<Node>}).
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNodeStream(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not only those
+	 * available in {@code contextNode}, but also the ones defined in the
+	 * {@code namespaces} mapping.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return a stream of all the nodes that match the given XPath
+	 *         expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static Stream<Node> selectNodeStream(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, contextNode, namespaces);
+		return nodeListAsStream(selectNodeList(contextNode, xpathString, nsContext, args));
+	}
+
+	/**
+	 * Selects all the nodes that match the given XPath expression, taking
+	 * into account all namespaces found in {@code namespaceNode} (returns a
+	 * {@code Stream<Node>}).
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNodeStream(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not those
+	 * available in {@code contextNode}, but those available in
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return a stream of all the nodes that match the given XPath
+	 *         expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static Stream<Node> selectNodeStream(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, namespaceNode);
+		return nodeListAsStream(selectNodeList(contextNode, xpathString, nsContext, args));
+	}
+
+	/**
+	 * Returns a stream with the textual content of all the nodes that match
+	 * the given XPath expression.
+	 * 
+	 * <p>
+	 * The textual content of each node is computed only when the stream
+	 * reaches it, so short-circuiting operations such as {@code limit} or
+	 * {@code findFirst} do not pay for the nodes they do not consume.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use
+	 * {@link #selectNodeStreamAsStrings(Node, String, Map, String...)} or
+	 * {@link #selectNodeStreamAsStrings(Node, String, Node, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return a stream with the textual content of the matching nodes
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see #selectNodeStream(Node, String, String...)
+	 * @see #selectNodeListAsStrings(Node, String, String...)
+	 */
+	public static Stream<String> selectNodeStreamAsStrings(Node contextNode, String xpathString, String... args) throws XPathException {
+		return selectNodeStreamAsStrings(contextNode, xpathString, contextNode, args);
+	}
+
+	/**
+	 * Returns a stream with the textual content of all the nodes that match
+	 * the given XPath expression, taking into account the namespace mappings
+	 * defined in {@code namespaces}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNodeStreamAsStrings(Node, String, String...)}, but the
+	 * namespace prefixes that can be used in the XPath expression are not
+	 * only those available in {@code contextNode}, but also the ones defined
+	 * in the {@code namespaces} mapping.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return a stream with the textual content of the matching nodes
+	 * 
+	 * @throws XPathException
+	 */
+	public static Stream<String> selectNodeStreamAsStrings(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
+		return selectNodeStream(contextNode, xpathString, namespaces, args).map(Node::getTextContent);
+	}
+
+	/**
+	 * Returns a stream with the textual content of all the nodes that match
+	 * the given XPath expression, taking into account all namespaces found
+	 * in {@code namespaceNode}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNodeStreamAsStrings(Node, String, String...)}, but the
+	 * namespace prefixes that can be used in the XPath expression are not
+	 * those available in {@code contextNode}, but those available in
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return a stream with the textual content of the matching nodes
+	 * 
+	 * @throws XPathException
+	 */
+	public static Stream<String> selectNodeStreamAsStrings(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
+		return selectNodeStream(contextNode, xpathString, namespaceNode, args).map(Node::getTextContent);
+	}
+
+	static Stream<Node> nodeListAsStream(NodeList nodeList) {
+		return StreamSupport.stream(new NodeListSpliterator(nodeList), false);
+	}
+
+	/**
+	 * Evaluates the given XPath expression and returns its result as a
+	 * number.
+	 * 
+	 * <p>
+	 * The expression is evaluated as an XPath number, so it can be any
+	 * numeric expression such as {@code sum(//price)} or
+	 * {@code count(//item) * 2}; node sets are converted with the XPath
+	 * {@code number()} function. No intermediate list of nodes is created.
+	 * 
+	 * <p>
+	 * Any "{@code {}}" place-holder in the XPath expression is replaced with
+	 * the content of the respective replacement string supplied in
+	 * {@code args}.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use {@link #selectNumber(Node, String, Map, String...)} or
+	 * {@link #selectNumber(Node, String, Node, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numeric value of the XPath expression, {@code NaN} if it
+	 *         is not a number
+	 * 
+	 * @throws XPathException
+	 */
+	public static double selectNumber(Node contextNode, String xpathString, String... args) throws XPathException {
+		return selectNumber(contextNode, xpathString, contextNode, args);
+	}
+
+	/**
+	 * Evaluates the given XPath expression and returns its result as a
+	 * number, taking into account the namespace mappings defined in
+	 * {@code namespaces}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNumber(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not only those
+	 * available in {@code contextNode}, but also the ones defined in the
+	 * {@code namespaces} mapping.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numeric value of the XPath expression, {@code NaN} if it
+	 *         is not a number
+	 * 
+	 * @throws XPathException
+	 */
+	public static double selectNumber(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, contextNode, namespaces);
+		return selectNumber(contextNode, xpathString, nsContext, args);
+	}
+
+	/**
+	 * Evaluates the given XPath expression and returns its result as a
+	 * number, taking into account all namespaces found in
+	 * {@code namespaceNode}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectNumber(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not those
+	 * available in {@code contextNode}, but those available in
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numeric value of the XPath expression, {@code NaN} if it
+	 *         is not a number
+	 * 
+	 * @throws XPathException
+	 */
+	public static double selectNumber(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, namespaceNode);
+		return selectNumber(contextNode, xpathString, nsContext, args);
+	}
+
+	static double selectNumber(Node contextNode, String xpathString, NamespaceContext nsContext, String... args) throws XPathException {
+		Double number = (Double) evaluate(contextNode, xpathString, nsContext, args, XPathConstants.NUMBER);
+
+		return number.doubleValue();
+	}
+
+	/**
+	 * Parses the text of all the nodes that match the given XPath
+	 * expression as decimal numbers, such as {@code 12.5} or {@code -1e3}.
+	 * 
+	 * <p>
+	 * The text is read from the DOM and parsed without building
+	 * intermediate strings or boxed numbers whenever possible. The text of
+	 * each node may have leading and trailing whitespace; the text that is
+	 * empty or is not a number is handled according to {@code policy}.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use
+	 * {@link #selectDoubles(Node, String, Map, NumberPolicy, String...)} or
+	 * {@link #selectDoubles(Node, String, Node, NumberPolicy, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 * 
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 */
+	public static double[] selectDoubles(Node contextNode, String xpathString, NumberPolicy policy, String... args) throws XPathException {
+		return selectDoubles(contextNode, xpathString, contextNode, policy, args);
+	}
+
+	/**
+	 * Parses the text of all the nodes that match the given XPath
+	 * expression as decimal numbers, such as {@code 12.5} or {@code -1e3}, taking into account the namespace mappings
+	 * defined in {@code namespaces}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 * 
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 * 
+	 * @see #selectDoubles(Node, String, NumberPolicy, String...)
+	 */
+	public static double[] selectDoubles(Node contextNode, String xpathString, Map<String, String> namespaces, NumberPolicy policy, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaces, args);
+
+		return nodeListAsDoubles(nodeList, xpathString, policy);
+	}
+
+	/**
+	 * Parses the text of all the nodes that match the given XPath
+	 * expression as decimal numbers, such as {@code 12.5} or {@code -1e3}, taking into account all namespaces found
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 * 
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 * 
+	 * @see #selectDoubles(Node, String, NumberPolicy, String...)
+	 */
+	public static double[] selectDoubles(Node contextNode, String xpathString, Node namespaceNode, NumberPolicy policy, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaceNode, args);
+
+		return nodeListAsDoubles(nodeList, xpathString, policy);
+	}
+
+	static double[] nodeListAsDoubles(NodeList nodeList, String expression, NumberPolicy policy) throws XPathException {
+		long start = Instrumentation.start();
+		double[] values = NumberArrays.doubles(nodeList, policy);
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, values.length);
+
+		return values;
+	}
+
+	/**
+	 * Parses the text of all the nodes that match the given XPath
+	 * expression as integers.
+	 * 
+	 * <p>
+	 * The text is read from the DOM and parsed without building
+	 * intermediate strings or boxed numbers whenever possible. The text of
+	 * each node may have leading and trailing whitespace; the text that is
+	 * empty or is not a number is handled according to {@code policy}.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use
+	 * {@link #selectLongs(Node, String, Map, NumberPolicy, String...)} or
+	 * {@link #selectLongs(Node, String, Node, NumberPolicy, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 * 
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 */
+	public static long[] selectLongs(Node contextNode, String xpathString, NumberPolicy policy, String... args) throws XPathException {
+		return selectLongs(contextNode, xpathString, contextNode, policy, args);
+	}
+
+	/**
+	 * Parses the text of all the nodes that match the given XPath
+	 * expression as integers, taking into account the namespace mappings
+	 * defined in {@code namespaces}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 * 
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 * 
+	 * @see #selectLongs(Node, String, NumberPolicy, String...)
+	 */
+	public static long[] selectLongs(Node contextNode, String xpathString, Map<String, String> namespaces, NumberPolicy policy, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaces, args);
+
+		return nodeListAsLongs(nodeList, xpathString, policy);
+	}
+
+	/**
+	 * Parses the text of all the nodes that match the given XPath
+	 * expression as integers, taking into account all namespaces found
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 * 
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 * 
+	 * @see #selectLongs(Node, String, NumberPolicy, String...)
+	 */
+	public static long[] selectLongs(Node contextNode, String xpathString, Node namespaceNode, NumberPolicy policy, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaceNode, args);
+
+		return nodeListAsLongs(nodeList, xpathString, policy);
+	}
+
+	static long[] nodeListAsLongs(NodeList nodeList, String expression, NumberPolicy policy) throws XPathException {
+		long start = Instrumentation.start();
+		long[] values = NumberArrays.longs(nodeList, policy);
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, values.length);
+
+		return values;
+	}
+
+	/**
+	 * Parses the text of all the nodes that match the given XPath
+	 * expression as integers in the {@code int} range.
+	 * 
+	 * <p>
+	 * The text is read from the DOM and parsed without building
+	 * intermediate strings or boxed numbers whenever possible. The text of
+	 * each node may have leading and trailing whitespace; the text that is
+	 * empty or is not a number is handled according to {@code policy}.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use
+	 * {@link #selectInts(Node, String, Map, NumberPolicy, String...)} or
+	 * {@link #selectInts(Node, String, Node, NumberPolicy, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 * 
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 */
+	public static int[] selectInts(Node contextNode, String xpathString, NumberPolicy policy, String... args) throws XPathException {
+		return selectInts(contextNode, xpathString, contextNode, policy, args);
+	}
+
+	/**
+	 * Parses the text of all the nodes that match the given XPath
+	 * expression as integers in the {@code int} range, taking into account the namespace mappings
+	 * defined in {@code namespaces}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 * 
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 * 
+	 * @see #selectInts(Node, String, NumberPolicy, String...)
+	 */
+	public static int[] selectInts(Node contextNode, String xpathString, Map<String, String> namespaces, NumberPolicy policy, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaces, args);
+
+		return nodeListAsInts(nodeList, xpathString, policy);
+	}
+
+	/**
+	 * Parses the text of all the nodes that match the given XPath
+	 * expression as integers in the {@code int} range, taking into account all namespaces found
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 * 
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 * 
+	 * @see #selectInts(Node, String, NumberPolicy, String...)
+	 */
+	public static int[] selectInts(Node contextNode, String xpathString, Node namespaceNode, NumberPolicy policy, String... args) throws XPathException {
+		NodeList nodeList = selectNodeList(contextNode, xpathString, namespaceNode, args);
+
+		return nodeListAsInts(nodeList, xpathString, policy);
+	}
+
+	static int[] nodeListAsInts(NodeList nodeList, String expression, NumberPolicy policy) throws XPathException {
+		long start = Instrumentation.start();
+		int[] values = NumberArrays.ints(nodeList, policy);
+		Instrumentation.end(QueryPhase.CONVERSION, expression, start, values.length);
+
+		return values;
+	}
+
+	/**
+	 * Evaluates the given XPath expression and returns its result as a
+	 * boolean.
+	 * 
+	 * <p>
+	 * The expression is evaluated as an XPath boolean: a node set is
+	 * {@code true} if it is not empty, a string if it is not empty and a
+	 * number if it is neither zero nor {@code NaN}. No intermediate list of
+	 * nodes is created.
+	 * 
+	 * <p>
+	 * Any "{@code {}}" place-holder in the XPath expression is replaced with
+	 * the content of the respective replacement string supplied in
+	 * {@code args}.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use {@link #selectBoolean(Node, String, Map, String...)} or
+	 * {@link #selectBoolean(Node, String, Node, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the boolean value of the XPath expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static boolean selectBoolean(Node contextNode, String xpathString, String... args) throws XPathException {
+		return selectBoolean(contextNode, xpathString, contextNode, args);
+	}
+
+	/**
+	 * Evaluates the given XPath expression and returns its result as a
+	 * boolean, taking into account the namespace mappings defined in
+	 * {@code namespaces}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectBoolean(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not only those
+	 * available in {@code contextNode}, but also the ones defined in the
+	 * {@code namespaces} mapping.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the boolean value of the XPath expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static boolean selectBoolean(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, contextNode, namespaces);
+		return selectBoolean(contextNode, xpathString, nsContext, args);
+	}
+
+	/**
+	 * Evaluates the given XPath expression and returns its result as a
+	 * boolean, taking into account all namespaces found in
+	 * {@code namespaceNode}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectBoolean(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not those
+	 * available in {@code contextNode}, but those available in
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the boolean value of the XPath expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static boolean selectBoolean(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, namespaceNode);
+		return selectBoolean(contextNode, xpathString, nsContext, args);
+	}
+
+	static boolean selectBoolean(Node contextNode, String xpathString, NamespaceContext nsContext, String... args) throws XPathException {
+		Boolean bool = (Boolean) evaluate(contextNode, xpathString, nsContext, args, XPathConstants.BOOLEAN);
+
+		return bool.booleanValue();
+	}
+
+	/**
+	 * Evaluates the given XPath expression and returns its result as a
+	 * string.
+	 * 
+	 * <p>
+	 * The expression is evaluated as an XPath string, so it can be any
+	 * string expression such as {@code concat(@first, ' ', @last)}. A node
+	 * set is converted to the string value of its first node, which makes
+	 * this method return an empty string where
+	 * {@link #selectSingleNodeAsString(Node, String, String...)} would
+	 * return null.
+	 * 
+	 * <p>
+	 * Any "{@code {}}" place-holder in the XPath expression is replaced with
+	 * the content of the respective replacement string supplied in
+	 * {@code args}.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use {@link #selectString(Node, String, Map, String...)} or
+	 * {@link #selectString(Node, String, Node, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the string value of the XPath expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static String selectString(Node contextNode, String xpathString, String... args) throws XPathException {
+		return selectString(contextNode, xpathString, contextNode, args);
+	}
+
+	/**
+	 * Evaluates the given XPath expression and returns its result as a
+	 * string, taking into account the namespace mappings defined in
+	 * {@code namespaces}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectString(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not only those
+	 * available in {@code contextNode}, but also the ones defined in the
+	 * {@code namespaces} mapping.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the string value of the XPath expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static String selectString(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, contextNode, namespaces);
+		return selectString(contextNode, xpathString, nsContext, args);
+	}
+
+	/**
+	 * Evaluates the given XPath expression and returns its result as a
+	 * string, taking into account all namespaces found in
+	 * {@code namespaceNode}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectString(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not those
+	 * available in {@code contextNode}, but those available in
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the string value of the XPath expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static String selectString(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, namespaceNode);
+		return selectString(contextNode, xpathString, nsContext, args);
+	}
+
+	static String selectString(Node contextNode, String xpathString, NamespaceContext nsContext, String... args) throws XPathException {
+		String string = (String) evaluate(contextNode, xpathString, nsContext, args, XPathConstants.STRING);
+
+		return string;
+	}
+
+	/**
+	 * Counts the nodes that match the given XPath expression.
+	 * 
+	 * <p>
+	 * The nodes are counted by the XPath engine with the XPath
+	 * {@code count()} function: no list of nodes is created.
+	 * 
+	 * <p>
+	 * Any "{@code {}}" place-holder in the XPath expression is replaced with
+	 * the content of the respective replacement string supplied in
+	 * {@code args}.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expression are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use {@link #selectCount(Node, String, Map, String...)} or
+	 * {@link #selectCount(Node, String, Node, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate, it must evaluate
+	 *            to a node set
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of nodes that match the given XPath expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static long selectCount(Node contextNode, String xpathString, String... args) throws XPathException {
+		return selectCount(contextNode, xpathString, contextNode, args);
+	}
+
+	/**
+	 * Counts the nodes that match the given XPath expression, taking into
+	 * account the namespace mappings defined in {@code namespaces}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectCount(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not only those
+	 * available in {@code contextNode}, but also the ones defined in the
+	 * {@code namespaces} mapping.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate, it must evaluate
+	 *            to a node set
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of nodes that match the given XPath expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static long selectCount(Node contextNode, String xpathString, Map<String, String> namespaces, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, contextNode, namespaces);
+		return selectCount(contextNode, xpathString, nsContext, args);
+	}
+
+	/**
+	 * Counts the nodes that match the given XPath expression, taking into
+	 * account all namespaces found in {@code namespaceNode}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectCount(Node, String, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expression are not those
+	 * available in {@code contextNode}, but those available in
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expression is
+	 *            evaluated
+	 * @param xpathString the XPath expression to evaluate, it must evaluate
+	 *            to a node set
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in {@code xpathString}
+	 * 
+	 * @return the number of nodes that match the given XPath expression
+	 * 
+	 * @throws XPathException
+	 */
+	public static long selectCount(Node contextNode, String xpathString, Node namespaceNode, String... args) throws XPathException {
+		NamespaceContext nsContext = namespaceContext(xpathString, namespaceNode);
+		return selectCount(contextNode, xpathString, nsContext, args);
+	}
+
+	static long selectCount(Node contextNode, String xpathString, NamespaceContext nsContext, String... args) throws XPathException {
+		double count = selectNumber(contextNode, "count(" + xpathString + ")", nsContext, args);
+
+		return (long) count;
+	}
+
+	/**
+	 * Returns the textual content of the first node that matches each of the
+	 * given XPath expressions.
+	 * 
+	 * <p>
+	 * This method is equivalent to calling
+	 * {@link #selectSingleNodeAsString(Node, String, String...)} once for
+	 * each expression, but the namespace bindings are resolved only once.
+	 * Use {@link XPathBatch} to request results other than strings.
+	 * 
+	 * <p>
+	 * The only namespaces prefixes usable in the XPath expressions are those
+	 * available in {@code contextNode}. If other additional prefixes are
+	 * required, use
+	 * {@link #selectBatchAsStrings(Node, Map, Map, String...)} or
+	 * {@link #selectBatchAsStrings(Node, Map, Node, String...)}.
+	 * 
+	 * @param contextNode the node from which the XPath expressions are
+	 *            evaluated
+	 * @param xpathStrings a mapping between names and the XPath expressions
+	 *            to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in all the expressions
+	 * 
+	 * @return a mapping between the names in {@code xpathStrings} and the
+	 *         content of the respective selected node, or null if an
+	 *         expression evaluated to an empty node set
+	 * 
+	 * @throws XPathException
+	 * 
+	 * @see XPathBatch
+	 */
+	public static Map<String, String> selectBatchAsStrings(Node contextNode, Map<String, String> xpathStrings, String... args) throws XPathException {
+		return selectBatchAsStrings(contextNode, xpathStrings, contextNode, args);
+	}
+
+	/**
+	 * Returns the textual content of the first node that matches each of the
+	 * given XPath expressions, taking into account the namespace mappings
+	 * defined in {@code namespaces}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectBatchAsStrings(Node, Map, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expressions are not only those
+	 * available in {@code contextNode}, but also the ones defined in the
+	 * {@code namespaces} mapping.
+	 * 
+	 * @param contextNode the node from which the XPath expressions are
+	 *            evaluated
+	 * @param xpathStrings a mapping between names and the XPath expressions
+	 *            to evaluate
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in all the expressions
+	 * 
+	 * @return a mapping between the names in {@code xpathStrings} and the
+	 *         content of the respective selected node, or null if an
+	 *         expression evaluated to an empty node set
+	 * 
+	 * @throws XPathException
+	 */
+	public static Map<String, String> selectBatchAsStrings(Node contextNode, Map<String, String> xpathStrings, Map<String, String> namespaces, String... args) throws XPathException {
+		long start = Instrumentation.start();
+		NamespaceContext nsContext = NodeNamespaceContext.forNode(contextNode, namespaces);
+		Instrumentation.endShared(QueryPhase.NAMESPACE_CONTEXT, xpathStrings.values(), start);
+
+		return selectBatchAsStrings(contextNode, xpathStrings, nsContext, args);
+	}
+
+	/**
+	 * Returns the textual content of the first node that matches each of the
+	 * given XPath expressions, taking into account all namespaces found in
+	 * {@code namespaceNode}.
+	 * 
+	 * <p>
+	 * This function behaves like
+	 * {@link #selectBatchAsStrings(Node, Map, String...)}, but the namespace
+	 * prefixes that can be used in the XPath expressions are not those
+	 * available in {@code contextNode}, but those available in
+	 * {@code namespaceNode}.
+	 * 
+	 * @param contextNode the node from which the XPath expressions are
+	 *            evaluated
+	 * @param xpathStrings a mapping between names and the XPath expressions
+	 *            to evaluate
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in all the expressions
+	 * 
+	 * @return a mapping between the names in {@code xpathStrings} and the
+	 *         content of the respective selected node, or null if an
+	 *         expression evaluated to an empty node set
+	 * 
+	 * @throws XPathException
+	 */
+	public static Map<String, String> selectBatchAsStrings(Node contextNode, Map<String, String> xpathStrings, Node namespaceNode, String... args) throws XPathException {
+		long start = Instrumentation.start();
+		NamespaceContext nsContext = NodeNamespaceContext.forNode(namespaceNode);
+		Instrumentation.endShared(QueryPhase.NAMESPACE_CONTEXT, xpathStrings.values(), start);
+
+		return selectBatchAsStrings(contextNode, xpathStrings, nsContext, args);
+	}
+
+	private static Map<String, String> selectBatchAsStrings(Node contextNode, Map<String, String> xpathStrings, NamespaceContext nsContext, String... args) throws XPathException {
+		Map<String, String> results = new LinkedHashMap<String, String>(2 * xpathStrings.size());
+
+		XPathEvaluator evaluator = EvaluatorPool.acquire();
+		try {
+			for (Map.Entry<String, String> xpath : xpathStrings.entrySet()) {
+				Node node = (Node) evaluate(evaluator, contextNode, xpath.getValue(), nsContext, args, XPathConstants.NODE);
+				results.put(xpath.getKey(), selectNodeAsString(node, xpath.getValue()));
+			}
+		} finally {
+			EvaluatorPool.release(evaluator);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Parses the XML document read from {@code xml}.
+	 * 
+	 * <p>
+	 * The document is parsed by a namespace-aware {@code DocumentBuilder}
+	 * borrowed from a pool and reset after use, so no parser factory or
+	 * parser is created at each call.
+	 * 
+	 * @param xml the stream to read, it is not closed
+	 * 
+	 * @return the parsed document
+	 * 
+	 * @throws XPathException if the document cannot be read or parsed
+	 * 
+	 * @see #setParserFeature(String, boolean)
+	 */
+	public static Document parseDocument(InputStream xml) throws XPathException {
+		return DocumentBuilderPool.parse(new InputSource(xml));
+	}
+
+	/**
+	 * Parses the XML document encoded in {@code xml}.
+	 * 
+	 * <p>
+	 * The document is parsed by a namespace-aware {@code DocumentBuilder}
+	 * borrowed from a pool and reset after use, so no parser factory or
+	 * parser is created at each call.
+	 * 
+	 * @param xml the encoded XML document; the encoding is detected as
+	 *            specified by the XML recommendation
+	 * 
+	 * @return the parsed document
+	 * 
+	 * @throws XPathException if the document cannot be read or parsed
+	 * 
+	 * @see #setParserFeature(String, boolean)
+	 */
+	public static Document parseDocument(byte[] xml) throws XPathException {
+		return DocumentBuilderPool.parse(new InputSource(new ByteArrayInputStream(xml)));
+	}
+
+	/**
+	 * Parses the XML document read from {@code xml}.
+	 * 
+	 * <p>
+	 * The document is parsed by a namespace-aware {@code DocumentBuilder}
+	 * borrowed from a pool and reset after use, so no parser factory or
+	 * parser is created at each call.
+	 * 
+	 * @param xml the reader to read, it is not closed
+	 * 
+	 * @return the parsed document
+	 * 
+	 * @throws XPathException if the document cannot be read or parsed
+	 * 
+	 * @see #setParserFeature(String, boolean)
+	 */
+	public static Document parseDocument(Reader xml) throws XPathException {
+		return DocumentBuilderPool.parse(new InputSource(xml));
+	}
+
+	/**
+	 * Parses the XML document contained in {@code xml}.
+	 * 
+	 * <p>
+	 * The document is parsed by a namespace-aware {@code DocumentBuilder}
+	 * borrowed from a pool and reset after use, so no parser factory or
+	 * parser is created at each call.
+	 * 
+	 * @param xml the text of the XML document
+	 * 
+	 * @return the parsed document
+	 * 
+	 * @throws XPathException if the document cannot be read or parsed
+	 * 
+	 * @see #setParserFeature(String, boolean)
+	 */
+	public static Document parseDocument(CharSequence xml) throws XPathException {
+		return DocumentBuilderPool.parse(new InputSource(new StringReader(xml.toString())));
+	}
+
+	/**
+	 * Returns the document parsed from {@code file}, reusing the parsed
+	 * document if the file has not changed since it was last parsed.
+	 * 
+	 * <p>
+	 * Parsed documents are kept in a cache keyed by the real path of the
+	 * file. At every lookup the modification time and the size of the file
+	 * are checked and, if either has changed, the file is parsed again. The
+	 * least recently used documents are discarded when the total size of
+	 * the cached files exceeds the capacity of the cache. The capacity is a
+	 * budget of file bytes, not of memory: a parsed DOM tree usually takes
+	 * several times the size of its file.
+	 * 
+	 * <p>
+	 * The same document is returned to all the callers, possibly from
+	 * different threads: it must not be modified.
+	 * 
+	 * @param file the XML file to parse
+	 * 
+	 * @return the document parsed from {@code file}
+	 * 
+	 * @throws XPathException if the file cannot be read or parsed
+	 * 
+	 * @see #setDocumentCacheCapacity(long)
+	 */
+	public static Document loadDocument(Path file) throws XPathException {
+		return DocumentCache.get(file);
+	}
+
+	/**
+	 * Returns the maximum number of compiled XPath expressions kept in the
+	 * expression cache of each evaluator.
+	 * 
+	 * @return the capacity of the expression cache
+	 * 
+	 * @see #setExpressionCacheCapacity(int)
+	 */
+	public static int getExpressionCacheCapacity() {
+		return ExpressionCache.getCapacity();
+	}
+
+	/**
+	 * Sets the maximum number of compiled XPath expressions kept in the
+	 * expression cache of each evaluator.
+	 * 
+	 * <p>
+	 * Every XPath expression is compiled once and then reused as long as it
+	 * is evaluated with the same namespace bindings. When the cache is full,
+	 * the least recently used expression is discarded. A capacity of
+	 * {@code 0} disables the cache.
+	 * 
+	 * <p>
+	 * Changing the capacity clears the cache. Queries compiled with
+	 * {@link XPathQuery} are not kept in this cache and are never evicted.
+	 * 
+	 * @param capacity the new capacity of the expression cache
+	 * 
+	 * @throws IllegalArgumentException if {@code capacity} is negative
+	 */
+	public static void setExpressionCacheCapacity(int capacity) {
+		ExpressionCache.setCapacity(capacity);
+	}
+
+	/**
+	 * Discards all the compiled XPath expressions held in the expression
+	 * cache.
+	 */
+	public static void clearExpressionCache() {
+		ExpressionCache.clear();
+	}
+
+	/**
+	 * Tells whether the namespaces in scope for each namespace node are
+	 * memoised.
+	 * 
+	 * @return true if the namespace cache is enabled
+	 * 
+	 * @see #setNamespaceCacheEnabled(boolean)
+	 */
+	public static boolean isNamespaceCacheEnabled() {
+		return NodeNamespaceContext.isNodeCacheEnabled();
+	}
+
+	/**
+	 * Selects whether the namespaces in scope for each namespace node are
+	 * memoised.
+	 * 
+	 * <p>
+	 * The namespace cache is disabled by default, and the namespaces in
+	 * scope for a namespace node are collected again at every call. When
+	 * enabled, they are collected only the first time that node is used:
+	 * this saves a walk up the ancestors of the node for documents that are
+	 * not modified, but namespace declarations that are later added to,
+	 * removed from or moved within the document are not seen until
+	 * {@link #clearNamespaceCache()} is called.
+	 * 
+	 * <p>
+	 * Changing this setting clears the cache.
+	 * 
+	 * @param enabled true to memoise the namespaces of each namespace node
+	 */
+	public static void setNamespaceCacheEnabled(boolean enabled) {
+		NodeNamespaceContext.setNodeCacheEnabled(enabled);
+	}
+
+	/**
+	 * Discards all the memoised namespace bindings.
+	 * 
+	 * <p>
+	 * When the namespace cache is enabled (see
+	 * {@link #setNamespaceCacheEnabled(boolean)}), the namespaces in scope
+	 * for a namespace node are collected only the first time that node is
+	 * used. If namespace declarations are later added to, removed from or
+	 * moved within the document, this method must be called before the
+	 * affected nodes are used again as namespace nodes.
+	 */
+	public static void clearNamespaceCache() {
+		NodeNamespaceContext.clearCache();
+	}
+
+	/**
+	 * Returns the hit, miss and eviction counters of the expression cache.
+	 * 
+	 * @return a snapshot of the expression cache counters
+	 */
+	public static CacheStatistics getExpressionCacheStatistics() {
+		return ExpressionCache.statistics();
+	}
+
+	/**
+	 * Returns the maximum number of query results kept in the result cache
+	 * of each document.
+	 * 
+	 * @return the capacity of the result cache, {@code 0} if it is disabled
+	 * 
+	 * @see #setResultCacheCapacity(int)
+	 */
+	public static int getResultCacheCapacity() {
+		return ResultCache.getCapacity();
+	}
+
+	/**
+	 * Sets the maximum number of query results kept in the result cache of
+	 * each document.
+	 * 
+	 * <p>
+	 * The result cache is disabled by default. When enabled, the result of
+	 * each query run by the methods of this class is remembered, per
+	 * document, together with its context node, expression, namespace
+	 * bindings and arguments; running the same query again then costs a
+	 * hash lookup. When the cache of a document is full, the least recently
+	 * used result is discarded. The caches are attached to their documents,
+	 * so they are garbage collected together with them.
+	 * 
+	 * <p>
+	 * The results of a document are discarded as soon as the document changes
+	 * if the DOM implementation supports mutation events, as the JDK one
+	 * does; with other implementations
+	 * {@link #invalidateResultCache(Document)} must be called after each
+	 * change. Queries whose context node is not attached to its document
+	 * are never cached, since changes to detached subtrees are not
+	 * reported to the document.
+	 * 
+	 * <p>
+	 * Changing the capacity clears the cache.
+	 * 
+	 * @param capacity the new capacity of the result cache, {@code 0} to
+	 *            disable it
+	 * 
+	 * @throws IllegalArgumentException if {@code capacity} is negative
+	 */
+	public static void setResultCacheCapacity(int capacity) {
+		ResultCache.setCapacity(capacity);
+	}
+
+	/**
+	 * Discards the query results cached for {@code document}.
+	 * 
+	 * @param document the document whose results are discarded
+	 * 
+	 * @see #setResultCacheCapacity(int)
+	 */
+	public static void invalidateResultCache(Document document) {
+		ResultCache.invalidate(document);
+	}
+
+	/**
+	 * Discards the query results cached for all the documents.
+	 */
+	public static void clearResultCache() {
+		ResultCache.clear();
+	}
+
+	/**
+	 * Returns the hit, miss and eviction counters of the result cache.
+	 * 
+	 * @return a snapshot of the result cache counters
+	 */
+	public static CacheStatistics getResultCacheStatistics() {
+		return ResultCache.statistics();
+	}
+
+	/**
+	 * Returns the maximum total size, in bytes, of the files whose parsed
+	 * documents are kept in the document cache.
+	 * 
+	 * @return the capacity of the document cache
+	 * 
+	 * @see #setDocumentCacheCapacity(long)
+	 */
+	public static long getDocumentCacheCapacity() {
+		return DocumentCache.getCapacity();
+	}
+
+	/**
+	 * Sets the maximum total size, in bytes, of the files whose parsed
+	 * documents are kept in the document cache.
+	 * 
+	 * <p>
+	 * The capacity is measured on the size of the XML files, not on the
+	 * memory used by their DOM trees, which is usually several times
+	 * larger. Files larger than the capacity are parsed at every use. A
+	 * capacity of {@code 0} disables the cache. Lowering the capacity
+	 * immediately discards the least recently used documents.
+	 * 
+	 * @param capacity the new capacity of the document cache, in bytes
+	 * 
+	 * @throws IllegalArgumentException if {@code capacity} is negative
+	 * 
+	 * @see #loadDocument(Path)
+	 */
+	public static void setDocumentCacheCapacity(long capacity) {
+		DocumentCache.setCapacity(capacity);
+	}
+
+	/**
+	 * Returns the total size, in bytes, of the files whose parsed documents
+	 * are currently kept in the document cache.
+	 * 
+	 * @return the current size of the document cache
+	 */
+	public static long getDocumentCacheSize() {
+		return DocumentCache.getSize();
+	}
+
+	/**
+	 * Discards all the parsed documents held in the document cache.
+	 */
+	public static void clearDocumentCache() {
+		DocumentCache.clear();
+	}
+
+	/**
+	 * Returns the value of a feature of the parser used by the
+	 * {@code parseDocument} methods and by {@link #loadDocument(Path)}.
+	 * 
+	 * @param name the name of the feature
+	 * 
+	 * @return the value of the feature, or null if it has not been set
+	 * 
+	 * @see #setParserFeature(String, boolean)
+	 */
+	public static Boolean getParserFeature(String name) {
+		return DocumentBuilderPool.getFeature(name);
+	}
+
+	/**
+	 * Sets a feature of the parser used by the {@code parseDocument} methods
+	 * and by {@link #loadDocument(Path)}.
+	 * 
+	 * <p>
+	 * The features are those accepted by
+	 * {@link javax.xml.parsers.DocumentBuilderFactory#setFeature(String, boolean)},
+	 * for example {@link javax.xml.XMLConstants#FEATURE_SECURE_PROCESSING},
+	 * {@code http://apache.org/xml/features/dom/defer-node-expansion},
+	 * {@code http://xml.org/sax/features/external-general-entities} or
+	 * {@code http://apache.org/xml/features/dom/create-entity-ref-nodes}.
+	 * Parsers are always namespace-aware. By default secure processing is
+	 * enabled and deferred node expansion is disabled, so that parsed
+	 * documents can be read concurrently.
+	 * 
+	 * <p>
+	 * Documents parsed after this call use the new value; documents
+	 * already held in the document cache are not parsed again.
+	 * 
+	 * @param name the name of the feature
+	 * @param value the new value of the feature
+	 * 
+	 * @throws IllegalArgumentException if the parser does not support the
+	 *             feature
+	 */
+	public static void setParserFeature(String name, boolean value) {
+		DocumentBuilderPool.setFeature(name, value);
+	}
+
+	/**
+	 * Returns the engine that compiles and evaluates the queries.
+	 * 
+	 * @return the default engine
+	 */
+	public static XPathEngine getEngine() {
+		return EvaluatorPool.getDefaultEngine();
+	}
+
+	/**
+	 * Sets the engine that compiles and evaluates the queries.
+	 * 
+	 * <p>
+	 * The engine is meant to be chosen once, at startup, either with this
+	 * method or with the {@value XPathEngine#ENGINE_PROPERTY} system
+	 * property; the {@code XPath} objects created by the previous engine
+	 * are discarded. Queries compiled with {@link XPathQuery} keep the
+	 * engine they were compiled with.
+	 * 
+	 * @param engine the new default engine
+	 * 
+	 * @throws IllegalArgumentException if {@code engine} is null
+	 */
+	public static void setEngine(XPathEngine engine) {
+		EvaluatorPool.setDefaultEngine(engine);
+	}
+
+	/**
+	 * Returns the strategy used to reuse the internal {@code XPath} objects.
+	 * 
+	 * @return the current evaluator mode
+	 */
+	public static EvaluatorMode getEvaluatorMode() {
+		return EvaluatorPool.getMode();
+	}
+
+	/**
+	 * Selects the strategy used to reuse the internal {@code XPath} objects.
+	 * 
+	 * <p>
+	 * The default mode is {@link EvaluatorMode#THREAD_LOCAL}. Applications
+	 * that run queries from virtual threads or from many short-lived threads
+	 * should switch to {@link EvaluatorMode#POOLED}.
+	 * 
+	 * @param mode the new evaluator mode
+	 * 
+	 * @throws IllegalArgumentException if {@code mode} is null
+	 */
+	public static void setEvaluatorMode(EvaluatorMode mode) {
+		EvaluatorPool.setMode(mode);
+	}
+
+	/**
+	 * Returns the maximum number of idle evaluators kept in the pool used in
+	 * {@link EvaluatorMode#POOLED} mode.
+	 * 
+	 * @return the size of the evaluator pool
+	 */
+	public static int getEvaluatorPoolSize() {
+		return EvaluatorPool.getPoolSize();
+	}
+
+	/**
+	 * Sets the maximum number of idle evaluators kept in the pool used in
+	 * {@link EvaluatorMode#POOLED} mode.
+	 * 
+	 * <p>
+	 * The pool does not limit the number of concurrent queries: when all the
+	 * pooled evaluators are busy, a new one is created and then discarded.
+	 * The default size is twice the number of available processors.
+	 * 
+	 * @param poolSize the new size of the evaluator pool
+	 * 
+	 * @throws IllegalArgumentException if {@code poolSize} is negative
+	 */
+	public static void setEvaluatorPoolSize(int poolSize) {
+		EvaluatorPool.setPoolSize(poolSize);
+	}
+
+	/**
+	 * Returns the way in which the "{@code {}}" place-holders are filled
+	 * with the supplied arguments.
+	 * 
+	 * @return the current template mode
+	 */
+	public static TemplateMode getTemplateMode() {
+		return Templates.getMode();
+	}
+
+	/**
+	 * Selects the way in which the "{@code {}}" place-holders are filled
+	 * with the supplied arguments.
+	 * 
+	 * <p>
+	 * The default mode is {@link TemplateMode#SUBSTITUTION}. In
+	 * {@link TemplateMode#VARIABLES} mode a template such as
+	 * {@code //person[@id='{}']} is compiled only once, whatever the
+	 * supplied identifier, and the identifier can safely contain quotes.
+	 * 
+	 * @param mode the new template mode
+	 * 
+	 * @throws IllegalArgumentException if {@code mode} is null
+	 */
+	public static void setTemplateMode(TemplateMode mode) {
+		Templates.setMode(mode);
+	}
+
+	/**
+	 * Builds an index of the elements of {@code document}, to speed up the
+	 * evaluation of descendant paths such as {@code //k:b} or
+	 * {@code //person[@id='{}']}.
+	 * 
+	 * <p>
+	 * The index maps each expanded element name, and each value of the
+	 * given ID-like attributes, to the elements that have it. It is used by
+	 * the built-in simple path engine (see
+	 * {@link #setSimplePathEngineEnabled(boolean)}) for absolute paths whose
+	 * first step is a descendant step with a name test, optionally with
+	 * attribute predicates, followed by child steps; their first step is
+	 * then answered with a hash lookup instead of a scan of the document.
+	 * 
+	 * <p>
+	 * The index is built in one pass and is attached to the document, so
+	 * it is garbage collected together with it. Any change to the document
+	 * discards the index; call this method again to rebuild it.
+	 * 
+	 * @param document the document to index
+	 * @param idAttributes the names of the attributes whose values are
+	 *            indexed, either as local names ({@code "id"}) or, for
+	 *            namespaced attributes, in the {@code "{uri}local"} form
+	 * 
+	 * @throws IllegalArgumentException if the DOM implementation does not
+	 *             support mutation events, so that changes to the document
+	 *             could not be noticed
+	 */
+	public static void indexDocument(Document document, String... idAttributes) {
+		Set<QName> attributeNames = new HashSet<QName>();
+		for (String idAttribute : idAttributes) {
+			attributeNames.add(QName.valueOf(idAttribute));
+		}
+
+		DocumentIndex.create(document, attributeNames);
+	}
+
+	/**
+	 * Discards the index of {@code document}, if any.
+	 * 
+	 * @param document the indexed document
+	 * 
+	 * @see #indexDocument(Document, String...)
+	 */
+	public static void removeDocumentIndex(Document document) {
+		DocumentIndex.remove(document);
+	}
+
+	/**
+	 * Tells whether {@code document} has an index that is still valid,
+	 * that is, one that has not been discarded because of a change to the
+	 * document.
+	 * 
+	 * @param document the document to check
+	 * 
+	 * @return true if {@code document} has a valid index
+	 * 
+	 * @see #indexDocument(Document, String...)
+	 */
+	public static boolean isDocumentIndexed(Document document) {
+		return DocumentIndex.forNode(document) != null;
+	}
+
+	/**
+	 * Tells whether simple location paths are evaluated by the built-in
+	 * DOM-walking engine instead of the JAXP XPath engine.
+	 * 
+	 * @return true if the built-in engine is used for simple paths
+	 * 
+	 * @see #setSimplePathEngineEnabled(boolean)
+	 */
+	public static boolean isSimplePathEngineEnabled() {
+		return SimplePathEngine.isEnabled();
+	}
+
+	/**
+	 * Selects whether simple location paths are evaluated by the built-in
+	 * DOM-walking engine instead of the JAXP XPath engine.
+	 * 
+	 * <p>
+	 * Simple paths are made of child ({@code /}) and descendant
+	 * ({@code //}) steps with name tests, an optional final attribute step
+	 * and {@code [n]}, {@code [@attr]} or {@code [@attr='value']}
+	 * predicates. When they select nodes (not numbers, strings or booleans)
+	 * the built-in engine walks the DOM tree directly and returns the same
+	 * nodes as JAXP, without its per-call overhead. All other expressions
+	 * are always evaluated by JAXP. The built-in engine is enabled by
+	 * default; disable it to have every expression evaluated by the
+	 * configured JAXP implementation.
+	 * 
+	 * @param enabled true to use the built-in engine for simple paths
+	 */
+	public static void setSimplePathEngineEnabled(boolean enabled) {
+		SimplePathEngine.setEnabled(enabled);
+	}
+
+	/**
+	 * Returns the listener that receives the timings of the evaluations.
+	 * 
+	 * @return the current listener, or null if none is set
+	 * 
+	 * @see #setQueryListener(QueryListener)
+	 */
+	public static QueryListener getQueryListener() {
+		return Instrumentation.getListener();
+	}
+
+	/**
+	 * Sets the listener that receives the timings of the evaluations.
+	 * 
+	 * <p>
+	 * The listener is told how long each phase of every evaluation took:
+	 * the construction of the namespace context, the compilation, the
+	 * evaluation and the conversion of the result, together with the
+	 * expression in its template form and the number of nodes involved.
+	 * When no listener is set the phases are not timed at all.
+	 * 
+	 * <p>
+	 * {@link QueryMetrics} is a ready-made listener that keeps latency
+	 * histograms and exposes them over JMX.
+	 * 
+	 * @param listener the new listener, or null to stop timing the
+	 *            evaluations
+	 */
+	public static void setQueryListener(QueryListener listener) {
+		Instrumentation.setListener(listener);
+	}
+
+	/**
+	 * Returns the log of the slow evaluations.
+	 * 
+	 * @return the current slow-query log, or null if none is set
+	 * 
+	 * @see #setSlowQueryLog(SlowQueryLog)
+	 */
+	public static SlowQueryLog getSlowQueryLog() {
+		return Instrumentation.getSlowQueryLog();
+	}
+
+	/**
+	 * Sets the log that records the evaluations slower than its threshold
+	 * and profiles the time spent on each expression.
+	 * 
+	 * <p>
+	 * The log is disabled by default. While no log and no query listener
+	 * are set, evaluations are not timed.
+	 * 
+	 * @param slowQueryLog the new log, or null to stop recording slow
+	 *            evaluations
+	 */
+	public static void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+		Instrumentation.setSlowQueryLog(slowQueryLog);
 	}
 }
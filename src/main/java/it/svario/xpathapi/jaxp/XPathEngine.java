@@ -0,0 +1,122 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFactoryConfigurationException;
+
+/**
+ * The XPath implementation that compiles and evaluates the expressions.
+ *
+ * <p>
+ * An engine is chosen once, either as the default of XPathAPI with
+ * {@link XPathAPI#setEngine(XPathEngine)} or for a single query with
+ * {@link XPathQuery#compile(String, java.util.Map, XPathEngine)}, and is
+ * never looked up again. Applications with their own evaluator can
+ * implement this interface directly.
+ *
+ * <p>
+ * Simple location paths are evaluated by the built-in engine whatever the
+ * chosen engine, unless it is disabled with
+ * {@link XPathAPI#setSimplePathEngineEnabled(boolean)}.
+ *
+ * <p>
+ * The default engine is the one found by {@code XPathFactory.newInstance()}
+ * when XPathAPI is first used, unless the system property
+ * {@value #ENGINE_PROPERTY} names another one: {@code jdk} for the
+ * implementation built into the JDK, or the class name of an
+ * {@code XPathFactory}.
+ */
+public interface XPathEngine {
+	/**
+	 * The system property read at startup to choose the default engine.
+	 */
+	String ENGINE_PROPERTY = "it.svario.xpathapi.jaxp.engine";
+
+	/**
+	 * Creates a new {@code XPath} object. Each object is used by one thread
+	 * at a time, but this method may be called by many threads at once.
+	 *
+	 * @return a new {@code XPath} object
+	 */
+	XPath newXPath();
+
+	/**
+	 * Returns the engine that creates {@code XPath} objects with
+	 * {@code factory}.
+	 *
+	 * @param factory the factory used by the engine
+	 *
+	 * @return the engine backed by {@code factory}
+	 */
+	static XPathEngine of(XPathFactory factory) {
+		if (factory == null) {
+			throw new IllegalArgumentException("XPath factory cannot be null");
+		}
+
+		return new FactoryEngine(factory, factory.getClass().getName());
+	}
+
+	/**
+	 * Returns the engine built into the JDK.
+	 *
+	 * @return the JDK engine
+	 *
+	 * @throws IllegalStateException if the JDK engine is not available
+	 */
+	static XPathEngine jdk() {
+		return forFactoryClass(FactoryEngine.JDK_FACTORY_CLASS, null);
+	}
+
+	/**
+	 * Returns the engine found by {@code XPathFactory.newInstance()}, that is
+	 * the one configured with the {@code javax.xml.xpath.XPathFactory}
+	 * system property, with {@code jaxp.properties} or with the service
+	 * loader, or otherwise the one built into the JDK.
+	 *
+	 * @return the discovered engine
+	 */
+	static XPathEngine discovered() {
+		return of(XPathFactory.newInstance());
+	}
+
+	/**
+	 * Returns the engine whose {@code XPathFactory} is the class named
+	 * {@code factoryClassName}.
+	 *
+	 * @param factoryClassName the fully qualified name of an
+	 *            {@code XPathFactory} subclass
+	 * @param classLoader the class loader used to load the class, or null
+	 *            to use the context class loader
+	 *
+	 * @return the engine backed by the named factory
+	 *
+	 * @throws IllegalStateException if the factory cannot be created
+	 */
+	static XPathEngine forFactoryClass(String factoryClassName, ClassLoader classLoader) {
+		try {
+			return of(XPathFactory.newInstance(XPathFactory.DEFAULT_OBJECT_MODEL_URI, factoryClassName, classLoader));
+		} catch (XPathFactoryConfigurationException e) {
+			throw new IllegalStateException("Cannot create XPath factory " + factoryClassName, e);
+		}
+	}
+
+	/**
+	 * Returns the engine found by {@code XPathFactory.newInstance(uri)} for
+	 * the object model identified by {@code objectModelURI}.
+	 *
+	 * @param objectModelURI the URI of the object model
+	 *
+	 * @return the engine for the object model
+	 *
+	 * @throws IllegalStateException if no engine supports the object model
+	 */
+	static XPathEngine forObjectModel(String objectModelURI) {
+		try {
+			return of(XPathFactory.newInstance(objectModelURI));
+		} catch (XPathFactoryConfigurationException e) {
+			throw new IllegalStateException("No XPath factory for object model " + objectModelURI, e);
+		}
+	}
+}
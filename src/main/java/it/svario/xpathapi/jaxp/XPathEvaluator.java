@@ -0,0 +1,286 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+
+/**
+ * A reusable {@code XPath} object together with the expressions it has
+ * compiled.
+ *
+ * <p>
+ * Evaluators are not thread-safe: they are handed out by
+ * {@link EvaluatorPool} to one thread at a time.
+ */
+class XPathEvaluator {
+	private final XPathEngine engine;
+	private final XPath xpath;
+	private final ExpressionCache expressions;
+	private final Map<XPathQuery, CompiledExpression> queries;
+	private final Templates.ArgumentResolver argumentResolver;
+	private final boolean pooled;
+
+	XPathEvaluator(XPathEngine engine, boolean pooled) {
+		this.engine = engine;
+		this.xpath = engine.newXPath();
+		this.expressions = new ExpressionCache();
+		this.queries = new WeakHashMap<XPathQuery, CompiledExpression>();
+		this.argumentResolver = new Templates.ArgumentResolver();
+		this.pooled = pooled;
+
+		xpath.setXPathVariableResolver(argumentResolver);
+	}
+
+	CompiledExpression compile(String xpathString, NamespaceContext nsContext) throws XPathExpressionException {
+		return expressions.compile(xpath, xpathString, nsContext);
+	}
+
+	/**
+	 * Returns the compiled form of {@code query}, compiling it only the
+	 * first time this evaluator sees the query.
+	 *
+	 * <p>
+	 * Compiled queries are kept apart from the {@link ExpressionCache}: they
+	 * are not subject to its capacity and are dropped only when the query
+	 * itself is no longer reachable.
+	 */
+	CompiledExpression compile(XPathQuery query) throws XPathExpressionException {
+		CompiledExpression compiled = queries.get(query);
+		if (compiled == null) {
+			compiled = CompiledExpression.compile(xpath, query.getPrecompiledExpression(), query.getNamespaceContext());
+			queries.put(query, compiled);
+		}
+
+		return compiled;
+	}
+
+	private CompiledExpression compile(String template, TemplateMode templateMode, NamespaceContext nsContext, String[] args, XPathQuery query) throws XPathExpressionException {
+		if (query != null && query.isPrecompiled(args)) {
+			return compile(query);
+		}
+
+		return compile(Templates.expand(template, templateMode, args), nsContext);
+	}
+
+	/**
+	 * Expands {@code template} with {@code args}, compiles it (if needed)
+	 * and evaluates it on {@code contextNode}.
+	 *
+	 * <p>
+	 * Node selections of simple paths are evaluated by
+	 * {@link SimplePathEngine}, everything else by JAXP.
+	 */
+	Object evaluate(Node contextNode, String template, NamespaceContext nsContext, String[] args, QName returnType) throws XPathExpressionException {
+		return evaluate(contextNode, template, Templates.getMode(), nsContext, args, returnType);
+	}
+
+	Object evaluate(Node contextNode, String template, TemplateMode templateMode, NamespaceContext nsContext, String[] args, QName returnType) throws XPathExpressionException {
+		return evaluate(contextNode, template, templateMode, nsContext, args, returnType, null);
+	}
+
+	/**
+	 * Evaluates {@code query} on {@code contextNode}, using the compiled
+	 * form kept by this evaluator for the query.
+	 */
+	Object evaluate(Node contextNode, XPathQuery query, String[] args, QName returnType) throws XPathExpressionException {
+		return evaluate(contextNode, query.getExpression(), TemplateMode.VARIABLES, query.getNamespaceContext(), args, returnType, query);
+	}
+
+	private Object evaluate(Node contextNode, String template, TemplateMode templateMode, NamespaceContext nsContext, String[] args, QName returnType, XPathQuery query) throws XPathExpressionException {
+		long queryStart = Instrumentation.start();
+		CompiledExpression compiled = compile(template, templateMode, nsContext, args, query);
+		long start = Instrumentation.end(QueryPhase.COMPILATION, template, queryStart, -1);
+
+		argumentResolver.bind(args);
+		try {
+			Object result = evaluate(compiled, contextNode, returnType);
+
+			if (start != Instrumentation.NOT_TIMED) {
+				int resultSize = Instrumentation.sizeOf(result);
+				long end = Instrumentation.end(QueryPhase.EVALUATION, template, start, resultSize);
+				Instrumentation.completed(template, contextNode, queryStart, end, resultSize);
+			}
+
+			return result;
+		} finally {
+			argumentResolver.unbind();
+		}
+	}
+
+	private Object evaluate(CompiledExpression compiled, Node contextNode, QName returnType) throws XPathExpressionException {
+		boolean singleNode = returnType.equals(XPathConstants.NODE);
+		if (singleNode || returnType.equals(XPathConstants.NODESET)) {
+			List<Node> nodes = selectSimple(compiled, contextNode, singleNode ? 1 : Integer.MAX_VALUE);
+			if (nodes != null && singleNode) {
+				return nodes.isEmpty() ? null : nodes.get(0);
+			}
+			if (nodes != null) {
+				return new ListNodeList(nodes);
+			}
+		}
+
+		return compiled.getXPathExpression(xpath).evaluate(contextNode, returnType);
+	}
+
+	/**
+	 * Expands {@code template} with {@code args}, compiles it (if needed)
+	 * and returns an iterator over the nodes it selects from
+	 * {@code contextNode}.
+	 *
+	 * <p>
+	 * Simple paths are walked by {@link SimplePathEngine} as the iterator is
+	 * advanced, after this method has returned, so only their compilation is
+	 * reported; everything else is evaluated by JAXP before returning.
+	 */
+	NodeIterator iterate(Node contextNode, String template, TemplateMode templateMode, NamespaceContext nsContext, String[] args, int whatToShow, NodeFilter filter) throws XPathExpressionException {
+		return iterate(contextNode, template, templateMode, nsContext, args, whatToShow, filter, null);
+	}
+
+	NodeIterator iterate(Node contextNode, XPathQuery query, String[] args, int whatToShow, NodeFilter filter) throws XPathExpressionException {
+		return iterate(contextNode, query.getExpression(), TemplateMode.VARIABLES, query.getNamespaceContext(), args, whatToShow, filter, query);
+	}
+
+	private NodeIterator iterate(Node contextNode, String template, TemplateMode templateMode, NamespaceContext nsContext, String[] args, int whatToShow, NodeFilter filter, XPathQuery query) throws XPathExpressionException {
+		long queryStart = Instrumentation.start();
+		CompiledExpression compiled = compile(template, templateMode, nsContext, args, query);
+		long start = Instrumentation.end(QueryPhase.COMPILATION, template, queryStart, -1);
+
+		argumentResolver.bind(args);
+		try {
+			NodeIterator nodes = iterateSimple(compiled, contextNode, whatToShow, filter);
+			if (nodes != null) {
+				return nodes;
+			}
+
+			NodeList nodeList = (NodeList) compiled.getXPathExpression(xpath).evaluate(contextNode, XPathConstants.NODESET);
+
+			if (start != Instrumentation.NOT_TIMED) {
+				long end = Instrumentation.end(QueryPhase.EVALUATION, template, start, nodeList.getLength());
+				Instrumentation.completed(template, contextNode, queryStart, end, nodeList.getLength());
+			}
+
+			return new NodeListIterator(nodeList, contextNode, whatToShow, filter);
+		} finally {
+			argumentResolver.unbind();
+		}
+	}
+
+	/**
+	 * Counts the nodes selected by {@code template}, walking the tree for
+	 * simple paths and evaluating {@code count(...)} with JAXP otherwise.
+	 */
+	private Long count(Node contextNode, String template, TemplateMode templateMode, NamespaceContext nsContext, String[] args, XPathQuery query) throws XPathExpressionException {
+		long queryStart = Instrumentation.start();
+		CompiledExpression compiled = compile(template, templateMode, nsContext, args, query);
+		long start = Instrumentation.end(QueryPhase.COMPILATION, template, queryStart, -1);
+
+		argumentResolver.bind(args);
+		try {
+			List<Node> nodes = selectSimple(compiled, contextNode, Integer.MAX_VALUE);
+			long count;
+			int resultSize;
+			if (nodes != null) {
+				count = nodes.size();
+				resultSize = nodes.size();
+			} else {
+				count = ((Double) compiled.getCountExpression(xpath).evaluate(contextNode, XPathConstants.NUMBER)).longValue();
+				resultSize = -1;
+			}
+
+			if (start != Instrumentation.NOT_TIMED) {
+				long end = Instrumentation.end(QueryPhase.EVALUATION, template, start, resultSize);
+				Instrumentation.completed(template, contextNode, queryStart, end, resultSize);
+			}
+
+			return Long.valueOf(count);
+		} finally {
+			argumentResolver.unbind();
+		}
+	}
+
+	private List<Node> selectSimple(CompiledExpression compiled, Node contextNode, int limit) {
+		SimplePath boundPath = boundSimplePath(compiled);
+		if (boundPath == null) {
+			return null;
+		}
+
+		return SimplePathEngine.select(boundPath, contextNode, limit);
+	}
+
+	private NodeIterator iterateSimple(CompiledExpression compiled, Node contextNode, int whatToShow, NodeFilter filter) {
+		SimplePath boundPath = boundSimplePath(compiled);
+		if (boundPath == null) {
+			return null;
+		}
+
+		return SimplePathEngine.iterate(boundPath, contextNode, whatToShow, filter);
+	}
+
+	private SimplePath boundSimplePath(CompiledExpression compiled) {
+		SimplePath simplePath = compiled.getSimplePath();
+		if (simplePath == null) {
+			return null;
+		}
+
+		return simplePath.bind(argumentResolver);
+	}
+
+	/**
+	 * Evaluates {@code template} producing the result described by
+	 * {@code resultType}.
+	 */
+	Object evaluate(Node contextNode, String template, TemplateMode templateMode, NamespaceContext nsContext, String[] args, ResultType resultType) throws XPathExpressionException {
+		return evaluate(contextNode, template, templateMode, nsContext, args, resultType, null);
+	}
+
+	Object evaluate(Node contextNode, XPathQuery query, String[] args, ResultType resultType) throws XPathExpressionException {
+		return evaluate(contextNode, query.getExpression(), TemplateMode.VARIABLES, query.getNamespaceContext(), args, resultType, query);
+	}
+
+	private Object evaluate(Node contextNode, String template, TemplateMode templateMode, NamespaceContext nsContext, String[] args, ResultType resultType, XPathQuery query) throws XPathExpressionException {
+		switch (resultType) {
+		case SINGLE_NODE:
+			return evaluate(contextNode, template, templateMode, nsContext, args, XPathConstants.NODE, query);
+		case SINGLE_NODE_AS_STRING:
+			Node node = (Node) evaluate(contextNode, template, templateMode, nsContext, args, XPathConstants.NODE, query);
+			return XPathAPI.selectNodeAsString(node, template);
+		case NODE_LIST:
+			return evaluate(contextNode, template, templateMode, nsContext, args, XPathConstants.NODESET, query);
+		case LIST_OF_NODES:
+			NodeList nodeList = (NodeList) evaluate(contextNode, template, templateMode, nsContext, args, XPathConstants.NODESET, query);
+			return XPathAPI.nodeListAsList(nodeList, template);
+		case NODE_LIST_AS_STRINGS:
+			NodeList stringNodes = (NodeList) evaluate(contextNode, template, templateMode, nsContext, args, XPathConstants.NODESET, query);
+			return XPathAPI.nodeListAsStringList(stringNodes, template);
+		case NUMBER:
+			return evaluate(contextNode, template, templateMode, nsContext, args, XPathConstants.NUMBER, query);
+		case BOOLEAN:
+			return evaluate(contextNode, template, templateMode, nsContext, args, XPathConstants.BOOLEAN, query);
+		case STRING:
+			return evaluate(contextNode, template, templateMode, nsContext, args, XPathConstants.STRING, query);
+		case COUNT:
+			return count(contextNode, template, templateMode, nsContext, args, query);
+		default:
+			throw new IllegalArgumentException("Unknown result type: " + resultType);
+		}
+	}
+
+	XPathEngine getEngine() {
+		return engine;
+	}
+
+	boolean isPooled() {
+		return pooled;
+	}
+}
@@ -0,0 +1,333 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.xpath.XPathException;
+import org.w3c.dom.Node;
+
+/**
+ * Evaluates a query on many nodes, typically many distinct documents, using
+ * several threads.
+ *
+ * <p>
+ * The input is split into at most {@link #getParallelism()} contiguous
+ * chunks; each chunk is evaluated by one task with its own evaluator, and
+ * the results are returned in input order.
+ *
+ * <pre>
+ * XPathQuery query = XPathQuery.compile("//friend[@status='best']");
+ * List&lt;List&lt;Node&gt;&gt; bestFriends = new XPathParallel().selectListOfNodes(docs, query);
+ * </pre>
+ *
+ * <p>
+ * DOM implementations are not required to be thread-safe, not even for
+ * reading. The nodes passed to an {@code XPathParallel} should therefore
+ * belong to distinct documents, or to documents that are known to be safe
+ * for concurrent reads.
+ *
+ * <p>
+ * Configure an {@code XPathParallel} before sharing it among threads.
+ */
+public final class XPathParallel {
+	private ExecutorService executor;
+	private int parallelism;
+	private ErrorPolicy errorPolicy;
+
+	/**
+	 * Creates an {@code XPathParallel} that runs its tasks in the common
+	 * {@code ForkJoinPool} and fails on the first error.
+	 */
+	public XPathParallel() {
+		this.executor = null;
+		this.parallelism = Runtime.getRuntime().availableProcessors();
+		this.errorPolicy = ErrorPolicy.FAIL;
+	}
+
+	/**
+	 * Returns the executor used to run the evaluation tasks.
+	 *
+	 * @return the executor, or null if the common {@code ForkJoinPool} is
+	 *         used
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the executor used to run the evaluation tasks.
+	 *
+	 * @param executor the executor to use, or null to use the common
+	 *            {@code ForkJoinPool}
+	 *
+	 * @return this object
+	 */
+	public XPathParallel setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum number of tasks in which an evaluation is split.
+	 *
+	 * @return the maximum parallelism
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the maximum number of tasks in which an evaluation is split.
+	 *
+	 * <p>
+	 * The default is the number of available processors. A parallelism of
+	 * {@code 1} evaluates all the nodes in the calling thread.
+	 *
+	 * @param parallelism the maximum parallelism
+	 *
+	 * @return this object
+	 *
+	 * @throws IllegalArgumentException if {@code parallelism} is less than 1
+	 */
+	public XPathParallel setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Returns what happens when the evaluation on one of the nodes fails.
+	 *
+	 * @return the error policy
+	 */
+	public ErrorPolicy getErrorPolicy() {
+		return errorPolicy;
+	}
+
+	/**
+	 * Sets what happens when the evaluation on one of the nodes fails.
+	 *
+	 * @param errorPolicy the error policy
+	 *
+	 * @return this object
+	 */
+	public XPathParallel setErrorPolicy(ErrorPolicy errorPolicy) {
+		if (errorPolicy == null) {
+			throw new IllegalArgumentException("Error policy cannot be null");
+		}
+
+		this.errorPolicy = errorPolicy;
+		return this;
+	}
+
+	/**
+	 * Selects the first node that matches {@code query} in each of the given
+	 * nodes.
+	 *
+	 * @param nodes the nodes from which the query is evaluated
+	 * @param query the query to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the first matching node for each input node, in input order
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathQuery#selectSingleNode(Node, String...)
+	 */
+	public List<Node> selectSingleNode(Collection<? extends Node> nodes, XPathQuery query, String... args) throws XPathException {
+		return evaluate(nodes, query, ResultType.SINGLE_NODE, args);
+	}
+
+	/**
+	 * Returns the textual content of the first node that matches
+	 * {@code query} in each of the given nodes.
+	 *
+	 * @param nodes the nodes from which the query is evaluated
+	 * @param query the query to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the content of the first matching node for each input node,
+	 *         in input order
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathQuery#selectSingleNodeAsString(Node, String...)
+	 */
+	public List<String> selectSingleNodeAsString(Collection<? extends Node> nodes, XPathQuery query, String... args) throws XPathException {
+		return evaluate(nodes, query, ResultType.SINGLE_NODE_AS_STRING, args);
+	}
+
+	/**
+	 * Selects all the nodes that match {@code query} in each of the given
+	 * nodes.
+	 *
+	 * @param nodes the nodes from which the query is evaluated
+	 * @param query the query to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the matching nodes for each input node, in input order
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathQuery#selectListOfNodes(Node, String...)
+	 */
+	public List<List<Node>> selectListOfNodes(Collection<? extends Node> nodes, XPathQuery query, String... args) throws XPathException {
+		return evaluate(nodes, query, ResultType.LIST_OF_NODES, args);
+	}
+
+	/**
+	 * Returns the textual content of all the nodes that match {@code query}
+	 * in each of the given nodes.
+	 *
+	 * @param nodes the nodes from which the query is evaluated
+	 * @param query the query to evaluate
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the content of the matching nodes for each input node, in
+	 *         input order
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathQuery#selectNodeListAsStrings(Node, String...)
+	 */
+	public List<List<String>> selectNodeListAsStrings(Collection<? extends Node> nodes, XPathQuery query, String... args) throws XPathException {
+		return evaluate(nodes, query, ResultType.NODE_LIST_AS_STRINGS, args);
+	}
+
+	/**
+	 * Evaluates {@code query} on each of the given nodes.
+	 *
+	 * @param <T> the Java type that corresponds to {@code resultType}
+	 * @param nodes the nodes from which the query is evaluated
+	 * @param query the query to evaluate
+	 * @param resultType the kind of result to compute
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the result for each input node, in input order
+	 *
+	 * @throws XPathException
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> evaluate(Collection<? extends Node> nodes, XPathQuery query, ResultType resultType, String... args) throws XPathException {
+		List<Node> input = new ArrayList<Node>(nodes);
+		int size = input.size();
+		Object[] results = new Object[size];
+
+		int chunkCount = Math.min(parallelism, size);
+		if (chunkCount <= 1) {
+			new Chunk(input, 0, size, results, query, resultType, args, errorPolicy, new AtomicInteger(size)).call();
+			return (List<T>) Arrays.asList(results);
+		}
+
+		ExecutorService chunkExecutor = (executor != null) ? executor : ForkJoinPool.commonPool();
+		AtomicInteger firstFailure = new AtomicInteger(size);
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(chunkCount);
+		for (int c = 0; c < chunkCount; c++) {
+			int start = (int) ((long) c * size / chunkCount);
+			int end = (int) ((long) (c + 1) * size / chunkCount);
+			futures.add(chunkExecutor.submit(new Chunk(input, start, end, results, query, resultType, args, errorPolicy, firstFailure)));
+		}
+
+		// The chunks are awaited in input order, so the exception thrown is
+		// that of the first failing node: the chunks before it always run to
+		// completion.
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			cancel(futures);
+			Throwable cause = e.getCause();
+			if (cause instanceof XPathException) {
+				throw (XPathException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new XPathException(cause);
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new XPathException(e);
+		}
+
+		return (List<T>) Arrays.asList(results);
+	}
+
+	private static void cancel(List<Future<Void>> futures) {
+		for (Future<Void> future : futures) {
+			future.cancel(false);
+		}
+	}
+
+	private static class Chunk implements Callable<Void> {
+		private final List<Node> input;
+		private final int start;
+		private final int end;
+		private final Object[] results;
+		private final XPathQuery query;
+		private final ResultType resultType;
+		private final String[] args;
+		private final ErrorPolicy errorPolicy;
+		private final AtomicInteger firstFailure;
+
+		Chunk(List<Node> input, int start, int end, Object[] results, XPathQuery query, ResultType resultType, String[] args, ErrorPolicy errorPolicy, AtomicInteger firstFailure) {
+			this.input = input;
+			this.start = start;
+			this.end = end;
+			this.results = results;
+			this.query = query;
+			this.resultType = resultType;
+			this.args = args;
+			this.errorPolicy = errorPolicy;
+			this.firstFailure = firstFailure;
+		}
+
+		@Override
+		public Void call() throws XPathException {
+			XPathEvaluator evaluator = EvaluatorPool.acquire(query.getEngine());
+			try {
+				for (int i = start; i < end; i++) {
+					if (i > firstFailure.get()) {
+						return null;
+					}
+
+					try {
+						results[i] = query.evaluate(evaluator, input.get(i), resultType, args);
+					} catch (XPathException e) {
+						if (errorPolicy == ErrorPolicy.FAIL) {
+							firstFailure.accumulateAndGet(i, Math::min);
+							throw e;
+						}
+						results[i] = null;
+					}
+				}
+			} finally {
+				EvaluatorPool.release(evaluator);
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,654 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathException;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+
+/**
+ * A precompiled XPath expression that can be evaluated many times on
+ * different nodes.
+ *
+ * <p>
+ * The namespace prefixes used in the expression are resolved once, when the
+ * query is compiled, instead of at every evaluation as done by the static
+ * methods of {@link XPathAPI}. {@code XPathQuery} objects are immutable and
+ * thread-safe, and can be kept in static fields:
+ *
+ * <pre>
+ * private static final XPathQuery BEST_FRIENDS = XPathQuery.compile("//friend[@status='best']");
+ *
+ * List&lt;Node&gt; bestFriends = BEST_FRIENDS.selectListOfNodes(doc);
+ * </pre>
+ *
+ * <p>
+ * The "{@code {}}" place-holders written as string literals ({@code '{}'}
+ * or {@code "{}"}) are always bound as XPath variables, as in
+ * {@link TemplateMode#VARIABLES} mode, so that the query is never
+ * recompiled because of its arguments. When all its place-holders are
+ * quoted, the query is compiled, and its syntax checked, as soon as it is
+ * created.
+ *
+ * @see XPathAPI
+ */
+public final class XPathQuery {
+	private final String xpathString;
+	private final NamespaceContext nsContext;
+	private final SimplePath simplePath;
+	private final XPathEngine engine;
+	private final String precompiledExpression;
+	private final int placeholderCount;
+
+	private XPathQuery(String xpathString, NamespaceContext nsContext, XPathEngine engine) throws XPathException {
+		if (xpathString == null) {
+			throw new IllegalArgumentException("XPath expression cannot be null");
+		}
+		if (engine == null) {
+			throw new IllegalArgumentException("XPath engine cannot be null");
+		}
+
+		this.xpathString = xpathString;
+		this.nsContext = nsContext;
+		this.engine = engine;
+
+		this.precompiledExpression = Templates.expandToVariables(xpathString);
+		this.placeholderCount = Templates.placeholderCount(xpathString);
+		this.simplePath = (placeholderCount == 0) ? SimplePath.parseOrNull(xpathString, nsContext) : null;
+
+		if (precompiledExpression != null) {
+			XPathEvaluator evaluator = EvaluatorPool.acquire(engine);
+			try {
+				evaluator.compile(this);
+			} finally {
+				EvaluatorPool.release(evaluator);
+			}
+		}
+	}
+
+	/**
+	 * Compiles an XPath expression that does not use any namespace prefix.
+	 *
+	 * @param xpathString the XPath expression to compile
+	 *
+	 * @return the compiled query
+	 *
+	 * @throws XPathException if the expression is not valid
+	 */
+	public static XPathQuery compile(String xpathString) throws XPathException {
+		Map<String, String> noNamespaces = Collections.emptyMap();
+		return compile(xpathString, noNamespaces);
+	}
+
+	/**
+	 * Compiles an XPath expression whose namespace prefixes are defined in
+	 * the {@code namespaces} mapping.
+	 *
+	 * @param xpathString the XPath expression to compile
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 *
+	 * @return the compiled query
+	 *
+	 * @throws XPathException if the expression is not valid
+	 */
+	public static XPathQuery compile(String xpathString, Map<String, String> namespaces) throws XPathException {
+		return new XPathQuery(xpathString, NodeNamespaceContext.forMap(namespaces), EvaluatorPool.getDefaultEngine());
+	}
+
+	/**
+	 * Compiles an XPath expression whose namespace prefixes are defined in
+	 * the {@code namespaces} mapping, to be evaluated by {@code engine}
+	 * instead of the default engine of {@link XPathAPI}.
+	 *
+	 * @param xpathString the XPath expression to compile
+	 * @param namespaces a mapping between namespace prefixes and URIs
+	 * @param engine the engine that compiles and evaluates the query
+	 *
+	 * @return the compiled query
+	 *
+	 * @throws XPathException if the expression is not valid
+	 */
+	public static XPathQuery compile(String xpathString, Map<String, String> namespaces, XPathEngine engine) throws XPathException {
+		return new XPathQuery(xpathString, NodeNamespaceContext.forMap(namespaces), engine);
+	}
+
+	/**
+	 * Compiles an XPath expression whose namespace prefixes are those
+	 * available in {@code namespaceNode}.
+	 *
+	 * @param xpathString the XPath expression to compile
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 *
+	 * @return the compiled query
+	 *
+	 * @throws XPathException if the expression is not valid
+	 */
+	public static XPathQuery compile(String xpathString, Node namespaceNode) throws XPathException {
+		return new XPathQuery(xpathString, NodeNamespaceContext.forNode(namespaceNode), EvaluatorPool.getDefaultEngine());
+	}
+
+	/**
+	 * Compiles an XPath expression whose namespace prefixes are those
+	 * available in {@code namespaceNode}, to be evaluated by {@code engine}
+	 * instead of the default engine of {@link XPathAPI}.
+	 *
+	 * @param xpathString the XPath expression to compile
+	 * @param namespaceNode the node from which all the namespace declarations
+	 *            will be taken
+	 * @param engine the engine that compiles and evaluates the query
+	 *
+	 * @return the compiled query
+	 *
+	 * @throws XPathException if the expression is not valid
+	 */
+	public static XPathQuery compile(String xpathString, Node namespaceNode, XPathEngine engine) throws XPathException {
+		return new XPathQuery(xpathString, NodeNamespaceContext.forNode(namespaceNode), engine);
+	}
+
+	/**
+	 * Returns the XPath expression, as passed to {@code compile}.
+	 *
+	 * @return the XPath expression
+	 */
+	public String getExpression() {
+		return xpathString;
+	}
+
+	/**
+	 * Returns the engine that evaluates this query, chosen when the query
+	 * was compiled.
+	 *
+	 * @return the engine of this query
+	 */
+	public XPathEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Selects the first node that matches this query.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the first matching node or null in case the query evaluated to
+	 *         an empty node set
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectSingleNode(Node, String, String...)
+	 */
+	public Node selectSingleNode(Node contextNode, String... args) throws XPathException {
+		return (Node) evaluate(contextNode, args, XPathConstants.NODE);
+	}
+
+	/**
+	 * Returns the textual content of the first node that matches this query.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the content of the selected node or null in case the query
+	 *         evaluated to an empty node set
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectSingleNodeAsString(Node, String, String...)
+	 */
+	public String selectSingleNodeAsString(Node contextNode, String... args) throws XPathException {
+		return XPathAPI.selectNodeAsString(selectSingleNode(contextNode, args), xpathString);
+	}
+
+	/**
+	 * Selects all the nodes that match this query (returns a
+	 * {@code org.w3c.dom.NodeList} list).
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return all the nodes that match this query
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectNodeList(Node, String, String...)
+	 */
+	public NodeList selectNodeList(Node contextNode, String... args) throws XPathException {
+		return (NodeList) evaluate(contextNode, args, XPathConstants.NODESET);
+	}
+
+	/**
+	 * Selects all the nodes that match this query (returns a
+	 * {@code List<Node>} list).
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return all the nodes that match this query
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectListOfNodes(Node, String, String...)
+	 */
+	public List<Node> selectListOfNodes(Node contextNode, String... args) throws XPathException {
+		return XPathAPI.nodeListAsList(selectNodeList(contextNode, args), xpathString);
+	}
+
+	/**
+	 * Returns a list with the textual content of all the nodes that match
+	 * this query.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return a list with the textual content of the matching nodes
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectNodeListAsStrings(Node, String, String...)
+	 */
+	public List<String> selectNodeListAsStrings(Node contextNode, String... args) throws XPathException {
+		return XPathAPI.nodeListAsStringList(selectNodeList(contextNode, args), xpathString);
+	}
+
+	/**
+	 * Returns a lazy list with the textual content of all the nodes that
+	 * match this query.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return a lazy list with the textual content of the matching nodes
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectNodeListAsLazyStrings(Node, String, String...)
+	 */
+	public List<String> selectNodeListAsLazyStrings(Node contextNode, String... args) throws XPathException {
+		return XPathAPI.nodeListAsLazyStringList(selectNodeList(contextNode, args), xpathString);
+	}
+
+	/**
+	 * Appends the textual content of all the nodes that match this query to
+	 * {@code sink}, separated by {@code separator}.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param sink the destination of the textual content
+	 * @param separator the text appended between the content of two nodes,
+	 *            or null for none
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the number of nodes whose content has been appended
+	 *
+	 * @throws XPathException
+	 * @throws IOException if {@code sink} cannot be written to
+	 *
+	 * @see XPathAPI#appendNodeListAsStrings(Node, String, Appendable, CharSequence, String...)
+	 */
+	public int appendNodeListAsStrings(Node contextNode, Appendable sink, CharSequence separator, String... args) throws XPathException, IOException {
+		return XPathAPI.appendNodeList(selectNodeList(contextNode, args), xpathString, sink, separator);
+	}
+
+	/**
+	 * Passes all the nodes that match this query to {@code visitor}, in
+	 * document order, until it returns false.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param visitor the visitor of the matching nodes
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the number of visited nodes
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#forEachNode(Node, String, NodeVisitor, String...)
+	 */
+	public int forEachNode(Node contextNode, NodeVisitor visitor, String... args) throws XPathException {
+		return XPathAPI.visitNodeList(selectNodeList(contextNode, args), xpathString, visitor);
+	}
+
+	/**
+	 * Adds all the nodes that match this query to {@code nodes}, which is
+	 * not cleared first.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param nodes the collection the matching nodes are added to
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the number of matching nodes
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectListOfNodesInto(Node, String, Collection, String...)
+	 */
+	public int selectListOfNodesInto(Node contextNode, Collection<? super Node> nodes, String... args) throws XPathException {
+		return XPathAPI.addNodes(selectNodeList(contextNode, args), xpathString, nodes);
+	}
+
+	/**
+	 * Adds the textual content of all the nodes that match this query to
+	 * {@code strings}, which is not cleared first.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param strings the collection the textual content is added to
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the number of matching nodes
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectNodeListAsStringsInto(Node, String, Collection, String...)
+	 */
+	public int selectNodeListAsStringsInto(Node contextNode, Collection<? super String> strings, String... args) throws XPathException {
+		return XPathAPI.addStrings(selectNodeList(contextNode, args), xpathString, strings);
+	}
+
+	/**
+	 * Selects all the nodes that match this query and keeps the selection
+	 * up to date while the document changes.
+	 *
+	 * <p>
+	 * Simple location paths without positional predicates and without
+	 * "{@code {}}" place-holders are updated incrementally, matching again
+	 * only the changed subtrees; the other queries are evaluated again
+	 * after each change. The returned result must be closed when no longer
+	 * needed.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the live result of this query
+	 *
+	 * @throws XPathException
+	 * @throws IllegalArgumentException if the DOM implementation does not
+	 *             support mutation events
+	 *
+	 * @see LiveResult
+	 */
+	public LiveResult selectLiveResult(Node contextNode, String... args) throws XPathException {
+		SimplePath path = SimplePathEngine.isEnabled() ? simplePath : null;
+		return new LiveResult(this, path, contextNode, args);
+	}
+
+	/**
+	 * Selects all the nodes that match this query (returns a
+	 * {@code Stream<Node>}).
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return a stream of all the nodes that match this query
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectNodeStream(Node, String, String...)
+	 */
+	public Stream<Node> selectNodeStream(Node contextNode, String... args) throws XPathException {
+		return XPathAPI.nodeListAsStream(selectNodeList(contextNode, args));
+	}
+
+	/**
+	 * Returns a stream with the textual content of all the nodes that match
+	 * this query.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return a stream with the textual content of the matching nodes
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectNodeStreamAsStrings(Node, String, String...)
+	 */
+	public Stream<String> selectNodeStreamAsStrings(Node contextNode, String... args) throws XPathException {
+		return selectNodeStream(contextNode, args).map(Node::getTextContent);
+	}
+
+	/**
+	 * Returns an iterator over all the nodes that match this query.
+	 *
+	 * <p>
+	 * Queries that are simple location paths are evaluated lazily, as the
+	 * iterator is advanced.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return an iterator over all the nodes that match this query
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectNodeIterator(Node, String, String...)
+	 */
+	public NodeIterator selectNodeIterator(Node contextNode, String... args) throws XPathException {
+		return selectNodeIterator(contextNode, NodeFilter.SHOW_ALL, null, args);
+	}
+
+	/**
+	 * Returns an iterator over the nodes that match this query and that are
+	 * accepted by {@code whatToShow} and {@code filter}.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param whatToShow the types of node to return, as a combination of
+	 *            the {@code NodeFilter.SHOW_*} flags
+	 * @param filter the filter to apply to the matching nodes, or null
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return an iterator over the accepted matching nodes
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectNodeIterator(Node, String, int, NodeFilter, String...)
+	 */
+	public NodeIterator selectNodeIterator(Node contextNode, int whatToShow, NodeFilter filter, String... args) throws XPathException {
+		XPathEvaluator evaluator = EvaluatorPool.acquire(engine);
+		try {
+			return evaluator.iterate(contextNode, this, args, whatToShow, filter);
+		} finally {
+			EvaluatorPool.release(evaluator);
+		}
+	}
+
+	/**
+	 * Evaluates this query and returns its result as a number.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the numeric value of this query, {@code NaN} if it is not a
+	 *         number
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectNumber(Node, String, String...)
+	 */
+	public double selectNumber(Node contextNode, String... args) throws XPathException {
+		return ((Double) evaluate(contextNode, args, XPathConstants.NUMBER)).doubleValue();
+	}
+
+	/**
+	 * Parses the text of all the nodes that match this query as
+	 * decimal numbers.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 *
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 *
+	 * @see XPathAPI#selectDoubles(Node, String, NumberPolicy, String...)
+	 */
+	public double[] selectDoubles(Node contextNode, NumberPolicy policy, String... args) throws XPathException {
+		return XPathAPI.nodeListAsDoubles(selectNodeList(contextNode, args), xpathString, policy);
+	}
+
+	/**
+	 * Parses the text of all the nodes that match this query as
+	 * integers.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 *
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 *
+	 * @see XPathAPI#selectLongs(Node, String, NumberPolicy, String...)
+	 */
+	public long[] selectLongs(Node contextNode, NumberPolicy policy, String... args) throws XPathException {
+		return XPathAPI.nodeListAsLongs(selectNodeList(contextNode, args), xpathString, policy);
+	}
+
+	/**
+	 * Parses the text of all the nodes that match this query as
+	 * integers in the {@code int} range.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param policy what to do with the nodes whose text is not a number
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the numbers in the text of the matching nodes, in document
+	 *         order
+	 *
+	 * @throws XPathException also if the text of a node is not a number
+	 *             and {@code policy} is {@link NumberPolicy#FAIL}
+	 *
+	 * @see XPathAPI#selectInts(Node, String, NumberPolicy, String...)
+	 */
+	public int[] selectInts(Node contextNode, NumberPolicy policy, String... args) throws XPathException {
+		return XPathAPI.nodeListAsInts(selectNodeList(contextNode, args), xpathString, policy);
+	}
+
+	/**
+	 * Evaluates this query and returns its result as a boolean.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the boolean value of this query
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectBoolean(Node, String, String...)
+	 */
+	public boolean selectBoolean(Node contextNode, String... args) throws XPathException {
+		return ((Boolean) evaluate(contextNode, args, XPathConstants.BOOLEAN)).booleanValue();
+	}
+
+	/**
+	 * Evaluates this query and returns its result as a string.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the string value of this query
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectString(Node, String, String...)
+	 */
+	public String selectString(Node contextNode, String... args) throws XPathException {
+		return (String) evaluate(contextNode, args, XPathConstants.STRING);
+	}
+
+	/**
+	 * Counts the nodes that match this query.
+	 *
+	 * @param contextNode the node from which the query is evaluated
+	 * @param args an optional array of strings used to replace the
+	 *            "{@code {}}" place-holders in the query
+	 *
+	 * @return the number of nodes that match this query
+	 *
+	 * @throws XPathException
+	 *
+	 * @see XPathAPI#selectCount(Node, String, String...)
+	 */
+	public long selectCount(Node contextNode, String... args) throws XPathException {
+		XPathEvaluator evaluator = EvaluatorPool.acquire(engine);
+		try {
+			return ((Long) evaluate(evaluator, contextNode, ResultType.COUNT, args)).longValue();
+		} finally {
+			EvaluatorPool.release(evaluator);
+		}
+	}
+
+	Object evaluate(XPathEvaluator evaluator, Node contextNode, ResultType resultType, String[] args) throws XPathException {
+		return evaluator.evaluate(contextNode, this, args, resultType);
+	}
+
+	private Object evaluate(Node contextNode, String[] args, QName returnType) throws XPathException {
+		XPathEvaluator evaluator = EvaluatorPool.acquire(engine);
+		try {
+			return evaluator.evaluate(contextNode, this, args, returnType);
+		} finally {
+			EvaluatorPool.release(evaluator);
+		}
+	}
+
+	NamespaceContext getNamespaceContext() {
+		return nsContext;
+	}
+
+	/**
+	 * Returns the expression compiled once for all the evaluations of this
+	 * query: the query itself, with its place-holders, all quoted, replaced
+	 * by variables. Returns null if some place-holder is not quoted, so that
+	 * the expression depends on the arguments.
+	 */
+	String getPrecompiledExpression() {
+		return precompiledExpression;
+	}
+
+	/**
+	 * Returns true if the precompiled expression can be evaluated with
+	 * {@code args}, that is if there is an argument for every place-holder;
+	 * the place-holders left without argument are kept as they are.
+	 */
+	boolean isPrecompiled(String[] args) {
+		return precompiledExpression != null && args.length >= placeholderCount;
+	}
+
+	@Override
+	public String toString() {
+		return "XPathQuery[" + xpathString + "]";
+	}
+}
@@ -0,0 +1,92 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import it.svario.xpathapi.jaxp.ResultType;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathBatch;
+import org.testng.annotations.Test;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class BatchTest extends TestBase {
+	public BatchTest() throws Exception {
+		super();
+	}
+
+	@Test
+	public void selectsBatchAsStrings() throws Exception {
+		Map<String, String> xpaths = new LinkedHashMap<String, String>();
+		xpaths.put("first", "//b");
+		xpaths.put("second", "//b[2]");
+		xpaths.put("missing", "//d");
+
+		Map<String, String> results = XPathAPI.selectBatchAsStrings(doc, xpaths);
+
+		assertEquals(results.get("first"), "aabb11");
+		assertEquals(results.get("second"), "aabb33");
+		assertTrue(results.containsKey("missing"));
+		assertNull(results.get("missing"));
+	}
+
+	@Test
+	public void selectsBatchAsStringsWithNSMap() throws Exception {
+		Map<String, String> ns = new HashMap<String, String>();
+		ns.put("k", "def");
+		Map<String, String> xpaths = new LinkedHashMap<String, String>();
+		xpaths.put("kb", "//k:b");
+
+		Map<String, String> results = XPathAPI.selectBatchAsStrings(doc, xpaths, ns);
+
+		assertEquals(results.get("kb"), "kkaakkbb11");
+	}
+
+	@Test
+	public void selectsBatchAsStringsThroughResultCache() throws Exception {
+		Map<String, String> xpaths = new LinkedHashMap<String, String>();
+		xpaths.put("first", "//b");
+		xpaths.put("c", "//c/b");
+
+		XPathAPI.setResultCacheCapacity(16);
+		try {
+			long hits = XPathAPI.getResultCacheStatistics().getHitCount();
+
+			Map<String, String> first = XPathAPI.selectBatchAsStrings(doc, xpaths);
+			Map<String, String> second = XPathAPI.selectBatchAsStrings(doc, xpaths);
+
+			assertEquals(second, first);
+			assertEquals(first.get("c"), "ccbb");
+			assertEquals(XPathAPI.getResultCacheStatistics().getHitCount() - hits, 2);
+		} finally {
+			XPathAPI.setResultCacheCapacity(0);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void evaluatesTypedBatch() throws Exception {
+		Node aNode = doc.getFirstChild().getFirstChild();
+		XPathBatch batch = new XPathBatch(aNode);
+		batch.add("kb", "//k:b");
+		batch.add("node", "//c", ResultType.SINGLE_NODE);
+		batch.add("strings", "//b", ResultType.NODE_LIST_AS_STRINGS);
+		batch.add("count", "//b", ResultType.COUNT);
+		batch.add("any", "//c", ResultType.BOOLEAN);
+		batch.add("sum", "count(//b) + 1", ResultType.NUMBER);
+
+		Map<String, Object> results = batch.evaluate(doc);
+
+		assertEquals(results.keySet().toArray(), new String[] { "kb", "node", "strings", "count", "any", "sum" });
+		assertEquals(results.get("kb"), "aabb22");
+		assertEquals(((Node) results.get("node")).getNodeName(), "c");
+		assertEquals(((List<String>) results.get("strings")).size(), 4);
+		assertEquals(results.get("count"), Long.valueOf(4));
+		assertEquals(results.get("any"), Boolean.TRUE);
+		assertEquals(results.get("sum"), Double.valueOf(5));
+	}
+}
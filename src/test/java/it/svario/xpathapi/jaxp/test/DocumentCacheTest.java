@@ -0,0 +1,117 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import javax.xml.xpath.XPathException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class DocumentCacheTest extends TestBase {
+	private Path dir;
+
+	public DocumentCacheTest() throws Exception {
+		super();
+	}
+
+	@BeforeMethod
+	public void createDirectory() throws Exception {
+		dir = Files.createTempDirectory("xpathapi");
+		XPathAPI.clearDocumentCache();
+	}
+
+	@AfterMethod
+	public void deleteDirectory() throws Exception {
+		XPathAPI.setDocumentCacheCapacity(16L * 1024 * 1024);
+		XPathAPI.clearDocumentCache();
+
+		for (Path file : Files.newDirectoryStream(dir)) {
+			Files.delete(file);
+		}
+		Files.delete(dir);
+	}
+
+	private Path write(String name, String content) throws Exception {
+		return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void queriesLoadedDocuments() throws Exception {
+		Path file = write("a.xml", "<root xmlns:k='abc'><k:a>1</k:a><b>2</b><b>3</b></root>");
+
+		assertEquals(XPathAPI.selectNodeListAsStrings(XPathAPI.loadDocument(file), "/root/b"), Arrays.asList("2", "3"));
+		assertEquals(XPathAPI.selectSingleNodeAsString(XPathAPI.loadDocument(file), "//x:a", Collections.singletonMap("x", "abc")), "1");
+		assertEquals(XPathAPI.selectNumber(XPathAPI.loadDocument(file), "sum(//b)"), 5.0);
+		assertEquals(XPathAPI.selectCount(XPathAPI.loadDocument(file), "//*"), 4);
+		assertTrue(XPathAPI.selectBoolean(XPathAPI.loadDocument(file), "/root/b[.='{}']", "3"));
+	}
+
+	@Test
+	public void doesNotReparseUnchangedFiles() throws Exception {
+		Path file = write("a.xml", "<root/>");
+
+		Document document = XPathAPI.loadDocument(file);
+		assertSame(XPathAPI.loadDocument(file), document);
+		assertSame(XPathAPI.loadDocument(dir.resolve(".").resolve("a.xml")), document);
+		assertSame(XPathAPI.selectSingleNode(XPathAPI.loadDocument(file), "/root").getOwnerDocument(), document);
+		assertEquals(XPathAPI.getDocumentCacheSize(), Files.size(file));
+	}
+
+	@Test
+	public void reparsesChangedFiles() throws Exception {
+		Path file = write("a.xml", "<root><b>1</b></root>");
+		FileTime lastModified = Files.getLastModifiedTime(file);
+		assertEquals(XPathAPI.selectString(XPathAPI.loadDocument(file), "/root/b"), "1");
+
+		write("a.xml", "<root><b>2</b></root>");
+		Files.setLastModifiedTime(file, lastModified);
+		assertEquals(XPathAPI.selectString(XPathAPI.loadDocument(file), "/root/b"), "1", "same size and time");
+
+		Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 2000));
+		assertEquals(XPathAPI.selectString(XPathAPI.loadDocument(file), "/root/b"), "2");
+
+		write("a.xml", "<root><b>33</b></root>");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 2000));
+		assertEquals(XPathAPI.selectString(XPathAPI.loadDocument(file), "/root/b"), "33");
+	}
+
+	@Test
+	public void staysWithinCapacity() throws Exception {
+		XPathAPI.setDocumentCacheCapacity(100);
+
+		Path[] files = new Path[20];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = write(i + ".xml", "<root>" + i + "</root>");
+			XPathAPI.loadDocument(files[i]);
+			assertTrue(XPathAPI.getDocumentCacheSize() <= 100);
+		}
+
+		Document last = XPathAPI.loadDocument(files[19]);
+		assertSame(XPathAPI.loadDocument(files[19]), last);
+		assertNotSame(XPathAPI.loadDocument(files[0]), XPathAPI.loadDocument(files[1]));
+
+		XPathAPI.setDocumentCacheCapacity(0);
+		assertEquals(XPathAPI.getDocumentCacheSize(), 0);
+		assertNotSame(XPathAPI.loadDocument(files[19]), XPathAPI.loadDocument(files[19]));
+	}
+
+	@Test(expectedExceptions = XPathException.class)
+	public void failsOnMissingFiles() throws Exception {
+		XPathAPI.loadDocument(dir.resolve("missing.xml"));
+	}
+
+	@Test(expectedExceptions = XPathException.class)
+	public void failsOnMalformedFiles() throws Exception {
+		XPathAPI.loadDocument(write("bad.xml", "<root>"));
+	}
+}
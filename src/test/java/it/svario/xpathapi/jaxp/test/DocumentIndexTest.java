@@ -0,0 +1,114 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import it.svario.xpathapi.jaxp.TemplateMode;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class DocumentIndexTest extends TestBase {
+	private final Map<String, String> namespaces;
+
+	public DocumentIndexTest() throws Exception {
+		super();
+
+		namespaces = new HashMap<String, String>();
+		namespaces.put("k", "abc");
+		namespaces.put("x", "def");
+	}
+
+	@AfterMethod
+	public void restoreDefaults() {
+		XPathAPI.setTemplateMode(TemplateMode.SUBSTITUTION);
+	}
+
+	private Document people() throws Exception {
+		return documentFromString("<people xmlns:k='abc'>" +
+		                          "<person id='p1' k:id='a'><name>Ann</name><person id='p2'><name>Bob</name></person></person>" +
+		                          "<group><person id='p3' k:id='b'><name>Cid</name><name>Cy</name></person></group>" +
+		                          "<person id='p1'><name>Dup</name></person>" +
+		                          "</people>");
+	}
+
+	private List<Node> unindexed(Document document, String xpath) throws Exception {
+		XPathAPI.setSimplePathEngineEnabled(false);
+		try {
+			return XPathAPI.selectListOfNodes(document, xpath, namespaces);
+		} finally {
+			XPathAPI.setSimplePathEngineEnabled(true);
+		}
+	}
+
+	@Test
+	public void givesSameResultsAsScanning() throws Exception {
+		Document people = people();
+		XPathAPI.indexDocument(people, "id", "{abc}id");
+		assertTrue(XPathAPI.isDocumentIndexed(people));
+
+		List<String> xpaths = Arrays.asList("//person", "//name", "//person[@id='p1']", "//person[@id='p3']/name",
+		                                    "//person[@id='p1']/name[1]", "//person[@k:id='b']/@id", "//person/@*", "//person/name",
+		                                    "//person[@id]", "//person[@id='none']", "//group/person/name[2]");
+
+		for (String xpath : xpaths) {
+			assertEquals(XPathAPI.selectListOfNodes(people, xpath, namespaces), unindexed(people, xpath), xpath);
+		}
+
+		assertEquals(XPathAPI.selectNodeListAsStrings(doc, "//x:b", namespaces), Arrays.asList("kkaakkbb11", ""));
+	}
+
+	@Test
+	public void looksUpTemplateArguments() throws Exception {
+		Document people = people();
+		XPathAPI.indexDocument(people, "id");
+
+		assertEquals(XPathAPI.selectSingleNodeAsString(people, "//person[@id='{}']/name", "p3"), "Cid");
+
+		XPathAPI.setTemplateMode(TemplateMode.VARIABLES);
+		assertEquals(XPathAPI.selectNodeListAsStrings(people, "//person[@id='{}']/name", "p1"), Arrays.asList("Ann", "Dup"));
+	}
+
+	@Test
+	public void isDiscardedWhenDocumentChanges() throws Exception {
+		Document people = people();
+		XPathAPI.indexDocument(people, "id");
+
+		Element person = people.createElement("person");
+		person.setAttribute("id", "p4");
+		people.getDocumentElement().appendChild(person);
+
+		assertFalse(XPathAPI.isDocumentIndexed(people));
+		assertSame(XPathAPI.selectSingleNode(people, "//person[@id='p4']"), person);
+	}
+
+	@Test
+	public void isDiscardedWhenAttributeChanges() throws Exception {
+		Document people = people();
+		XPathAPI.indexDocument(people, "id");
+
+		Element bob = (Element) XPathAPI.selectSingleNode(people, "//person[@id='p2']");
+		bob.setAttribute("id", "p5");
+
+		assertFalse(XPathAPI.isDocumentIndexed(people));
+		assertSame(XPathAPI.selectSingleNode(people, "//person[@id='p5']"), bob);
+	}
+
+	@Test
+	public void canBeRemoved() throws Exception {
+		Document people = people();
+		XPathAPI.indexDocument(people);
+		XPathAPI.removeDocumentIndex(people);
+
+		assertFalse(XPathAPI.isDocumentIndexed(people));
+		assertEquals(XPathAPI.selectCount(people, "//person"), 4);
+	}
+}
@@ -0,0 +1,70 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import it.svario.xpathapi.jaxp.EvaluatorMode;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class EvaluatorModeTest extends TestBase {
+	public EvaluatorModeTest() throws Exception {
+		super();
+	}
+
+	@AfterMethod
+	public void restoreMode() {
+		XPathAPI.setEvaluatorMode(EvaluatorMode.THREAD_LOCAL);
+	}
+
+	@Test
+	public void selectsNodesInPooledMode() throws Exception {
+		XPathAPI.setEvaluatorMode(EvaluatorMode.POOLED);
+
+		Node node = XPathAPI.selectSingleNode(doc, "//b[2]");
+
+		assertEquals(XPathAPI.getEvaluatorMode(), EvaluatorMode.POOLED);
+		assertEquals(node.getTextContent(), "aabb33");
+	}
+
+	@Test
+	public void sharesPoolAmongThreads() throws Exception {
+		XPathAPI.setEvaluatorMode(EvaluatorMode.POOLED);
+		XPathAPI.setEvaluatorPoolSize(2);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 200; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						Document threadDoc = documentFromString("<a><c><b>ccbb</b></c></a>");
+						return XPathAPI.selectSingleNodeAsString(threadDoc, "//c/b");
+					}
+				}));
+			}
+
+			for (Future<String> result : results) {
+				assertEquals(result.get(), "ccbb");
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsNullMode() {
+		XPathAPI.setEvaluatorMode(null);
+	}
+}
@@ -0,0 +1,103 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import it.svario.xpathapi.jaxp.CacheStatistics;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class ExpressionCacheTest extends TestBase {
+	public ExpressionCacheTest() throws Exception {
+		super();
+	}
+
+	@AfterMethod
+	public void restoreCapacity() {
+		XPathAPI.setExpressionCacheCapacity(256);
+	}
+
+	@Test
+	public void reusesCompiledExpressions() throws Exception {
+		XPathAPI.clearExpressionCache();
+		CacheStatistics before = XPathAPI.getExpressionCacheStatistics();
+
+		XPathAPI.selectSingleNode(doc, "//c/b");
+		XPathAPI.selectSingleNode(doc, "//c/b");
+		XPathAPI.selectListOfNodes(doc, "//c/b");
+
+		CacheStatistics after = XPathAPI.getExpressionCacheStatistics();
+
+		assertEquals(after.getMissCount() - before.getMissCount(), 1);
+		assertEquals(after.getHitCount() - before.getHitCount(), 2);
+	}
+
+	@Test
+	public void distinguishesNamespaceBindings() throws Exception {
+		Map<String, String> abc = new HashMap<String, String>();
+		abc.put("k", "abc");
+		Map<String, String> def = new HashMap<String, String>();
+		def.put("k", "def");
+
+		Node abcNode = XPathAPI.selectSingleNode(doc, "//k:b", abc);
+		Node defNode = XPathAPI.selectSingleNode(doc, "//k:b", def);
+
+		assertEquals(abcNode.getTextContent(), "aabb22");
+		assertEquals(defNode.getTextContent(), "kkaakkbb11");
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() throws Exception {
+		XPathAPI.setExpressionCacheCapacity(1);
+		CacheStatistics before = XPathAPI.getExpressionCacheStatistics();
+
+		XPathAPI.selectSingleNode(doc, "//b");
+		XPathAPI.selectSingleNode(doc, "//c");
+		XPathAPI.selectSingleNode(doc, "//b");
+
+		CacheStatistics after = XPathAPI.getExpressionCacheStatistics();
+
+		assertEquals(after.getCapacity(), 1);
+		assertEquals(after.getMissCount() - before.getMissCount(), 3);
+		assertEquals(after.getEvictionCount() - before.getEvictionCount(), 2);
+	}
+
+	@Test
+	public void worksWhenDisabled() throws Exception {
+		XPathAPI.setExpressionCacheCapacity(0);
+
+		Node node = XPathAPI.selectSingleNode(doc, "//b");
+
+		assertEquals(node.getTextContent(), "aabb11");
+	}
+
+	@Test
+	public void keepsQueriesOutOfTheCache() throws Exception {
+		XPathQuery query = XPathQuery.compile("//c/b");
+		XPathQuery count = XPathQuery.compile("count(//b) + 1");
+		double expectedCount = XPathAPI.selectNumber(doc, "count(//b) + 1");
+		XPathAPI.setExpressionCacheCapacity(0);
+		CacheStatistics before = XPathAPI.getExpressionCacheStatistics();
+
+		assertEquals(query.selectListOfNodes(doc).size(), 1);
+		assertEquals(query.selectCount(doc), 1);
+		assertNotNull(query.selectNodeIterator(doc).nextNode());
+		assertEquals(count.selectNumber(doc), expectedCount);
+		assertEquals(count.selectNumber(doc), expectedCount);
+
+		CacheStatistics after = XPathAPI.getExpressionCacheStatistics();
+
+		assertEquals(after.getRequestCount(), before.getRequestCount());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsNegativeCapacity() {
+		XPathAPI.setExpressionCacheCapacity(-1);
+	}
+}
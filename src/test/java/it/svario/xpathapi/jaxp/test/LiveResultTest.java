@@ -0,0 +1,173 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import it.svario.xpathapi.jaxp.LiveResult;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class LiveResultTest extends TestBase {
+	public LiveResultTest() throws Exception {
+		super();
+	}
+
+	private Document items() throws Exception {
+		return documentFromString("<list>" +
+		                          "<item id='1' selected='yes'/>" +
+		                          "<group><item id='2'/><item id='3' selected='yes'><item id='4' selected='yes'/></item></group>" +
+		                          "<item id='5'/>" +
+		                          "</list>");
+	}
+
+	private static List<String> ids(List<Node> nodes) {
+		List<String> ids = new ArrayList<String>();
+		for (Node node : nodes) {
+			ids.add(node.getNodeType() == Node.ATTRIBUTE_NODE ? node.getNodeValue() : ((Element) node).getAttribute("id"));
+		}
+
+		return ids;
+	}
+
+	private static void assertSameAsQuery(LiveResult live, Document doc) throws Exception {
+		assertEquals(live.getNodes(), XPathAPI.selectListOfNodes(doc, live.getQuery().getExpression()));
+	}
+
+	@Test
+	public void followsInsertionsAndRemovals() throws Exception {
+		Document doc = items();
+		AtomicInteger changes = new AtomicInteger();
+
+		try (LiveResult live = XPathQuery.compile("//item[@selected]").selectLiveResult(doc)) {
+			live.addListener(result -> changes.incrementAndGet());
+			assertTrue(live.isIncremental());
+			assertEquals(ids(live.getNodes()), Arrays.asList("1", "3", "4"));
+
+			Element group = (Element) XPathAPI.selectSingleNode(doc, "//group");
+			Element added = doc.createElement("item");
+			added.setAttribute("id", "6");
+			added.setAttribute("selected", "yes");
+			group.insertBefore(added, group.getFirstChild());
+			assertEquals(ids(live.getNodes()), Arrays.asList("1", "6", "3", "4"));
+
+			group.removeChild(XPathAPI.selectSingleNode(doc, "//item[@id='3']"));
+			assertEquals(ids(live.getNodes()), Arrays.asList("1", "6"));
+
+			doc.getDocumentElement().appendChild(doc.createElement("item"));
+			assertSameAsQuery(live, doc);
+			assertEquals(changes.get(), 2);
+		}
+	}
+
+	@Test
+	public void rematchesOnlyTestedAttributes() throws Exception {
+		Document doc = items();
+		AtomicInteger changes = new AtomicInteger();
+
+		try (LiveResult live = XPathQuery.compile("/list//item[@selected='yes']/item").selectLiveResult(doc)) {
+			live.addListener(result -> changes.incrementAndGet());
+			assertEquals(ids(live.getNodes()), Collections.singletonList("4"));
+
+			Element item3 = (Element) XPathAPI.selectSingleNode(doc, "//item[@id='3']");
+			item3.setAttribute("title", "ignored");
+			assertEquals(changes.get(), 0);
+
+			item3.setAttribute("selected", "no");
+			assertTrue(live.getNodes().isEmpty());
+			item3.setAttribute("selected", "yes");
+			assertEquals(ids(live.getNodes()), Collections.singletonList("4"));
+			assertEquals(changes.get(), 2);
+		}
+	}
+
+	@Test
+	public void followsSelectedAttributes() throws Exception {
+		Document doc = items();
+
+		try (LiveResult live = XPathQuery.compile("//item/@selected").selectLiveResult(doc)) {
+			Element item5 = (Element) XPathAPI.selectSingleNode(doc, "//item[@id='5']");
+			item5.setAttribute("selected", "later");
+			assertSameAsQuery(live, doc);
+
+			((Element) XPathAPI.selectSingleNode(doc, "//item[@id='1']")).removeAttribute("selected");
+			assertSameAsQuery(live, doc);
+			assertEquals(ids(live.getNodes()), Arrays.asList("yes", "yes", "later"));
+		}
+	}
+
+	@Test
+	public void followsRelativePathsUnderTheContextNode() throws Exception {
+		Document doc = items();
+		Node group = XPathAPI.selectSingleNode(doc, "//group");
+
+		try (LiveResult live = XPathQuery.compile("item").selectLiveResult(group)) {
+			assertEquals(ids(live.getNodes()), Arrays.asList("2", "3"));
+
+			doc.getDocumentElement().appendChild(doc.createElement("item"));
+			group.appendChild(doc.createElement("item"));
+			assertEquals(live.getNodes().size(), 3);
+		}
+	}
+
+	@Test
+	public void followsAttributesOfTheContextElement() throws Exception {
+		Document doc = items();
+		Element item2 = (Element) XPathAPI.selectSingleNode(doc, "//item[@id='2']");
+		AtomicInteger changes = new AtomicInteger();
+
+		try (LiveResult live = XPathQuery.compile("@*").selectLiveResult(item2); LiveResult selected = XPathQuery.compile("@selected").selectLiveResult(item2)) {
+			selected.addListener(result -> changes.incrementAndGet());
+			assertTrue(live.isIncremental());
+			assertEquals(ids(live.getNodes()), Arrays.asList("2"));
+			assertTrue(selected.getNodes().isEmpty());
+
+			item2.setAttribute("selected", "yes");
+			assertEquals(live.getNodes(), XPathAPI.selectListOfNodes(item2, "@*"));
+			assertEquals(ids(selected.getNodes()), Arrays.asList("yes"));
+
+			item2.setAttribute("title", "ignored");
+			item2.removeAttribute("selected");
+			assertEquals(live.getNodes().size(), 2);
+			assertTrue(selected.getNodes().isEmpty());
+			assertEquals(changes.get(), 2);
+		}
+	}
+
+	@Test
+	public void reevaluatesOtherQueries() throws Exception {
+		Document doc = items();
+		AtomicInteger changes = new AtomicInteger();
+
+		try (LiveResult live = XPathQuery.compile("//item[last()]").selectLiveResult(doc)) {
+			live.addListener(result -> changes.incrementAndGet());
+			assertFalse(live.isIncremental());
+			assertEquals(ids(live.getNodes()), Arrays.asList("3", "4", "5"));
+
+			Node item1 = XPathAPI.selectSingleNode(doc, "//item[@id='1']");
+			doc.getDocumentElement().appendChild(item1);
+			assertEquals(ids(live.getNodes()), Arrays.asList("3", "4", "1"));
+			assertTrue(changes.get() > 0);
+		}
+	}
+
+	@Test
+	public void stopsFollowingWhenClosed() throws Exception {
+		Document doc = items();
+
+		LiveResult live = XPathQuery.compile("//item").selectLiveResult(doc);
+		live.close();
+		doc.getDocumentElement().appendChild(doc.createElement("item"));
+
+		assertEquals(live.getNodes().size(), 5);
+	}
+}
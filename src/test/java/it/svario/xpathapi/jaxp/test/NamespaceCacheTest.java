@@ -0,0 +1,84 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.xpath.XPathException;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class NamespaceCacheTest extends TestBase {
+	public NamespaceCacheTest() throws Exception {
+		super();
+	}
+
+	@Test
+	public void followsChangesToTheCallerMap() throws Exception {
+		Map<String, String> ns = new HashMap<String, String>();
+		ns.put("k", "abc");
+
+		Node first = XPathAPI.selectSingleNode(doc, "//k:b", ns);
+		ns.put("k", "def");
+		Node second = XPathAPI.selectSingleNode(doc, "//k:b", ns);
+
+		assertEquals(first.getTextContent(), "aabb22");
+		assertEquals(second.getTextContent(), "kkaakkbb11");
+	}
+
+	@Test
+	public void reusesNamespacesOfTheSameNode() throws Exception {
+		Node aNode = doc.getFirstChild().getFirstChild();
+
+		Node first = XPathAPI.selectSingleNode(doc, "//k:b", aNode);
+		Node second = XPathAPI.selectSingleNode(doc, "//k:b", aNode);
+
+		assertSame(first, second);
+	}
+
+	@Test
+	public void seesNewDeclarationsByDefault() throws Exception {
+		Document copy = (Document) doc.cloneNode(true);
+		Element cNode = (Element) XPathAPI.selectSingleNode(copy, "//c");
+		assertNotNull(XPathAPI.selectSingleNode(copy, "//c/b", cNode));
+
+		cNode.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:k", "def");
+
+		Node node = XPathAPI.selectSingleNode(copy, "//k:b", cNode);
+
+		assertNotNull(node);
+		assertEquals(node.getTextContent(), "kkaakkbb11");
+	}
+
+	@Test
+	public void seesNewDeclarationsAfterClearing() throws Exception {
+		Document copy = (Document) doc.cloneNode(true);
+		Element cNode = (Element) XPathAPI.selectSingleNode(copy, "//c");
+
+		XPathAPI.setNamespaceCacheEnabled(true);
+		try {
+			assertNotNull(XPathAPI.selectSingleNode(copy, "//c/b", cNode));
+
+			cNode.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:k", "def");
+			try {
+				XPathAPI.selectSingleNode(copy, "//k:b", cNode);
+				fail("The memoised namespaces of the node should not include k");
+			} catch (XPathException e) {
+				// expected
+			}
+			XPathAPI.clearNamespaceCache();
+
+			Node node = XPathAPI.selectSingleNode(copy, "//k:b", cNode);
+
+			assertNotNull(node);
+			assertEquals(node.getTextContent(), "kkaakkbb11");
+		} finally {
+			XPathAPI.setNamespaceCacheEnabled(false);
+		}
+	}
+}
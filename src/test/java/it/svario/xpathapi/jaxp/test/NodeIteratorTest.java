@@ -3,11 +3,14 @@
 package it.svario.xpathapi.jaxp.test;
 
 import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.testng.annotations.Test;
 import org.w3c.dom.*;
+import org.w3c.dom.traversal.NodeFilter;
 import org.w3c.dom.traversal.NodeIterator;
 import static org.testng.Assert.*;
 
@@ -42,4 +45,106 @@ public class NodeIteratorTest extends TestBase {
 		Collections.reverse(foundTexts);
 		assertEquals(foundTexts.toArray(new String[0]), expectedTexts);
 	}
+
+	private static List<Node> drain(NodeIterator it) {
+		List<Node> nodes = new ArrayList<Node>();
+
+		Node node;
+		while ((node = it.nextNode()) != null) {
+			nodes.add(node);
+		}
+
+		return nodes;
+	}
+
+	@Test
+	public void lazyIteratorAgreesWithNodeList() throws Exception {
+		Document nested = documentFromString("<r><a id='1'><b/><a id='2'><b/><b x='y'/></a></a><c><a id='3'><b/></a></c></r>");
+		List<String> xpaths = Arrays.asList("//b", "//a//b", "//a/b[2]", "/r/a", "//a[@id='2']/b[@x]", "//a/@id", "//@x", "r/*", "/*/*[2]//b");
+
+		for (String xpath : xpaths) {
+			List<Node> expected = XPathAPI.selectListOfNodes(nested, xpath);
+			assertEquals(drain(XPathAPI.selectNodeIterator(nested, xpath)), expected, xpath);
+			assertEquals(drain(XPathQuery.compile(xpath).selectNodeIterator(nested)), expected, xpath);
+		}
+	}
+
+	@Test
+	public void lazyIteratorStopsAtRequestedNode() throws Exception {
+		Document doc = documentFromString("<r><b>1</b><b>2</b><b>3</b></r>");
+		NodeIterator it = XPathAPI.selectNodeIterator(doc, "/r/b");
+
+		assertEquals(it.nextNode().getTextContent(), "1");
+
+		// Later siblings are reached only when requested.
+		doc.getDocumentElement().removeChild(doc.getDocumentElement().getLastChild());
+		assertEquals(it.nextNode().getTextContent(), "2");
+		assertNull(it.nextNode());
+	}
+
+	@Test
+	public void iteratorAgreesWithNodeListFromElementsAndDetachedTrees() throws Exception {
+		Document nested = documentFromString("<r><a id='1' x='y'><b/></a></r>");
+		Element detached = nested.createElement("r");
+		detached.appendChild(nested.createElement("b"));
+		nested.createDocumentFragment().appendChild(detached);
+		List<String> xpaths = Arrays.asList("@id", "@*", "b", "/r", "/r/b", "//b");
+
+		for (Node contextNode : Arrays.asList(nested.getDocumentElement().getFirstChild(), detached)) {
+			for (String xpath : xpaths) {
+				List<Node> expected = XPathAPI.selectListOfNodes(contextNode, xpath);
+				assertEquals(drain(XPathAPI.selectNodeIterator(contextNode, xpath)), expected, xpath);
+				assertEquals(drain(XPathQuery.compile(xpath).selectNodeIterator(contextNode)), expected, xpath);
+			}
+		}
+	}
+
+	@Test
+	public void queryIteratorIsNotLazyWithDisabledEngine() throws Exception {
+		Document doc = documentFromString("<r><b>1</b><b>2</b></r>");
+		XPathQuery query = XPathQuery.compile("/r/b");
+
+		XPathAPI.setSimplePathEngineEnabled(false);
+		try {
+			NodeIterator it = query.selectNodeIterator(doc);
+			doc.getDocumentElement().removeChild(doc.getDocumentElement().getLastChild());
+
+			assertEquals(it.nextNode().getTextContent(), "1");
+			assertEquals(it.nextNode().getTextContent(), "2");
+		} finally {
+			XPathAPI.setSimplePathEngineEnabled(true);
+		}
+	}
+
+	@Test
+	public void reportsRootFilterAndWhatToShow() throws Exception {
+		NodeFilter filter = new NodeFilter() {
+			@Override
+			public short acceptNode(Node node) {
+				return node.getTextContent().startsWith("aa") ? FILTER_ACCEPT : FILTER_SKIP;
+			}
+		};
+
+		Node c = XPathAPI.selectSingleNode(doc, "//c");
+
+		NodeIterator lazy = XPathAPI.selectNodeIterator(c, "//b", NodeFilter.SHOW_ELEMENT, filter);
+		assertSame(lazy.getRoot(), doc);
+		assertSame(lazy.getFilter(), filter);
+		assertEquals(lazy.getWhatToShow(), NodeFilter.SHOW_ELEMENT);
+		assertEquals(drain(lazy).size(), 2);
+
+		NodeIterator full = XPathAPI.selectNodeIterator(c, "//b | //c", NodeFilter.SHOW_ELEMENT, filter);
+		assertSame(full.getRoot(), c);
+		assertEquals(drain(full).size(), 2);
+
+		NodeIterator attributesOnly = XPathAPI.selectNodeIterator(doc, "//b", NodeFilter.SHOW_ATTRIBUTE, null);
+		assertNull(attributesOnly.nextNode());
+	}
+
+	@Test(expectedExceptions = DOMException.class)
+	public void failsAfterDetach() throws Exception {
+		NodeIterator it = XPathAPI.selectNodeIterator(doc, "//b");
+		it.detach();
+		it.nextNode();
+	}
 }
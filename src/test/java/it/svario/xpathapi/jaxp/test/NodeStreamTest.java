@@ -0,0 +1,78 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class NodeStreamTest extends TestBase {
+	public NodeStreamTest() throws Exception {
+		super();
+	}
+
+	@Test
+	public void streamsNodesInDocumentOrder() throws Exception {
+		List<Node> nodes = XPathAPI.selectNodeStream(doc, "//b").collect(Collectors.toList());
+
+		assertEquals(nodes, XPathAPI.selectListOfNodes(doc, "//b"));
+	}
+
+	@Test
+	public void streamsStrings() throws Exception {
+		Map<String, String> namespaces = new HashMap<String, String>();
+		namespaces.put("x", "def");
+
+		List<String> texts = XPathAPI.selectNodeStreamAsStrings(doc, "//x:b", namespaces).collect(Collectors.toList());
+
+		assertEquals(texts, Arrays.asList("kkaakkbb11", ""));
+	}
+
+	@Test
+	public void reportsSizeAndOrder() throws Exception {
+		Spliterator<Node> spliterator = XPathAPI.selectNodeStream(doc, "//b").spliterator();
+
+		assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+		assertEquals(spliterator.estimateSize(), 4);
+
+		Spliterator<Node> prefix = spliterator.trySplit();
+		assertEquals(prefix.estimateSize(), 2);
+		assertEquals(spliterator.estimateSize(), 2);
+	}
+
+	@Test
+	public void parallelStreamsKeepEncounterOrder() throws Exception {
+		StringBuilder docStr = new StringBuilder("<r>");
+		for (int i = 0; i < 1000; i++) {
+			docStr.append("<n>").append(i).append("</n>");
+		}
+		docStr.append("</r>");
+		Document big = documentFromString(docStr.toString());
+
+		XPathQuery query = XPathQuery.compile("/r/n");
+		List<Integer> values = query.selectNodeStreamAsStrings(big).parallel().map(Integer::valueOf).collect(Collectors.toList());
+
+		assertEquals(values.size(), 1000);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(values.get(i).intValue(), i);
+		}
+	}
+
+	@Test
+	public void emptyResultGivesEmptyStream() throws Exception {
+		Stream<Node> nodes = XPathAPI.selectNodeStream(doc, "//nothing");
+
+		assertEquals(nodes.count(), 0);
+	}
+}
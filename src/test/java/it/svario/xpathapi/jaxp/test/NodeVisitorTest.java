@@ -0,0 +1,72 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import org.testng.annotations.Test;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class NodeVisitorTest extends TestBase {
+	public NodeVisitorTest() throws Exception {
+		super();
+	}
+
+	@Test
+	public void visitsAllNodesInDocumentOrder() throws Exception {
+		List<Node> visited = new ArrayList<Node>();
+		int count = XPathAPI.forEachNode(doc, "//b", node -> visited.add(node));
+
+		assertEquals(count, 4);
+		assertEquals(visited, XPathAPI.selectListOfNodes(doc, "//b"));
+	}
+
+	@Test
+	public void stopsWhenTheVisitorReturnsFalse() throws Exception {
+		List<String> visited = new ArrayList<String>();
+		int count = XPathAPI.forEachNode(doc, "//{}", node -> {
+			visited.add(node.getTextContent());
+			return visited.size() < 2;
+		}, "b");
+
+		assertEquals(count, 2);
+		assertEquals(visited, Arrays.asList("aabb11", "aabb33"));
+	}
+
+	@Test
+	public void visitsWithNamespacesAndQueries() throws Exception {
+		List<String> visited = new ArrayList<String>();
+		XPathAPI.forEachNode(doc, "//x:b", Collections.singletonMap("x", "def"), node -> visited.add(node.getTextContent()));
+		assertEquals(visited, Arrays.asList("kkaakkbb11", ""));
+
+		assertEquals(XPathQuery.compile("//c/b").forEachNode(doc, node -> false), 1);
+	}
+
+	@Test
+	public void fillsReusableCollections() throws Exception {
+		List<Node> nodes = new ArrayList<Node>();
+		assertEquals(XPathAPI.selectListOfNodesInto(doc, "/root/c/b", nodes), 1);
+		assertEquals(XPathAPI.selectListOfNodesInto(doc, "/root/b", nodes), 1);
+		assertEquals(nodes.size(), 2);
+		assertEquals(nodes.get(1).getTextContent(), "bb");
+
+		Set<String> strings = new LinkedHashSet<String>();
+		assertEquals(XPathAPI.selectNodeListAsStringsInto(doc, "//b | /root/b", strings), 4);
+		assertEquals(new ArrayList<String>(strings), XPathAPI.selectNodeListAsStrings(doc, "//b"));
+
+		strings.clear();
+		XPathQuery query = XPathQuery.compile("//{}");
+		assertEquals(query.selectNodeListAsStringsInto(doc, strings, "c"), 1);
+		assertEquals(query.selectListOfNodesInto(doc, nodes, "c"), 1);
+		assertEquals(strings, Collections.singleton("ccbb"));
+		assertEquals(nodes.size(), 3);
+	}
+}
@@ -0,0 +1,83 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.Collections;
+import it.svario.xpathapi.jaxp.NumberPolicy;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import javax.xml.xpath.XPathException;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class NumberArraysTest extends TestBase {
+	private final Document prices;
+
+	public NumberArraysTest() throws Exception {
+		super();
+
+		prices = documentFromString("<prices xmlns='urn:p' count='4'>" +
+		                            "<p> 12.5 </p><p>-3</p><p/><p>n/a</p><p><![CDATA[1e3]]></p>" +
+		                            "<p>0.1</p><p>123456789012345678</p><p>-9223372036854775808</p>" +
+		                            "</prices>");
+	}
+
+	@Test
+	public void parsesDoubles() throws Exception {
+		double[] values = XPathAPI.selectDoubles(prices, "//p:p", Collections.singletonMap("p", "urn:p"), NumberPolicy.NAN);
+
+		assertEquals(values.length, 8);
+		assertEquals(values[0], 12.5);
+		assertEquals(values[1], -3.0);
+		assertTrue(Double.isNaN(values[2]));
+		assertTrue(Double.isNaN(values[3]));
+		assertEquals(values[4], 1000.0);
+		assertEquals(values[5], 0.1);
+		assertEquals(values[6], 123456789012345678.0);
+		assertEquals(values[7], -9223372036854775808.0);
+	}
+
+	@Test
+	public void parsesDoublesLikeTheJDK() throws Exception {
+		String[] numbers = { "0", "-0.0", "3.14159", "1.7976931348623157e308", "4.9e-324", "2.2250738585072014E-308", "0.30000000000000004", ".5", "7.", "+42", "123456789012345.6789", "1e-22", "9007199254740993" };
+
+		StringBuilder xml = new StringBuilder("<n>");
+		for (String number : numbers) {
+			xml.append("<v>").append(number).append("</v>");
+		}
+		Document doc = documentFromString(xml.append("</n>").toString());
+
+		double[] values = XPathAPI.selectDoubles(doc, "/n/v", NumberPolicy.FAIL);
+		for (int i = 0; i < numbers.length; i++) {
+			assertEquals(Double.doubleToLongBits(values[i]), Double.doubleToLongBits(Double.parseDouble(numbers[i])), numbers[i]);
+		}
+	}
+
+	@Test
+	public void parsesLongsAndInts() throws Exception {
+		XPathQuery query = XPathQuery.compile("//p:p", Collections.singletonMap("p", "urn:p"));
+
+		assertEquals(query.selectLongs(prices, NumberPolicy.SKIP), new long[] { -3, 123456789012345678L, Long.MIN_VALUE });
+		assertEquals(query.selectInts(prices, NumberPolicy.orDefault(-1)), new int[] { -1, -3, -1, -1, -1, -1, -1, -1 });
+		assertEquals(XPathAPI.selectInts(prices, "/*/@count", NumberPolicy.FAIL), new int[] { 4 });
+	}
+
+	@Test
+	public void appliesDefaults() throws Exception {
+		double[] values = XPathAPI.selectDoubles(prices, "/*/*[position() <= 4]", NumberPolicy.orDefault(0.5));
+
+		assertEquals(values, new double[] { 12.5, -3, 0.5, 0.5 });
+	}
+
+	@Test(expectedExceptions = XPathException.class, expectedExceptionsMessageRegExp = ".*12\\.5.*")
+	public void failsOnInvalidNumbers() throws Exception {
+		XPathAPI.selectLongs(prices, "/*/*[position() != 3]", NumberPolicy.FAIL);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsNaNForIntegers() throws Exception {
+		XPathAPI.selectInts(prices, "/*/*", NumberPolicy.NAN);
+	}
+}
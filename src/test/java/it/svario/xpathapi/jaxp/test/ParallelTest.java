@@ -0,0 +1,85 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.xml.xpath.XPathException;
+import it.svario.xpathapi.jaxp.ErrorPolicy;
+import it.svario.xpathapi.jaxp.XPathParallel;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class ParallelTest extends TestBase {
+	public ParallelTest() throws Exception {
+		super();
+	}
+
+	private List<Document> documents(int count) throws Exception {
+		List<Document> docs = new ArrayList<Document>();
+		for (int i = 0; i < count; i++) {
+			StringBuilder docStr = new StringBuilder("<a>");
+			for (int j = 0; j <= i % 5; j++) {
+				docStr.append("<b>").append(i).append('-').append(j).append("</b>");
+			}
+			docStr.append("</a>");
+			docs.add(documentFromString(docStr.toString()));
+		}
+
+		return docs;
+	}
+
+	@Test
+	public void returnsResultsInInputOrder() throws Exception {
+		List<Document> docs = documents(100);
+		XPathQuery query = XPathQuery.compile("//b");
+
+		List<List<String>> results = new XPathParallel().setParallelism(4).selectNodeListAsStrings(docs, query);
+
+		assertEquals(results.size(), 100);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(results.get(i).size(), i % 5 + 1);
+			assertEquals(results.get(i).get(0), i + "-0");
+		}
+	}
+
+	@Test
+	public void usesCallerExecutor() throws Exception {
+		List<Document> docs = documents(20);
+		XPathQuery query = XPathQuery.compile("/a/b[1]");
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			List<Node> results = new XPathParallel().setExecutor(executor).setParallelism(3).selectSingleNode(docs, query);
+
+			assertEquals(results.get(7).getTextContent(), "7-0");
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expectedExceptions = XPathException.class)
+	public void failsOnFirstError() throws Exception {
+		List<Document> docs = documents(10);
+		XPathQuery query = XPathQuery.compile("//b[$missing]");
+
+		new XPathParallel().selectListOfNodes(docs, query);
+	}
+
+	@Test
+	public void returnsNullOnError() throws Exception {
+		List<Document> docs = documents(10);
+		XPathQuery query = XPathQuery.compile("//b[$missing]");
+
+		List<List<Node>> results = new XPathParallel().setErrorPolicy(ErrorPolicy.RETURN_NULL).selectListOfNodes(docs, query);
+
+		assertEquals(results.size(), 10);
+		assertNull(results.get(3));
+	}
+}
@@ -0,0 +1,99 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import javax.xml.xpath.XPathException;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class ParseDocumentTest extends TestBase {
+	private static final String XML = "<?xml version='1.0' encoding='UTF-8'?><!-- prologue -->" +
+	                                  "<root xmlns:k='abc'><k:a>\u00e8</k:a><b>1</b><b>2</b></root>";
+
+	public ParseDocumentTest() throws Exception {
+		super();
+	}
+
+	@Test
+	public void parsesAllSources() throws Exception {
+		byte[] bytes = XML.getBytes(StandardCharsets.UTF_8);
+
+		assertEquals(XPathAPI.selectString(XPathAPI.parseDocument(XML), "/root/k:a"), "\u00e8");
+		assertEquals(XPathAPI.selectString(XPathAPI.parseDocument(new StringBuilder(XML)), "/root/k:a"), "\u00e8");
+		assertEquals(XPathAPI.selectString(XPathAPI.parseDocument(bytes), "/root/k:a"), "\u00e8");
+		assertEquals(XPathAPI.selectString(XPathAPI.parseDocument(new ByteArrayInputStream(bytes)), "/root/k:a"), "\u00e8");
+		assertEquals(XPathAPI.selectString(XPathAPI.parseDocument(new StringReader(XML)), "/root/k:a"), "\u00e8");
+	}
+
+	@Test
+	public void reusesBuildersAcrossThreads() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 200; i++) {
+				final String xml = "<root><b>" + i + "</b></root>";
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return XPathAPI.selectString(XPathAPI.parseDocument(xml), "/root/b");
+					}
+				}));
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(results.get(i).get(), String.valueOf(i));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void recoversFromMalformedDocuments() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			try {
+				XPathAPI.parseDocument("<root>");
+				fail("malformed document parsed");
+			} catch (XPathException e) {
+				// expected
+			}
+		}
+
+		assertEquals(XPathAPI.selectString(XPathAPI.parseDocument("<root>ok</root>"), "/root"), "ok");
+	}
+
+	@Test
+	public void appliesParserFeatures() throws Exception {
+		String xml = "<!DOCTYPE root [<!ENTITY e 'entity'>]><root>&e;</root>";
+		assertEquals(XPathAPI.selectString(XPathAPI.parseDocument(xml), "/root"), "entity");
+
+		XPathAPI.setParserFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+		try {
+			assertEquals(XPathAPI.getParserFeature("http://apache.org/xml/features/disallow-doctype-decl"), Boolean.TRUE);
+			XPathAPI.parseDocument(xml);
+			fail("doctype accepted");
+		} catch (XPathException e) {
+			// expected
+		} finally {
+			XPathAPI.setParserFeature("http://apache.org/xml/features/disallow-doctype-decl", false);
+		}
+
+		assertEquals(XPathAPI.selectString(XPathAPI.parseDocument(xml), "/root"), "entity");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsUnknownFeatures() {
+		XPathAPI.setParserFeature("urn:no-such-feature", true);
+	}
+}
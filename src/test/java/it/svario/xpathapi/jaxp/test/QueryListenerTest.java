@@ -0,0 +1,165 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import it.svario.xpathapi.jaxp.PhaseStatistics;
+import it.svario.xpathapi.jaxp.QueryListener;
+import it.svario.xpathapi.jaxp.QueryMetrics;
+import it.svario.xpathapi.jaxp.QueryPhase;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class QueryListenerTest extends TestBase {
+	public QueryListenerTest() throws Exception {
+		super();
+	}
+
+	@AfterMethod
+	public void removeListener() {
+		XPathAPI.setQueryListener(null);
+	}
+
+	private static final class Recorder implements QueryListener {
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public void phaseCompleted(QueryPhase phase, String expression, long durationNanos, int resultSize) {
+			assertTrue(durationNanos >= 0);
+			events.add(phase + " " + expression + " " + resultSize);
+		}
+	}
+
+	@Test
+	public void reportsEveryPhase() throws Exception {
+		Recorder recorder = new Recorder();
+		XPathAPI.setQueryListener(recorder);
+		assertSame(XPathAPI.getQueryListener(), recorder);
+
+		XPathAPI.selectNodeListAsStrings(doc, "/root/{}", "b");
+
+		assertEquals(recorder.events, Arrays.asList("NAMESPACE_CONTEXT /root/{} -1", "COMPILATION /root/{} -1", "EVALUATION /root/{} 1", "CONVERSION /root/{} 1"));
+	}
+
+	@Test
+	public void reportsSizesOfSelections() throws Exception {
+		Recorder recorder = new Recorder();
+		XPathAPI.setQueryListener(recorder);
+
+		XPathAPI.selectSingleNode(doc, "//nothing");
+		XPathAPI.selectNumber(doc, "count(//b)");
+		XPathAPI.selectCount(doc, "//b");
+		XPathQuery.compile("//b").selectListOfNodes(doc);
+
+		assertTrue(recorder.events.contains("EVALUATION //nothing 0"), recorder.events.toString());
+		assertTrue(recorder.events.contains("EVALUATION count(//b) -1"), recorder.events.toString());
+		assertTrue(recorder.events.contains("EVALUATION //b 4"), recorder.events.toString());
+		assertTrue(recorder.events.contains("CONVERSION //b 4"), recorder.events.toString());
+	}
+
+	@Test
+	public void reportsBatchesUnderEachExpression() throws Exception {
+		Recorder recorder = new Recorder();
+		XPathAPI.setQueryListener(recorder);
+
+		Map<String, String> xpaths = new LinkedHashMap<String, String>();
+		xpaths.put("b", "/root/b");
+		xpaths.put("c", "/root/c");
+		XPathAPI.selectBatchAsStrings(doc, xpaths);
+
+		assertTrue(recorder.events.contains("NAMESPACE_CONTEXT /root/b -1"), recorder.events.toString());
+		assertTrue(recorder.events.contains("NAMESPACE_CONTEXT /root/c -1"), recorder.events.toString());
+		assertTrue(recorder.events.contains("EVALUATION /root/c 1"), recorder.events.toString());
+		for (String event : recorder.events) {
+			assertFalse(event.contains("|"), event);
+		}
+	}
+
+	@Test
+	public void reportsOnlyCompilationOfLazyIterators() throws Exception {
+		Recorder recorder = new Recorder();
+		XPathAPI.setQueryListener(recorder);
+
+		XPathAPI.selectNodeIterator(doc, "//b");
+		XPathAPI.selectNodeIterator(doc, "//b[last()]");
+
+		assertTrue(recorder.events.contains("COMPILATION //b -1"), recorder.events.toString());
+		assertFalse(recorder.events.contains("EVALUATION //b -1"), recorder.events.toString());
+		assertTrue(recorder.events.contains("EVALUATION //b[last()] 3"), recorder.events.toString());
+	}
+
+	@Test
+	public void isNotCalledWhenRemoved() throws Exception {
+		Recorder recorder = new Recorder();
+		XPathAPI.setQueryListener(recorder);
+		XPathAPI.setQueryListener(null);
+
+		XPathAPI.selectListOfNodes(doc, "//b");
+
+		assertTrue(recorder.events.isEmpty());
+	}
+
+	@Test
+	public void keepsHistogramsPerExpression() throws Exception {
+		QueryMetrics metrics = new QueryMetrics();
+		XPathAPI.setQueryListener(metrics);
+
+		for (int i = 0; i < 10; i++) {
+			XPathAPI.selectListOfNodes(doc, "/root/{}", i % 2 == 0 ? "b" : "c");
+		}
+
+		PhaseStatistics evaluation = metrics.getStatistics("/root/{}", QueryPhase.EVALUATION);
+		assertEquals(evaluation.getCount(), 10);
+		assertEquals(evaluation.getResultCount(), 10);
+		assertTrue(evaluation.getMedianNanos() <= evaluation.getP90Nanos());
+		assertTrue(evaluation.getP99Nanos() <= evaluation.getMaxNanos());
+		assertTrue(evaluation.getMaxNanos() <= evaluation.getTotalNanos());
+		assertEquals(metrics.getExpressionCount(), 1);
+		assertEquals(metrics.getStatistics().size(), QueryPhase.values().length);
+
+		metrics.reset();
+		assertNull(metrics.getStatistics("/root/{}", QueryPhase.EVALUATION));
+	}
+
+	@Test
+	public void boundsTheNumberOfExpressions() throws Exception {
+		QueryMetrics metrics = new QueryMetrics(2);
+		XPathAPI.setQueryListener(metrics);
+
+		XPathAPI.selectListOfNodes(doc, "/root/b");
+		XPathAPI.selectListOfNodes(doc, "/root/c");
+		XPathAPI.selectListOfNodes(doc, "/root/k:a", Collections.singletonMap("k", "abc"));
+
+		assertEquals(metrics.getExpressionCount(), 3);
+		assertEquals(metrics.getStatistics(QueryMetrics.OTHER_EXPRESSIONS, QueryPhase.EVALUATION).getCount(), 1);
+	}
+
+	@Test
+	public void isExposedOverJMX() throws Exception {
+		QueryMetrics metrics = new QueryMetrics();
+		ObjectName name = metrics.registerMBean();
+		try {
+			XPathAPI.setQueryListener(metrics);
+			XPathAPI.selectListOfNodes(doc, "//b");
+
+			assertEquals(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ExpressionCount"), 1);
+			CompositeData[] statistics = (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Statistics");
+			assertEquals(statistics.length, QueryPhase.values().length);
+			assertEquals(statistics[0].get("expression"), "//b");
+		} finally {
+			metrics.unregisterMBean();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.List;
+import it.svario.xpathapi.jaxp.CacheStatistics;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class ResultCacheTest extends TestBase {
+	public ResultCacheTest() throws Exception {
+		super();
+	}
+
+	@BeforeMethod
+	public void enableCache() {
+		XPathAPI.setResultCacheCapacity(16);
+	}
+
+	@AfterMethod
+	public void disableCache() {
+		XPathAPI.setResultCacheCapacity(0);
+	}
+
+	@Test
+	public void returnsCachedResults() throws Exception {
+		long hits = XPathAPI.getResultCacheStatistics().getHitCount();
+
+		NodeList first = XPathAPI.selectNodeList(doc, "//{}", "b");
+		NodeList second = XPathAPI.selectNodeList(doc, "//{}", "b");
+		assertSame(second, first);
+		assertEquals(first.getLength(), 4);
+
+		assertNotSame(XPathAPI.selectNodeList(doc, "//{}", "c"), first);
+		assertNull(XPathAPI.selectSingleNode(doc, "//nothing"));
+		assertNull(XPathAPI.selectSingleNode(doc, "//nothing"));
+		assertEquals(XPathAPI.selectCount(doc, "//b"), 4);
+		assertEquals(XPathAPI.selectCount(doc, "//b"), 4);
+
+		CacheStatistics statistics = XPathAPI.getResultCacheStatistics();
+		assertEquals(statistics.getHitCount() - hits, 3);
+		assertEquals(statistics.getCapacity(), 16);
+	}
+
+	@Test
+	public void keysResultsByContextNode() throws Exception {
+		Node c = XPathAPI.selectSingleNode(doc, "/root/c");
+
+		assertEquals(XPathAPI.selectListOfNodes(doc, "b").size(), 0);
+		assertEquals(XPathAPI.selectListOfNodes(c, "b").size(), 1);
+	}
+
+	@Test
+	public void keysResultsByEngine() throws Exception {
+		NodeList first = XPathAPI.selectNodeList(doc, "//b");
+
+		XPathAPI.setSimplePathEngineEnabled(false);
+		try {
+			NodeList second = XPathAPI.selectNodeList(doc, "//b");
+			assertNotSame(second, first);
+			assertEquals(second.getLength(), first.getLength());
+		} finally {
+			XPathAPI.setSimplePathEngineEnabled(true);
+		}
+
+		assertSame(XPathAPI.selectNodeList(doc, "//b"), first);
+	}
+
+	@Test
+	public void doesNotCacheDetachedSubtrees() throws Exception {
+		Document doc = documentFromString("<root/>");
+		Element detached = doc.createElement("a");
+		doc.createDocumentFragment().appendChild(detached);
+		detached.appendChild(doc.createElement("b"));
+		assertEquals(XPathAPI.selectCount(detached, "b"), 1);
+
+		detached.appendChild(doc.createElement("b"));
+		assertEquals(XPathAPI.selectCount(detached, "b"), 2);
+	}
+
+	@Test
+	public void returnsModifiableLists() throws Exception {
+		List<Node> first = XPathAPI.selectListOfNodes(doc, "//b");
+		first.clear();
+
+		assertEquals(XPathAPI.selectListOfNodes(doc, "//b").size(), 4);
+		assertEquals(XPathAPI.selectNodeList(doc, "//b").getLength(), 4);
+	}
+
+	@Test
+	public void isInvalidatedByChanges() throws Exception {
+		Document doc = documentFromString("<root><b/></root>");
+		assertEquals(XPathAPI.selectCount(doc, "/root/b"), 1);
+
+		Element b = doc.createElement("b");
+		doc.getDocumentElement().appendChild(b);
+		assertEquals(XPathAPI.selectCount(doc, "/root/b"), 2);
+
+		assertEquals(XPathAPI.selectString(doc, "/root/b[2]"), "");
+		b.setTextContent("new");
+		assertEquals(XPathAPI.selectString(doc, "/root/b[2]"), "new");
+
+		b.setAttribute("id", "x");
+		assertEquals(XPathAPI.selectString(doc, "/root/b[2]/@id"), "x");
+		b.setAttribute("id", "y");
+		assertEquals(XPathAPI.selectString(doc, "/root/b[2]/@id"), "y");
+	}
+
+	@Test
+	public void canBeInvalidatedExplicitly() throws Exception {
+		NodeList first = XPathAPI.selectNodeList(doc, "//b");
+
+		XPathAPI.invalidateResultCache(doc);
+		assertNotSame(XPathAPI.selectNodeList(doc, "//b"), first);
+
+		XPathAPI.clearResultCache();
+		assertNotSame(XPathAPI.selectNodeList(doc, "//b"), first);
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedResults() throws Exception {
+		XPathAPI.setResultCacheCapacity(1);
+		long evictions = XPathAPI.getResultCacheStatistics().getEvictionCount();
+
+		XPathAPI.selectString(doc, "/root/b");
+		XPathAPI.selectString(doc, "/root/c");
+
+		assertEquals(XPathAPI.getResultCacheStatistics().getEvictionCount() - evictions, 1);
+	}
+}
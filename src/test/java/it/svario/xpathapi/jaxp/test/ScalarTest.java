@@ -0,0 +1,60 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class ScalarTest extends TestBase {
+	public ScalarTest() throws Exception {
+		super();
+	}
+
+	@Test
+	public void selectsNumber() throws Exception {
+		Document prices = documentFromString("<items><price>1.5</price><price>2</price><price>x</price></items>");
+
+		assertEquals(XPathAPI.selectNumber(prices, "sum(//price[1] | //price[2])"), 3.5);
+		assertEquals(XPathAPI.selectNumber(prices, "//price[{}]", "2"), 2.0);
+		assertTrue(Double.isNaN(XPathAPI.selectNumber(prices, "//price[3]")));
+	}
+
+	@Test
+	public void selectsBoolean() throws Exception {
+		assertTrue(XPathAPI.selectBoolean(doc, "//c/b"));
+		assertFalse(XPathAPI.selectBoolean(doc, "//d"));
+		assertTrue(XPathAPI.selectBoolean(doc, "count(//b) > 3"));
+	}
+
+	@Test
+	public void selectsString() throws Exception {
+		assertEquals(XPathAPI.selectString(doc, "concat(//c/b, '-', //root/b)"), "ccbb-bb");
+		assertEquals(XPathAPI.selectString(doc, "//d"), "");
+	}
+
+	@Test
+	public void selectsCount() throws Exception {
+		Map<String, String> ns = new HashMap<String, String>();
+		ns.put("k", "def");
+
+		assertEquals(XPathAPI.selectCount(doc, "//b"), 4);
+		assertEquals(XPathAPI.selectCount(doc, "//k:b", ns), 2);
+		assertEquals(XPathAPI.selectCount(doc, "//d"), 0);
+	}
+
+	@Test
+	public void selectsScalarsFromQuery() throws Exception {
+		XPathQuery query = XPathQuery.compile("//b[text() = '{}']");
+
+		assertEquals(query.selectCount(doc, "ccbb"), 1);
+		assertTrue(query.selectBoolean(doc, "bb"));
+		assertEquals(query.selectString(doc, "bb"), "bb");
+		assertTrue(Double.isNaN(query.selectNumber(doc, "bb")));
+	}
+}
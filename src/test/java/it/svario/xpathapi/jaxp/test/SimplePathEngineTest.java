@@ -0,0 +1,167 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import it.svario.xpathapi.jaxp.TemplateMode;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+/**
+ * Checks that the built-in engine returns exactly the same nodes as JAXP.
+ */
+@SuppressWarnings("javadoc")
+public class SimplePathEngineTest extends TestBase {
+	private static final String[] NAMES = { "a", "b", "c", "k:a", "k:b", "*", "k:*" };
+	private static final String[] ATTRIBUTES = { "id", "x", "k:id" };
+
+	private final Document nested;
+	private final Map<String, String> namespaces;
+
+	public SimplePathEngineTest() throws Exception {
+		super();
+
+		nested = documentFromString("<a xmlns:k='abc' id='1'>" +
+		                            "<b id='2'><a id='3' x='y'><b/><b x='z'/></a><c k:id='4'>text</c></b>" +
+		                            "<k:a id='5'><k:b k:id='6'><a><b id='7'/></a></k:b><b/></k:a>" +
+		                            "<b x='y'>t<![CDATA[u]]></b><c><b><b id='8'/></b></c>" +
+		                            "</a>");
+
+		namespaces = new HashMap<String, String>();
+		namespaces.put("k", "abc");
+	}
+
+	@AfterMethod
+	public void restoreDefaults() {
+		XPathAPI.setSimplePathEngineEnabled(true);
+		XPathAPI.setTemplateMode(TemplateMode.SUBSTITUTION);
+	}
+
+	private List<Node> withJAXP(Node contextNode, String xpath) throws Exception {
+		XPathAPI.setSimplePathEngineEnabled(false);
+		try {
+			return XPathAPI.selectListOfNodes(contextNode, xpath, namespaces);
+		} finally {
+			XPathAPI.setSimplePathEngineEnabled(true);
+		}
+	}
+
+	private void assertSameResults(Node contextNode, String xpath) throws Exception {
+		List<Node> expected = withJAXP(contextNode, xpath);
+
+		assertEquals(XPathAPI.selectListOfNodes(contextNode, xpath, namespaces), expected, xpath);
+		assertSame(XPathAPI.selectSingleNode(contextNode, xpath, namespaces), expected.isEmpty() ? null : expected.get(0), xpath);
+		assertEquals(XPathAPI.selectCount(contextNode, xpath, namespaces), expected.size(), xpath);
+	}
+
+	@Test
+	public void agreesWithJAXPOnHandWrittenPaths() throws Exception {
+		List<String> xpaths = Arrays.asList("/a", "/a/b", "//b", "//a//b", "//b//b", "/a/*", "//*", "//k:*", "//k:a/k:b",
+		                                    "//b[2]", "//b[1][@x]", "//b[@x][1]", "//b[@x='y']", "//*[@k:id]", "/a/b[3]",
+		                                    "//@id", "//b/@*", "//@k:id", "/a//c/@k:id", "//a[@id='3']/b[2]/@x",
+		                                    "b", "b/a", "*/b", "c//b", "//nothing", "/b", "//b[7]",
+		                                    "@id", "@*", "@k:id", "@x", "/@id");
+
+		Node b = nested.getDocumentElement().getFirstChild();
+		for (String xpath : xpaths) {
+			assertSameResults(nested, xpath);
+			assertSameResults(nested.getDocumentElement(), xpath);
+			assertSameResults(b, xpath);
+		}
+	}
+
+	@Test
+	public void agreesWithJAXPOnRandomPaths() throws Exception {
+		Random random = new Random(42);
+		List<Node> contextNodes = new ArrayList<Node>();
+		contextNodes.add(nested);
+		contextNodes.add(nested.getDocumentElement());
+		contextNodes.addAll(XPathAPI.selectListOfNodes(nested, "//b"));
+
+		for (int i = 0; i < 500; i++) {
+			String xpath = randomPath(random);
+			Node contextNode = contextNodes.get(random.nextInt(contextNodes.size()));
+
+			assertSameResults(contextNode, xpath);
+		}
+	}
+
+	private static String randomPath(Random random) {
+		StringBuilder xpath = new StringBuilder();
+		if (random.nextBoolean()) {
+			xpath.append('/');
+		}
+
+		int steps = 1 + random.nextInt(3);
+		for (int s = 0; s < steps; s++) {
+			if (s > 0) {
+				xpath.append(random.nextInt(3) == 0 ? "//" : "/");
+			} else if (xpath.length() > 0 && random.nextBoolean()) {
+				xpath.append('/');
+			}
+
+			xpath.append(NAMES[random.nextInt(NAMES.length)]);
+
+			int predicates = random.nextInt(3);
+			for (int p = 0; p < predicates; p++) {
+				switch (random.nextInt(3)) {
+				case 0:
+					xpath.append('[').append(1 + random.nextInt(3)).append(']');
+					break;
+				case 1:
+					xpath.append("[@").append(ATTRIBUTES[random.nextInt(ATTRIBUTES.length)]).append(']');
+					break;
+				default:
+					xpath.append("[@x='").append(random.nextBoolean() ? 'y' : 'z').append("']");
+					break;
+				}
+			}
+		}
+
+		if (random.nextInt(4) == 0) {
+			xpath.append(random.nextBoolean() ? "/@" : "//@").append(random.nextBoolean() ? "*" : ATTRIBUTES[random.nextInt(ATTRIBUTES.length)]);
+		}
+
+		return xpath.toString();
+	}
+
+	@Test
+	public void bindsVariables() throws Exception {
+		XPathAPI.setTemplateMode(TemplateMode.VARIABLES);
+
+		Node node = XPathAPI.selectSingleNode(nested, "//b[@x='{}']", "z");
+		assertEquals(((Element) node).getAttribute("x"), "z");
+
+		XPathQuery query = XPathQuery.compile("//*[@id='{}']");
+		assertEquals(query.selectListOfNodes(nested, "7"), withJAXP(nested, "//*[@id='7']"));
+		assertTrue(query.selectListOfNodes(nested, "it's").isEmpty());
+	}
+
+	@Test
+	public void leavesOtherExpressionsToJAXP() throws Exception {
+		assertEquals(XPathAPI.selectNodeListAsStrings(nested, "//c/text()"), Arrays.asList("text"));
+		assertEquals(XPathAPI.selectCount(nested, "//b | //c"), 10);
+		assertEquals(XPathAPI.selectString(nested, "//c"), "text");
+		assertEquals(XPathAPI.selectNumber(nested, "/a/@id"), 1.0);
+	}
+
+	@Test
+	public void canBeDisabled() throws Exception {
+		assertTrue(XPathAPI.isSimplePathEngineEnabled());
+
+		XPathAPI.setSimplePathEngineEnabled(false);
+		assertFalse(XPathAPI.isSimplePathEngineEnabled());
+		assertEquals(XPathAPI.selectNodeListAsStrings(doc, "/root/b"), Arrays.asList("bb"));
+	}
+}
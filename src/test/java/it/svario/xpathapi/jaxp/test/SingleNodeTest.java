@@ -94,4 +94,21 @@ public class SingleNodeTest extends TestBase {
 
 		assertNotNull(aWithoutNS);
 	}
+
+	@Test
+	public void findsFirstNodeInDocumentOrder() throws Exception {
+		Node aNode = doc.getFirstChild().getFirstChild();
+		Node node = XPathAPI.selectSingleNode(doc, "//c/b | //k:a/b", aNode);
+
+		assertNotNull(node);
+		assertEquals(node.getTextContent(), "aabb11");
+	}
+
+	@Test
+	public void findsFirstNodeOfReverseAxis() throws Exception {
+		Node node = XPathAPI.selectSingleNode(doc, "//c/preceding-sibling::*");
+
+		assertNotNull(node);
+		assertEquals(node.getFirstChild().getTextContent(), "aabb11");
+	}
 }
@@ -0,0 +1,100 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import it.svario.xpathapi.jaxp.ExpressionProfile;
+import it.svario.xpathapi.jaxp.SlowQuery;
+import it.svario.xpathapi.jaxp.SlowQueryLog;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class SlowQueryLogTest extends TestBase {
+	public SlowQueryLogTest() throws Exception {
+		super();
+	}
+
+	@AfterMethod
+	public void removeLog() {
+		XPathAPI.setSlowQueryLog(null);
+	}
+
+	@Test
+	public void recordsSlowQueriesWithTheirContext() throws Exception {
+		SlowQueryLog log = new SlowQueryLog(0, TimeUnit.NANOSECONDS);
+		XPathAPI.setSlowQueryLog(log);
+		assertSame(XPathAPI.getSlowQueryLog(), log);
+
+		Node c = XPathAPI.selectSingleNode(doc, "/root/c");
+		log.reset();
+		XPathAPI.selectListOfNodes(c, "{}", "b");
+
+		List<SlowQuery> queries = log.getSlowQueries();
+		assertEquals(queries.size(), 1);
+
+		SlowQuery query = queries.get(0);
+		assertEquals(query.getExpression(), "{}");
+		assertEquals(query.getContextPath(), "/root[1]/c[1]");
+		assertEquals(query.getDocumentSize(), 20);
+		assertEquals(query.getResultSize(), 1);
+		assertEquals(query.getThreadName(), Thread.currentThread().getName());
+		assertTrue(query.getDurationNanos() >= 0);
+	}
+
+	@Test
+	public void describesContextNodes() throws Exception {
+		SlowQueryLog log = new SlowQueryLog(0, TimeUnit.NANOSECONDS);
+		XPathAPI.setSlowQueryLog(log);
+
+		XPathAPI.selectString(doc, ".");
+		XPathAPI.selectString(XPathAPI.selectListOfNodes(doc, "//b").get(2), ".");
+		XPathAPI.selectString(XPathAPI.selectSingleNode(doc, "/root/c/b/text()"), ".");
+
+		List<SlowQuery> queries = log.getSlowQueries();
+		assertEquals(queries.get(0).getContextPath(), "/");
+		assertEquals(queries.get(2).getContextPath(), "/root[1]/c[1]/b[1]");
+		assertEquals(queries.get(4).getContextPath(), "/root[1]/c[1]/b[1]/text()");
+	}
+
+	@Test
+	public void profilesAllQueriesButKeepsOnlySlowOnes() throws Exception {
+		SlowQueryLog log = new SlowQueryLog(1, TimeUnit.HOURS);
+		XPathAPI.setSlowQueryLog(log);
+
+		for (int i = 0; i < 5; i++) {
+			XPathAPI.selectListOfNodes(doc, "//b");
+		}
+		XPathAPI.selectCount(doc, "//c");
+
+		assertTrue(log.getSlowQueries().isEmpty());
+
+		List<ExpressionProfile> byCount = log.topByCount(1);
+		assertEquals(byCount.size(), 1);
+		assertEquals(byCount.get(0).getExpression(), "//b");
+		assertEquals(byCount.get(0).getCount(), 5);
+		assertEquals(byCount.get(0).getSlowCount(), 0);
+
+		assertEquals(log.topByTotalTime(10).size(), 2);
+		assertTrue(log.report(3).contains("//c"));
+	}
+
+	@Test
+	public void keepsOnlyTheMostRecentSlowQueries() throws Exception {
+		SlowQueryLog log = new SlowQueryLog(0, TimeUnit.NANOSECONDS, 3, 100);
+		XPathAPI.setSlowQueryLog(log);
+
+		for (int i = 1; i <= 5; i++) {
+			XPathAPI.selectListOfNodes(doc, "/root/b[" + i + "]");
+		}
+
+		List<SlowQuery> queries = log.getSlowQueries();
+		assertEquals(queries.size(), 3);
+		assertEquals(queries.get(0).getExpression(), "/root/b[3]");
+		assertEquals(queries.get(2).getExpression(), "/root/b[5]");
+	}
+}
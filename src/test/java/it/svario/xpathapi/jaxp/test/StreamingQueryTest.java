@@ -0,0 +1,166 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.xpath.XPathException;
+import it.svario.xpathapi.jaxp.StreamingQuery;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import org.testng.annotations.Test;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class StreamingQueryTest extends TestBase {
+	private static final String DOC = "<root>" +
+	                                  "<k:a xmlns:k='abc'><b>aabb11</b><k:b>aabb22</k:b><b>aabb33</b></k:a>" +
+	                                  "<c><b>ccbb</b></c>" +
+	                                  "<b>bb</b>" +
+	                                  "<k:a xmlns:k='def'><k:b>kkaakkbb11</k:b><k:b/></k:a>" +
+	                                  "<d id='1' lang='en'>one<e>!</e></d><d id='2'>two</d><d lang='en'>three</d>" +
+	                                  "</root>";
+
+	public StreamingQueryTest() throws Exception {
+		super();
+		doc = documentFromString(DOC);
+	}
+
+	private List<String> stream(String xpathString) throws Exception {
+		return StreamingQuery.compile(xpathString).selectNodeListAsStrings(new StringReader(DOC));
+	}
+
+	@Test
+	public void agreesWithDOMEvaluation() throws Exception {
+		List<String> xpaths = Arrays.asList("/root/b", "//b", "/root/*/b", "//b[1]", "/root/*[2]", "//d[@lang]", "//d[@id='2']", "//d[@lang='en'][2]", "//d/@id", "//@lang", "/root//e", "d", "//d[2]/@*");
+
+		for (String xpath : xpaths) {
+			assertEquals(stream(xpath), XPathAPI.selectNodeListAsStrings(doc, xpath), xpath);
+		}
+	}
+
+	@Test
+	public void resolvesNamespacePrefixes() throws Exception {
+		Map<String, String> namespaces = new HashMap<String, String>();
+		namespaces.put("x", "def");
+
+		StreamingQuery query = StreamingQuery.compile("//x:a/x:b", namespaces);
+
+		assertEquals(query.selectNodeListAsStrings(new StringReader(DOC)), Arrays.asList("kkaakkbb11", ""));
+	}
+
+	@Test
+	public void returnsFirstMatch() throws Exception {
+		StreamingQuery query = StreamingQuery.compile("//d");
+
+		assertEquals(query.selectSingleNodeAsString(new StringReader(DOC)), "one!");
+		assertNull(StreamingQuery.compile("//z").selectSingleNodeAsString(new StringReader(DOC)));
+	}
+
+	@Test
+	public void stopsReadingAfterFirstMatch() throws Exception {
+		String truncated = "<root><b>first</b><b>second</b><unclosed>";
+		StreamingQuery query = StreamingQuery.compile("/root/b");
+
+		assertEquals(query.selectSingleNodeAsString(new ByteArrayInputStream(truncated.getBytes("UTF-8"))), "first");
+	}
+
+	@Test
+	public void returnsDetachedCopies() throws Exception {
+		List<Node> nodes = StreamingQuery.compile("//d[@lang]").selectListOfNodes(new StringReader(DOC));
+
+		assertEquals(nodes.size(), 2);
+		Element first = (Element) nodes.get(0);
+		assertEquals(first.getAttribute("id"), "1");
+		assertEquals(first.getTextContent(), "one!");
+		assertEquals(first.getElementsByTagName("e").getLength(), 1);
+		assertNull(first.getParentNode().getParentNode());
+
+		Node attr = StreamingQuery.compile("//d/@id").selectSingleNode(new StringReader(DOC));
+		assertTrue(attr instanceof Attr);
+		assertEquals(attr.getNodeValue(), "1");
+	}
+
+	@Test
+	public void copiesCommentsAndProcessingInstructions() throws Exception {
+		String xml = "<root><a>x<!-- note --><?target data?>y</a></root>";
+
+		Node node = StreamingQuery.compile("/root/a").selectSingleNode(new StringReader(xml));
+
+		assertEquals(node.getChildNodes().getLength(), 4);
+		assertEquals(node.getChildNodes().item(1).getNodeType(), Node.COMMENT_NODE);
+		assertEquals(node.getChildNodes().item(1).getNodeValue(), " note ");
+		assertEquals(node.getChildNodes().item(2).getNodeType(), Node.PROCESSING_INSTRUCTION_NODE);
+		assertEquals(node.getChildNodes().item(2).getNodeName(), "target");
+		assertEquals(node.getTextContent(), "xy");
+		assertEquals(StreamingQuery.compile("/root/a").selectSingleNodeAsString(new StringReader(xml)), "xy");
+	}
+
+	@Test
+	public void copiesNamespacedElements() throws Exception {
+		Map<String, String> namespaces = new HashMap<String, String>();
+		namespaces.put("x", "abc");
+
+		Node node = StreamingQuery.compile("/root/x:a", namespaces).selectSingleNode(new StringReader(DOC));
+
+		assertEquals(node.getNamespaceURI(), "abc");
+		assertEquals(node.getLocalName(), "a");
+		assertEquals(node.getChildNodes().item(1).getNamespaceURI(), "abc");
+	}
+
+	@Test
+	public void readsFiles() throws Exception {
+		Path file = Files.createTempFile("streaming", ".xml");
+		try {
+			Files.write(file, DOC.getBytes(StandardCharsets.UTF_8));
+
+			assertEquals(StreamingQuery.compile("//c/b").selectNodeListAsStrings(file), Arrays.asList("ccbb"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void doesNotResolveExternalEntities() throws Exception {
+		Path secret = Files.createTempFile("secret", ".txt");
+		try {
+			Files.write(secret, "secret".getBytes(StandardCharsets.UTF_8));
+			String xml = "<!DOCTYPE root [<!ENTITY e SYSTEM '" + secret.toUri() + "'>]><root><b>&e;</b></root>";
+
+			List<String> values = StreamingQuery.compile("//b").selectNodeListAsStrings(new StringReader(xml));
+			fail("Entity expanded to " + values);
+		} catch (XPathException e) {
+			// expected
+		} finally {
+			Files.delete(secret);
+		}
+	}
+
+	@Test
+	public void rejectsNonStreamableExpressions() throws Exception {
+		List<String> xpaths = Arrays.asList("//b/..", "//b[last()]", "count(//b)", "//b/text()", "ancestor::b", "//b[. = 'x']", "/");
+
+		for (String xpath : xpaths) {
+			try {
+				StreamingQuery.compile(xpath);
+				fail("Expected rejection of " + xpath);
+			} catch (XPathException e) {
+				assertNotNull(e.getMessage());
+			}
+		}
+	}
+
+	@Test(expectedExceptions = XPathException.class)
+	public void reportsMalformedDocuments() throws Exception {
+		StreamingQuery.compile("//b").selectNodeListAsStrings(new StringReader("<root><b></root>"));
+	}
+}
@@ -0,0 +1,70 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class StringSinkTest extends TestBase {
+	public StringSinkTest() throws Exception {
+		super();
+	}
+
+	@Test
+	public void appendsTextContentWithSeparators() throws Exception {
+		StringBuilder sink = new StringBuilder("[");
+		int count = XPathAPI.appendNodeListAsStrings(doc, "/root/*", sink, ", ");
+
+		assertEquals(count, 4);
+		assertEquals(sink.toString(), "[aabb11aabb22aabb33, ccbb, bb, kkaakkbb11");
+	}
+
+	@Test
+	public void appendsTheSameTextAsGetTextContent() throws Exception {
+		Document mixed = documentFromString("<r a='x'><!--c--><e>1<![CDATA[2]]><?p i?><f>3</f></e><g/>4</r>");
+
+		StringWriter writer = new StringWriter();
+		XPathAPI.appendNodeListAsStrings(mixed, "//node() | //@*", writer, "|");
+
+		StringBuilder expected = new StringBuilder();
+		for (String string : XPathAPI.selectNodeListAsStrings(mixed, "//node() | //@*")) {
+			expected.append(expected.length() == 0 ? "" : "|").append(string);
+		}
+		assertEquals(writer.toString(), expected.toString());
+	}
+
+	@Test
+	public void appendsWithNamespacesAndQueries() throws Exception {
+		StringBuilder sink = new StringBuilder();
+		XPathAPI.appendNodeListAsStrings(doc, "//x:b", Collections.singletonMap("x", "abc"), sink, null);
+		assertEquals(sink.toString(), "aabb22");
+
+		sink.setLength(0);
+		XPathQuery.compile("/root/{}").appendNodeListAsStrings(doc, sink, "\n", "b");
+		assertEquals(sink.toString(), "bb");
+	}
+
+	@Test
+	public void computesLazyStringsOnAccess() throws Exception {
+		List<String> strings = XPathAPI.selectNodeListAsLazyStrings(doc, "//b");
+
+		assertEquals(strings.size(), 4);
+		assertEquals(strings.get(3), "bb");
+		assertSame(strings.get(3), strings.get(3));
+		assertEquals(strings, XPathAPI.selectNodeListAsStrings(doc, "//b"));
+		assertEquals(XPathQuery.compile("/root/c/b").selectNodeListAsLazyStrings(doc), Arrays.asList("ccbb"));
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void lazyStringsAreReadOnly() throws Exception {
+		XPathAPI.selectNodeListAsLazyStrings(doc, "//b").set(0, "x");
+	}
+}
@@ -2,7 +2,10 @@
 
 package it.svario.xpathapi.jaxp.test;
 
+import it.svario.xpathapi.jaxp.CacheStatistics;
+import it.svario.xpathapi.jaxp.TemplateMode;
 import it.svario.xpathapi.jaxp.XPathAPI;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 import org.w3c.dom.Node;
 import static org.testng.Assert.*;
@@ -27,4 +30,52 @@ public class TemplateSubstitutionTest extends TestBase {
 
 		assertNull(node);
 	}
+
+	@AfterMethod
+	public void restoreMode() {
+		XPathAPI.setTemplateMode(TemplateMode.SUBSTITUTION);
+	}
+
+	@Test
+	public void replacesEachPlaceholderWithItsArgument() throws Exception {
+		Node node = XPathAPI.selectSingleNode(doc, "//{}[contains(text(), '{}')]", "b", "ccbb");
+
+		assertNotNull(node);
+		assertEquals(node.getTextContent(), "ccbb");
+	}
+
+	@Test
+	public void bindsQuotedPlaceholdersAsVariables() throws Exception {
+		XPathAPI.setTemplateMode(TemplateMode.VARIABLES);
+
+		Node node = XPathAPI.selectSingleNode(doc, "//{}[contains(text(), '{}')]", "b", "bb33");
+
+		assertNotNull(node);
+		assertEquals(node.getTextContent(), "aabb33");
+	}
+
+	@Test
+	public void acceptsQuotesInVariables() throws Exception {
+		XPathAPI.setTemplateMode(TemplateMode.VARIABLES);
+
+		Node node = XPathAPI.selectSingleNode(doc, "//b[text() = \"{}\"]", "it's");
+
+		assertNull(node);
+	}
+
+	@Test
+	public void compilesVariableTemplatesOnce() throws Exception {
+		XPathAPI.setTemplateMode(TemplateMode.VARIABLES);
+		XPathAPI.selectSingleNode(doc, "//b[text() = '{}']", "aabb11");
+		CacheStatistics before = XPathAPI.getExpressionCacheStatistics();
+
+		Node first = XPathAPI.selectSingleNode(doc, "//b[text() = '{}']", "aabb33");
+		Node second = XPathAPI.selectSingleNode(doc, "//b[text() = '{}']", "ccbb");
+
+		CacheStatistics after = XPathAPI.getExpressionCacheStatistics();
+
+		assertEquals(first.getTextContent(), "aabb33");
+		assertEquals(second.getTextContent(), "ccbb");
+		assertEquals(after.getMissCount(), before.getMissCount());
+	}
 }
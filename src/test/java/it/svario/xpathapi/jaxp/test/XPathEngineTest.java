@@ -0,0 +1,105 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import it.svario.xpathapi.jaxp.EvaluatorMode;
+import it.svario.xpathapi.jaxp.XPathAPI;
+import it.svario.xpathapi.jaxp.XPathEngine;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class XPathEngineTest extends TestBase {
+	private XPathEngine defaultEngine;
+
+	public XPathEngineTest() throws Exception {
+		super();
+	}
+
+	@BeforeMethod
+	public void saveEngine() {
+		defaultEngine = XPathAPI.getEngine();
+	}
+
+	@AfterMethod
+	public void restoreEngine() {
+		XPathAPI.setEngine(defaultEngine);
+		XPathAPI.setEvaluatorMode(EvaluatorMode.THREAD_LOCAL);
+	}
+
+	private static final class CountingEngine implements XPathEngine {
+		private final XPathFactory factory = XPathFactory.newInstance();
+		final AtomicInteger created = new AtomicInteger();
+
+		@Override
+		public synchronized XPath newXPath() {
+			created.incrementAndGet();
+			return factory.newXPath();
+		}
+	}
+
+	@Test
+	public void usesTheDefaultEngine() throws Exception {
+		CountingEngine engine = new CountingEngine();
+		XPathAPI.setEngine(engine);
+		assertSame(XPathAPI.getEngine(), engine);
+
+		assertTrue(XPathAPI.selectBoolean(doc, "count(//b) > 1"));
+		assertEquals(XPathAPI.selectString(doc, "concat('x', 'y')"), "xy");
+		assertEquals(engine.created.get(), 1);
+	}
+
+	@Test
+	public void usesTheEngineOfEachQuery() throws Exception {
+		CountingEngine engine = new CountingEngine();
+		XPathQuery query = XPathQuery.compile("count(//b)", Collections.<String, String>emptyMap(), engine);
+		assertSame(query.getEngine(), engine);
+
+		assertEquals(query.selectNumber(doc), 4.0);
+		assertEquals(engine.created.get(), 1);
+		assertSame(XPathQuery.compile("//b").getEngine(), XPathAPI.getEngine());
+	}
+
+	@Test
+	public void poolsEvaluatorsPerEngine() throws Exception {
+		XPathAPI.setEvaluatorMode(EvaluatorMode.POOLED);
+		CountingEngine engine = new CountingEngine();
+		XPathQuery query = XPathQuery.compile("count(//b)", doc, engine);
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(query.selectNumber(doc), 4.0);
+			assertEquals(XPathAPI.selectNumber(doc, "count(//c)"), 1.0);
+		}
+
+		assertEquals(engine.created.get(), 1);
+	}
+
+	@Test
+	public void createsBuiltInEngines() throws Exception {
+		XPathAPI.setEngine(XPathEngine.jdk());
+		assertEquals(XPathAPI.selectString(doc, "name(/*)"), "root");
+
+		XPathAPI.setEngine(XPathEngine.of(XPathFactory.newInstance()));
+		assertEquals(XPathAPI.selectString(doc, "name(/*)"), "root");
+
+		XPathAPI.setEngine(XPathEngine.forObjectModel(XPathFactory.DEFAULT_OBJECT_MODEL_URI));
+		assertEquals(XPathAPI.selectString(doc, "name(/*)"), "root");
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void rejectsUnknownFactories() throws Exception {
+		XPathEngine.forFactoryClass("com.example.NoSuchXPathFactory", null);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void rejectsNullEngines() throws Exception {
+		XPathAPI.setEngine(null);
+	}
+}
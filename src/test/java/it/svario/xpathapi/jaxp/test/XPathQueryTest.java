@@ -0,0 +1,91 @@
+// This is free software released into the public domain (CC0 license).
+
+package it.svario.xpathapi.jaxp.test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.xpath.XPathException;
+import it.svario.xpathapi.jaxp.XPathQuery;
+import org.testng.annotations.Test;
+import org.w3c.dom.Node;
+import org.w3c.dom.traversal.NodeIterator;
+import static org.testng.Assert.*;
+
+@SuppressWarnings("javadoc")
+public class XPathQueryTest extends TestBase {
+	public XPathQueryTest() throws Exception {
+		super();
+	}
+
+	@Test
+	public void selectsSingleNode() throws Exception {
+		XPathQuery query = XPathQuery.compile("//b[2]");
+
+		Node node = query.selectSingleNode(doc);
+
+		assertEquals(node.getTextContent(), "aabb33");
+		assertEquals(query.selectSingleNodeAsString(doc), "aabb33");
+	}
+
+	@Test
+	public void resolvesNamespacesFromMap() throws Exception {
+		Map<String, String> namespaces = new HashMap<String, String>();
+		namespaces.put("k", "def");
+		XPathQuery query = XPathQuery.compile("//k:a/k:b", namespaces);
+
+		List<String> strings = query.selectNodeListAsStrings(doc);
+
+		assertEquals(strings.size(), 2);
+		assertEquals(strings.get(0), "kkaakkbb11");
+	}
+
+	@Test
+	public void resolvesNamespacesFromNode() throws Exception {
+		Node aNode = doc.getFirstChild().getFirstChild();
+		XPathQuery query = XPathQuery.compile("//k:b", aNode);
+
+		List<Node> nodes = query.selectListOfNodes(doc);
+
+		assertEquals(nodes.size(), 1);
+		assertEquals(nodes.get(0).getTextContent(), "aabb22");
+	}
+
+	@Test
+	public void bindsArguments() throws Exception {
+		XPathQuery query = XPathQuery.compile("//b[text() = '{}']");
+
+		assertNotNull(query.selectSingleNode(doc, "ccbb"));
+		assertNotNull(query.selectSingleNode(doc, "bb"));
+		assertNull(query.selectSingleNode(doc, "it's"));
+	}
+
+	@Test
+	public void iteratesOverNodes() throws Exception {
+		XPathQuery query = XPathQuery.compile("//c/b");
+
+		NodeIterator it = query.selectNodeIterator(doc);
+
+		assertEquals(it.nextNode().getTextContent(), "ccbb");
+		assertNull(it.nextNode());
+	}
+
+	@Test(expectedExceptions = XPathException.class)
+	public void rejectsInvalidExpressions() throws Exception {
+		XPathQuery.compile("//b[");
+	}
+
+	@Test(expectedExceptions = XPathException.class)
+	public void rejectsInvalidTemplatesWithQuotedPlaceholders() throws Exception {
+		XPathQuery.compile("//b[text() = '{}'");
+	}
+
+	@Test
+	public void keepsPlaceholdersWithoutArguments() throws Exception {
+		XPathQuery query = XPathQuery.compile("//b[text() = '{}' or text() = '{}']");
+
+		assertNotNull(query.selectSingleNode(doc, "x", "ccbb"));
+		assertNotNull(query.selectSingleNode(doc, "ccbb"));
+		assertNull(query.selectSingleNode(doc, "x"));
+	}
+}